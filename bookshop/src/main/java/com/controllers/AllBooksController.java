@@ -1,6 +1,7 @@
 package com.controllers;
 
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
@@ -13,6 +14,7 @@ import com.database.BookDetailsCollection;
 import com.database.ExploreDB;
 import com.services.SessionManager;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +44,7 @@ public class AllBooksController extends CommonController {
     private List<Book> allBooks;
     private ExploreDB exploreDB;
     private Map<String, Object> filterParams;
+    private PageRenderer pageRenderer;
 
     // Possible view types
     public static final String VIEW_ALL_BOOKS = "all_books";
@@ -186,7 +189,7 @@ public class AllBooksController extends CommonController {
                 allBooks = exploreDB.getFilteredBooks(filterParams);
                 LOGGER.info("Loaded " + allBooks.size() + " books from publisher: " + publisher);
             } else {
-                allBooks = exploreDB.getAllBooks();
+                allBooks = exploreDB.getFilteredBooks(filterParams);
                 LOGGER.info("Loaded " + allBooks.size() + " books");
             }
 
@@ -199,36 +202,33 @@ public class AllBooksController extends CommonController {
     }
 
     private void updatePagination() {
+        if (pageRenderer == null) {
+            // One page node for every page, filled by a single render per pulse
+            VBox pageContainer = new VBox();
+            pageContainer.getChildren().add(booksContainer);
+            pageRenderer = new PageRenderer(booksPagination, pageContainer, booksContainer, this::pageCards);
+        }
         int pageCount = (allBooks.size() + BOOKS_PER_PAGE - 1) / BOOKS_PER_PAGE;
         booksPagination.setPageCount(pageCount > 0 ? pageCount : 1);
         booksPagination.setCurrentPageIndex(0);
-
-        // Set page factory to display books for each page
-        booksPagination.setPageFactory(this::createPage);
+        pageRenderer.refresh();
     }
 
-    private VBox createPage(int pageIndex) {
+    private List<Node> pageCards(int pageIndex) {
+        List<Node> cards = new ArrayList<>();
         try {
-            booksContainer.getChildren().clear();
-
-            int fromIndex = pageIndex * BOOKS_PER_PAGE;
+            int fromIndex = Math.min(pageIndex * BOOKS_PER_PAGE, allBooks.size());
             int toIndex = Math.min(fromIndex + BOOKS_PER_PAGE, allBooks.size());
 
-            // Create book cards for the current page
+            // Create book cards for the page
             for (int i = fromIndex; i < toIndex; i++) {
                 Book book = allBooks.get(i);
-                VBox bookCard = createBookCard(book);
-                booksContainer.getChildren().add(bookCard);
+                cards.add(createBookCard(book));
             }
-
-            // Return the container with the books for this page
-            VBox pageContainer = new VBox();
-            pageContainer.getChildren().add(booksContainer);
-            return pageContainer;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error creating page", e);
-            return new VBox(); // Return empty VBox to avoid null
         }
+        return cards;
     }
 
     @FXML
@@ -1,5 +1,6 @@
 package com.controllers;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -17,10 +18,13 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import com.database.BookDetailsCollection;
 import com.models.Book;
+import com.search.SearchIndex;
+import com.search.SimilarBooksIndex;
 import com.services.SessionManager;
 import com.services.SearchImplementation;
 import com.models.Review;
@@ -132,6 +136,9 @@ public class BookDetailsController extends CommonController {
 
             // Load and display reviews
             loadReviews();
+
+            // Fill the "You May Also Like" rail
+            loadSimilarBooks();
         } catch (Exception e) {
             handleException("Error initializing BookDetailsController", e);
         }
@@ -215,6 +222,29 @@ public class BookDetailsController extends CommonController {
         }
     }
 
+    /**
+     * Show books similar to the current one. Matches are precomputed, so this
+     * only looks them up and builds the cards.
+     */
+    private void loadSimilarBooks() {
+        if (similarBooks == null || currentBook == null) {
+            return;
+        }
+        String bookKey = SearchIndex.keyOf(currentBook);
+        CompletableFuture
+                .supplyAsync(() -> SimilarBooksIndex.getInstance().similarTo(bookKey, SimilarBooksIndex.DEFAULT_LIMIT))
+                .thenAcceptAsync(books -> {
+                    similarBooks.getChildren().clear();
+                    for (Book book : books) {
+                        similarBooks.getChildren().add(createBookCard(book));
+                    }
+                }, Platform::runLater)
+                .exceptionally(e -> {
+                    logger.log(Level.WARNING, "Error loading similar books", e);
+                    return null;
+                });
+    }
+
     /**
      * Update star ratings UI based on the rating value
      */
@@ -392,8 +422,7 @@ public class BookDetailsController extends CommonController {
                 if (searchImplementation != null) {
                     searchImplementation.performSearch(searchTerm);
                 } else {
-                    System.err.println("Search implementation is not initialized here Bro -_- hahaha");
-                    showAlert(Alert.AlertType.ERROR, "Search Error", "Search implementation is not initialized");
+                    searchOnExplorePage(searchTerm);
                 }
             } else {
                 // Handle empty search term
@@ -486,7 +515,7 @@ public class BookDetailsController extends CommonController {
     public void viewAuthorBooks() {
         try {
             System.out.println("Viewing all books by author: " + currentBook.getAuthor());
-            // Navigate to author books page
+            searchOnExplorePage("author:\"" + currentBook.getAuthor().replace("\"", "") + "\"");
         } catch (Exception e) {
             handleException("Error viewing author books", e);
         }
@@ -364,12 +364,14 @@ public class CartController {
                 book.setHolderId(userId);
                 book.setBorrowDate(borrowDate);
                 book.setReturnDate(returnDate);
+                book.setTotalPurchases(book.getTotalPurchases() + 1);
 
                 // Update the book in the database
                 boolean updated = BookDetailsCollection.updateBook(book);
 
                 if (updated) {
                     borrowedBookIds.add(book.getId());
+                    UsersCollection.recordSale(book.getSellerId(), book.getCurrentPrice());
                 } else {
                     allSuccess = false;
                     LOGGER.log(Level.WARNING, "Failed to update book: " + book.getId());
@@ -4,6 +4,7 @@ import javafx.animation.ScaleTransition;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.Cursor;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -12,11 +13,19 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.models.Book;
+import com.search.AutocompleteIndex;
+import com.search.SearchIndex;
 import com.services.CartService;
 import com.services.SessionManager;
 import com.services.SearchImplementation;
@@ -37,14 +46,115 @@ public abstract class CommonController {
     @FXML
     private TextField searchField;
 
+    private static final int MAX_SUGGESTIONS = 8;
+
+    // Cover images load on a few shared threads instead of one thread per card
+    private static final int IMAGE_LOADER_THREADS = 3;
+    private static final ExecutorService IMAGE_LOADER = Executors.newFixedThreadPool(IMAGE_LOADER_THREADS,
+            runnable -> {
+                Thread thread = new Thread(runnable, "cover-image-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Decoded card covers, least recently used dropped first; at card size
+    // each takes about 110 KB, so the cache stays within a few MB
+    private static final double COVER_WIDTH = 140;
+    private static final double COVER_HEIGHT = 200;
+    private static final int COVER_CACHE_SIZE = 60;
+    private static final Map<String, Image> COVER_CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<>(COVER_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+                    return size() > COVER_CACHE_SIZE;
+                }
+            });
+
+    // Query typed on another page, run by the Explore page once it has loaded
+    private static String pendingExploreSearch;
+
     private final CartService cartService = CartService.getInstance();
     private SearchImplementation searchImplementation;
+    private final ContextMenu suggestionMenu = new ContextMenu();
 
     /**
      * Initialize method to be called in the initialize method of subclasses
      */
     protected void initializeCommon() {
         updateProfileButton();
+        installSearchSuggestions();
+    }
+
+    /**
+     * Attach the autocomplete dropdown to the search field
+     */
+    protected void installSearchSuggestions() {
+        if (searchField == null) {
+            return;
+        }
+
+        // Suggestions come from the local index, start building it if needed
+        SearchIndex.getInstance().ensureBuilt();
+
+        searchField.textProperty().addListener((obs, oldText, newText) -> showSuggestions(newText));
+        searchField.focusedProperty().addListener((obs, wasFocused, isFocused) -> {
+            if (!isFocused) {
+                suggestionMenu.hide();
+            }
+        });
+    }
+
+    private void showSuggestions(String text) {
+        if (text == null || text.trim().isEmpty() || !searchField.isFocused()) {
+            suggestionMenu.hide();
+            return;
+        }
+
+        List<AutocompleteIndex.Suggestion> suggestions = AutocompleteIndex.getInstance().suggest(text,
+                MAX_SUGGESTIONS);
+        if (suggestions.isEmpty()) {
+            suggestionMenu.hide();
+            return;
+        }
+
+        suggestionMenu.getItems().clear();
+        for (AutocompleteIndex.Suggestion suggestion : suggestions) {
+            Label label = new Label(suggestion.getText() + "  ·  " + formatKind(suggestion.getKind()));
+            label.setPrefWidth(Math.max(200, searchField.getWidth() - 20));
+            CustomMenuItem item = new CustomMenuItem(label, true);
+            item.setOnAction(e -> handleSuggestionSelected(suggestion));
+            suggestionMenu.getItems().add(item);
+        }
+
+        if (!suggestionMenu.isShowing()) {
+            suggestionMenu.show(searchField, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private static String formatKind(AutocompleteIndex.Kind kind) {
+        String name = kind.name().toLowerCase();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * Handle a picked suggestion. A title that belongs to a single book opens that
+     * book, anything else runs a search for the suggestion text.
+     * 
+     * @param suggestion The picked suggestion
+     */
+    protected void handleSuggestionSelected(AutocompleteIndex.Suggestion suggestion) {
+        suggestionMenu.hide();
+        if (suggestion.getKind() == AutocompleteIndex.Kind.TITLE && suggestion.getBookKey() != null) {
+            Book book = new Book();
+            book.setId(suggestion.getBookKey());
+            handleBookSelection(book);
+            return;
+        }
+
+        searchField.setText(suggestion.getText());
+        suggestionMenu.hide();
+        searchField.positionCaret(searchField.getText().length());
+        performSearch();
     }
 
     /**
@@ -376,8 +486,8 @@ public abstract class CommonController {
 
     // Create image placeholder first
     ImageView coverImage = new ImageView();
-    coverImage.setFitHeight(200);
-    coverImage.setFitWidth(140);
+    coverImage.setFitHeight(COVER_HEIGHT);
+    coverImage.setFitWidth(COVER_WIDTH);
     coverImage.setPreserveRatio(true);
     
     // Set a placeholder immediately so UI can render
@@ -388,28 +498,24 @@ public abstract class CommonController {
         LOGGER.log(Level.WARNING, "Failed to load placeholder image", ex);
     }
 
-    // Load the actual image asynchronously
-    Thread imageLoadThread = new Thread(() -> {
-        Image actualImage = null;
-        try {
-            actualImage = new Image(Objects.requireNonNull(getClass().getResourceAsStream(book.getImageUrl())));
-        } catch (Exception e) {
-            try {
-                actualImage = new Image(Objects.requireNonNull(book.getImageUrl()));
-            } catch (Exception ex) {
-                LOGGER.log(Level.WARNING, "Failed to load book image: " + book.getImageUrl(), ex);
+    // Covers shown or prefetched recently are reused as decoded
+    String imageUrl = book.getImageUrl();
+    Image cachedCover = imageUrl != null ? COVER_CACHE.get(imageUrl) : null;
+    if (cachedCover != null) {
+        coverImage.setImage(cachedCover);
+    } else {
+        // Load the actual image on the shared loader pool
+        IMAGE_LOADER.execute(() -> {
+            Image actualImage = loadCover(imageUrl);
+            if (actualImage == null) {
                 return; // Keep placeholder
             }
-        }
-        
-        // Update image on UI thread
-        final Image finalImage = actualImage;
-        if (finalImage != null) {
-            Platform.runLater(() -> coverImage.setImage(finalImage));
-        }
-    });
-    imageLoadThread.setDaemon(true);
-    imageLoadThread.start();
+            COVER_CACHE.put(imageUrl, actualImage);
+
+            // Update image on UI thread
+            Platform.runLater(() -> coverImage.setImage(actualImage));
+        });
+    }
 
     // Make the cover image clickable
     coverImage.setCursor(Cursor.HAND);
@@ -456,6 +562,29 @@ protected void addSimplifiedHoverEffect(VBox card) {
     });
 }
 
+
+    /**
+     * Decode a cover at card size, so covers kept in memory stay small
+     *
+     * @param imageUrl Resource path or URL of the cover
+     * @return The cover, or null if it cannot be loaded
+     */
+    private Image loadCover(String imageUrl) {
+        Image image;
+        try {
+            image = new Image(Objects.requireNonNull(getClass().getResourceAsStream(imageUrl)), COVER_WIDTH,
+                    COVER_HEIGHT, true, true);
+        } catch (Exception e) {
+            try {
+                image = new Image(Objects.requireNonNull(imageUrl), COVER_WIDTH, COVER_HEIGHT, true, true);
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Failed to load book image: " + imageUrl, ex);
+                return null;
+            }
+        }
+        return image.isError() ? null : image;
+    }
+
     /**
      * Handle book selection to navigate to book details page
      * 
@@ -550,9 +679,7 @@ protected void addSimplifiedHoverEffect(VBox card) {
                 if (searchImplementation != null) {
                     searchImplementation.performSearch(searchTerm);
                 } else {
-                    System.err.println("Search implementation is not initialized here Bro -_- hahaha");
-                    showAlert(Alert.AlertType.ERROR, "Search Error",
-                            "Search implementation is not initialized here Bro -_- hahaha");
+                    searchOnExplorePage(searchTerm);
                 }
             } else {
                 // Handle empty search term
@@ -569,6 +696,28 @@ protected void addSimplifiedHoverEffect(VBox card) {
         }
     }
 
+    /**
+     * Run a search on the Explore page, for pages without their own search
+     * results. The query may use the same field clauses as the Explore search.
+     * 
+     * @param searchTerm The search query
+     */
+    protected void searchOnExplorePage(String searchTerm) {
+        pendingExploreSearch = searchTerm;
+        navigateToExplore();
+    }
+
+    /**
+     * Take the query handed over by {@link #searchOnExplorePage(String)}, if any
+     * 
+     * @return The query, or null
+     */
+    protected static String takePendingExploreSearch() {
+        String searchTerm = pendingExploreSearch;
+        pendingExploreSearch = null;
+        return searchTerm;
+    }
+
     /**
      * Display an alert dialog
      * 
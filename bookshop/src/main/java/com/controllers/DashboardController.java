@@ -31,9 +31,11 @@ import java.util.Map;
 
 import com.database.BookDetailsCollection;
 import com.database.DatabaseManager;
+import com.database.UsersCollection;
 import com.models.Book;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 
@@ -74,6 +76,10 @@ public class DashboardController implements Initializable {
     @FXML
     private Label buyerRatingLabel;
     @FXML
+    private Label totalPurchasesLabel;
+    @FXML
+    private Label totalRevenueLabel;
+    @FXML
     private TableView<BookTableWrapper> uploadedBooksTable;
     @FXML
     private TableView<BookTableWrapper> borrowedBooksTable;
@@ -247,16 +253,18 @@ public class DashboardController implements Initializable {
 
                     // Load data in parallel
                     CompletableFuture<Document> profileFuture = CompletableFuture.supplyAsync(() -> userDoc);
+                    CompletableFuture<Document> statsFuture = CompletableFuture
+                            .supplyAsync(() -> UsersCollection.getUserStats(userId));
                     CompletableFuture<List<Book>> uploadedBooksFuture = CompletableFuture
                             .supplyAsync(() -> BookDetailsCollection.getBooksBySellerId(userId));
                     CompletableFuture<List<Book>> borrowedBooksFuture = CompletableFuture
                             .supplyAsync(() -> BookDetailsCollection.getBooksByHolderId(userId));
 
                     // When profile data is ready, update UI on JavaFX thread
-                    profileFuture.thenAcceptAsync(user -> {
-                        updateProfileUI(user);
-                        updateUserStatistics(user);
-                    }, Platform::runLater);
+                    profileFuture.thenAcceptAsync(user -> updateProfileUI(user), Platform::runLater);
+
+                    // Header counters come from the denormalized stats, not the book lists
+                    statsFuture.thenAcceptAsync(stats -> updateUserStatistics(stats), Platform::runLater);
 
                     // When uploaded books are ready
                     uploadedBooksFuture.thenAcceptAsync(books -> {
@@ -268,7 +276,7 @@ public class DashboardController implements Initializable {
                     borrowedBooksFuture.thenAcceptAsync(books -> updateBorrowedBooksTable(books), Platform::runLater);
 
                     // Wait for all async operations to complete
-                    CompletableFuture.allOf(profileFuture, uploadedBooksFuture, borrowedBooksFuture).join();
+                    CompletableFuture.allOf(profileFuture, statsFuture, uploadedBooksFuture, borrowedBooksFuture).join();
 
                 } catch (Exception e) {
                     LOGGER.log(Level.SEVERE, "Error loading dashboard data", e);
@@ -310,8 +318,11 @@ public class DashboardController implements Initializable {
         }
 
         try {
+            // Skip the book id arrays, they can hold thousands of entries for power sellers
             MongoCollection<Document> users = DatabaseManager.getDatabase().getCollection("users");
-            return users.find(Filters.eq("username", userName)).first();
+            return users.find(Filters.eq("username", userName))
+                    .projection(Projections.exclude("uploaded_books", "borrowed_books", "password_hash", "salt"))
+                    .first();
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error loading user document", e);
             return null;
@@ -425,18 +436,21 @@ public class DashboardController implements Initializable {
         }
     }
 
-    private void updateUserStatistics(Document user) {
+    private void updateUserStatistics(Document stats) {
         try {
-            // Extract statistics from user document with safe handling
-            int uploads = user.containsKey("uploaded_books") ? ((List<?>) user.get("uploaded_books")).size() : 0;
-            int borrowed = user.containsKey("borrowed_books") ? ((List<?>) user.get("borrowed_books")).size() : 0;
-            Double ratingObj = user.getDouble("rating");
-            double rating = (ratingObj != null) ? ratingObj : 0.0;
+            // Extract counters from the stats document with safe handling
+            int uploads = statValue(stats, UsersCollection.STAT_UPLOADED_COUNT).intValue();
+            int borrowed = statValue(stats, UsersCollection.STAT_ACTIVE_BORROWS).intValue();
+            int purchases = statValue(stats, UsersCollection.STAT_TOTAL_PURCHASES).intValue();
+            double revenue = statValue(stats, UsersCollection.STAT_REVENUE).doubleValue();
+            double rating = UsersCollection.getAverageRating(stats);
 
             // Update UI
             totalUploadsLabel.setText(String.valueOf(uploads));
             totalBorrowedLabel.setText(String.valueOf(borrowed));
             buyerRatingLabel.setText(String.format("%.1f", rating));
+            totalPurchasesLabel.setText(String.valueOf(purchases));
+            totalRevenueLabel.setText(String.format("%.2f TK", revenue));
 
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error updating user statistics", e);
@@ -685,6 +699,11 @@ public class DashboardController implements Initializable {
         return Math.max(1, Math.min(5, rating));
     }
 
+    private static Number statValue(Document stats, String key) {
+        Number value = stats.get(key, Number.class);
+        return value != null ? value : 0;
+    }
+
     private static LocalDate parseDate(String dateStr, LocalDate defaultDate) {
         if (dateStr == null || dateStr.isEmpty()) {
             return defaultDate;
@@ -1,6 +1,5 @@
 package com.controllers;
 
-import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -27,9 +26,14 @@ public class ExploreController extends CommonController implements Initializable
 
     // Data Storage
     private ObservableList<Book> allBooks = FXCollections.observableArrayList();
-    private ObservableList<Book> filteredBooks = FXCollections.observableArrayList();
+    // Held as returned by ExploreDB so a relevance-ranked result is only sorted
+    // as far as the pages shown
+    private List<Book> filteredBooks = new ArrayList<>();
     private Map<String, Set<String>> filterOptions = new HashMap<>();
+    // Result counts per filter option under the current filters
+    private Map<String, Map<String, Integer>> facetCounts = new HashMap<>();
     private boolean isAdvancedSearchVisible = false;
+    private PageRenderer pageRenderer;
 
     // FXML Component References
     @FXML
@@ -57,6 +61,10 @@ public class ExploreController extends CommonController implements Initializable
     @FXML
     private Label ratingValueLabel;
     @FXML
+    private Label ratingFacetLabel;
+    @FXML
+    private Label priceFacetLabel;
+    @FXML
     private DatePicker fromDatePicker;
     @FXML
     private DatePicker toDatePicker;
@@ -102,6 +110,13 @@ public class ExploreController extends CommonController implements Initializable
             // Initial display
             updatePagination();
             updateResultCount();
+
+            // Run a search typed on another page
+            String pendingSearch = takePendingExploreSearch();
+            if (pendingSearch != null) {
+                searchField.setText(pendingSearch);
+                applyFilters();
+            }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error initializing ExploreController", e);
             showAlert(Alert.AlertType.ERROR, "Initialization Error",
@@ -112,55 +127,27 @@ public class ExploreController extends CommonController implements Initializable
     private void setupPagination() {
         booksPagination.setPageCount(1);
         booksPagination.setCurrentPageIndex(0);
-        booksPagination.setPageFactory(this::createPage);
-
-        // Add direct listener to page changes
-        booksPagination.currentPageIndexProperty().addListener((obs, oldIndex, newIndex) -> {
-            Platform.runLater(() -> {
-                // Force recreation of the page content
-                booksGridPane.getChildren().clear();
-                createPage(newIndex.intValue());
-            });
-        });
+        // Page, filter and sort changes all go through one render per pulse
+        pageRenderer = new PageRenderer(booksPagination, booksGridPane, booksGridPane, this::pageCards);
     }
 
-    private Node createPage(int pageIndex) {
-        // Clear existing content
-        booksGridPane.getChildren().clear();
-
-        if (filteredBooks.isEmpty()) {
-            noResultsBox.setVisible(true);
-            noResultsBox.setManaged(true);
-            booksGridPane.setVisible(false);
-            booksGridPane.setManaged(false);
-            return booksGridPane;
-        }
-
-        booksGridPane.setVisible(true);
-        booksGridPane.setManaged(true);
-        noResultsBox.setVisible(false);
-        noResultsBox.setManaged(false);
-
-        int fromIndex = pageIndex * BOOKS_PER_PAGE;
+    private List<Node> pageCards(int pageIndex) {
+        int fromIndex = Math.min(pageIndex * BOOKS_PER_PAGE, filteredBooks.size());
         int toIndex = Math.min(fromIndex + BOOKS_PER_PAGE, filteredBooks.size());
 
-        System.out.println("Creating page " + pageIndex + " showing books " + fromIndex + " to " + toIndex);
-
+        List<Node> cards = new ArrayList<>();
         for (int i = fromIndex; i < toIndex; i++) {
             try {
                 Book book = filteredBooks.get(i);
                 VBox bookCard = createBookCard(book);
                 if (bookCard != null) {
-                    booksGridPane.getChildren().add(bookCard);
+                    cards.add(bookCard);
                 }
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "Error creating book card at index " + i, e);
             }
         }
-
-        // Force layout refresh
-        booksGridPane.requestLayout();
-        return booksGridPane;
+        return cards;
     }
 
     private void updatePagination() {
@@ -169,13 +156,17 @@ public class ExploreController extends CommonController implements Initializable
 
         System.out.println("Updating pagination, book count: " + filteredBooks.size() + ", page count: " + pageCount);
 
+        boolean hasResults = !filteredBooks.isEmpty();
+        booksGridPane.setVisible(hasResults);
+        booksGridPane.setManaged(hasResults);
+        noResultsBox.setVisible(!hasResults);
+        noResultsBox.setManaged(!hasResults);
+
         booksPagination.setPageCount(pageCount);
 
         // Reset to first page when filtering changes results
         booksPagination.setCurrentPageIndex(0);
-
-        // Force refresh
-        Platform.runLater(() -> createPage(0));
+        pageRenderer.refresh();
     }
 
     private void loadAllBooks() {
@@ -184,11 +175,12 @@ public class ExploreController extends CommonController implements Initializable
             List<Book> bookList = exploreDB.getAllBooks();
             allBooks.clear();
             allBooks.addAll(bookList);
-            filteredBooks.setAll(allBooks);
+            filteredBooks = new ArrayList<>(allBooks);
 
             // Extract filter options from books
             filterOptions = exploreDB.extractFilterOptions(bookList);
             populateFilterDropdowns();
+            updateFacetCounts(new HashMap<>());
 
             // Update pagination
             updatePagination();
@@ -216,6 +208,70 @@ public class ExploreController extends CommonController implements Initializable
         }
     }
 
+    /**
+     * Recount the results behind each filter option and show the counts
+     *
+     * @param filterParams Current filter parameters
+     */
+    private void updateFacetCounts(Map<String, Object> filterParams) {
+        try {
+            facetCounts = exploreDB.getFacetCounts(filterParams,
+                    filterOptions.getOrDefault("languages", Collections.emptySet()),
+                    filterOptions.getOrDefault("categories", Collections.emptySet()));
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error counting filter options", e);
+            facetCounts = new HashMap<>();
+        }
+        showFacetCounts(languageFilterCombo, "languages");
+        showFacetCounts(categoryFilterCombo, "categories");
+        showFacetCounts(availabilityFilterCombo, "availability");
+        priceFacetLabel.setText(facetSummary("price"));
+        ratingFacetLabel.setText(facetSummary("rating"));
+    }
+
+    // Setting the cell factory again rebuilds the cells with the new counts
+    private void showFacetCounts(ComboBox<String> combo, String facet) {
+        combo.setCellFactory(list -> new FacetCell(facet, null));
+        combo.setButtonCell(new FacetCell(facet, combo.getPromptText()));
+    }
+
+    private String facetSummary(String facet) {
+        StringJoiner summary = new StringJoiner("  ·  ");
+        facetCounts.getOrDefault(facet, Collections.emptyMap())
+                .forEach((option, count) -> summary.add(option + " (" + count + ")"));
+        return summary.toString();
+    }
+
+    /**
+     * Dropdown cell showing an option with its result count; options with no
+     * results are dimmed. As a button cell it shows the prompt when nothing is
+     * selected.
+     */
+    private final class FacetCell extends ListCell<String> {
+        private final String facet;
+        private final String prompt;
+
+        FacetCell(String facet, String prompt) {
+            this.facet = facet;
+            this.prompt = prompt;
+        }
+
+        @Override
+        protected void updateItem(String item, boolean empty) {
+            super.updateItem(item, empty);
+            getStyleClass().remove("facet-empty");
+            if (empty || item == null) {
+                setText(prompt);
+                return;
+            }
+            Integer count = facetCounts.getOrDefault(facet, Collections.emptyMap()).get(item);
+            setText(count != null ? item + " (" + count + ")" : item);
+            if (count != null && count == 0) {
+                getStyleClass().add("facet-empty");
+            }
+        }
+    }
+
     private void setupComboBoxes() {
         // Sort options
         sortByCombo.setItems(FXCollections.observableArrayList(
@@ -251,7 +307,8 @@ public class ExploreController extends CommonController implements Initializable
             }
         });
 
-        // Search field listener
+        // Search field listener; the query may use field clauses such as
+        // author:humayun price<500
         searchField.setOnKeyPressed(event -> {
             if (event.getCode() == javafx.scene.input.KeyCode.ENTER) {
                 applyFilters();
@@ -261,12 +318,6 @@ public class ExploreController extends CommonController implements Initializable
         // Numeric only for price fields
         setupNumericTextField(minPriceField);
         setupNumericTextField(maxPriceField);
-
-        booksPagination.currentPageIndexProperty().addListener((obs, oldIndex, newIndex) -> {
-    System.out.println("Page changed from " + oldIndex + " to " + newIndex);
-    Platform.runLater(() -> createPage(newIndex.intValue()));
-});
-
     }
 
     private void setupNumericTextField(TextField textField) {
@@ -306,7 +357,8 @@ public class ExploreController extends CommonController implements Initializable
             discountFilterCheck.setSelected(false);
 
             // Reset results
-            filteredBooks.setAll(allBooks);
+            filteredBooks = new ArrayList<>(allBooks);
+            updateFacetCounts(new HashMap<>());
 
             // Make sure the noResultsBox is properly hidden
             noResultsBox.setVisible(false);
@@ -364,7 +416,8 @@ public class ExploreController extends CommonController implements Initializable
             List<Book> result = exploreDB.getFilteredBooks(filterParams);
 
             // Update filtered books
-            filteredBooks.setAll(result);
+            filteredBooks = result;
+            updateFacetCounts(filterParams);
 
             // Update UI
             boolean hasResults = !filteredBooks.isEmpty();
@@ -379,6 +432,15 @@ public class ExploreController extends CommonController implements Initializable
         }
     }
 
+    /**
+     * Searching from the explore page runs the full filter pipeline
+     */
+    @Override
+    @FXML
+    public void performSearch() {
+        applyFilters();
+    }
+
     private void updateResultCount() {
         resultCountLabel.setText("Showing " + filteredBooks.size() + " book(s)");
     }
@@ -411,7 +473,7 @@ public class ExploreController extends CommonController implements Initializable
     public void cleanup() {
         // Clear references
         allBooks.clear();
-        filteredBooks.clear();
+        filteredBooks = new ArrayList<>();
         filterOptions.clear();
         clearImageCache();
     }
@@ -59,12 +59,16 @@ public class HomeController extends CommonController {
     @FXML
     private VBox searchResultsSection;
 
+    @FXML
+    private ScrollPane searchResultsScroll;
+
     private volatile boolean slideshowRunning = true;
     private Thread slideshowThread;
     private int currentImageIndex = 0;
 
     // Books pagination parameters
     private final int BOOKS_PER_PAGE = 10;
+    private static final int MIN_LIVE_SEARCH_LENGTH = 3;
     private int currentFeaturedPage = 0;
     private int currentRecommendedPage = 0;
     private List<Book> allFeaturedBooks;
@@ -101,7 +105,7 @@ public class HomeController extends CommonController {
                 }
 
                 // Initialize the search implementation
-                searchImplementation = new SearchImplementation(this, searchResultsContainer);
+                searchImplementation = new SearchImplementation(this, searchResultsContainer, searchResultsScroll);
             }
 
             loadBooks();
@@ -654,26 +658,22 @@ public class HomeController extends CommonController {
                     }
                 });
 
-                // Enable live search after typing 3+ characters
+                // Live search after typing 3+ characters. The pipeline debounces keystrokes
+                // and runs queries off the FX thread, so every change can be submitted.
                 searchField.textProperty().addListener((observable, oldValue, newValue) -> {
                     try {
-                        if (newValue != null && newValue.length() >= 3) {
-                            // Only perform live search if we've changed by at least 3 characters to avoid
-                            // too many searches
-                            if (oldValue == null || Math.abs(oldValue.length() - newValue.length()) >= 3) {
-                                performSearch();
-                            }
-                        } else if (newValue == null || newValue.isEmpty()) {
-                            // Clear results when search field is empty
-                            if (searchImplementation != null) {
-                                searchImplementation.clearResults();
-
-                                // Also hide the search results section to remove the space
-                                if (searchResultsSection != null) {
-                                    searchResultsSection.setVisible(false);
-                                    searchResultsSection.setManaged(false);
-                                }
-                            }
+                        if (searchImplementation == null) {
+                            return;
+                        }
+                        String query = newValue != null ? newValue.trim() : "";
+                        if (query.length() >= MIN_LIVE_SEARCH_LENGTH) {
+                            setSearchSectionVisible(true);
+                            searchImplementation.performLiveSearch(query);
+                        } else {
+                            // Too short to search: drop any query still in flight so
+                            // its stale results never show, and hide the section
+                            searchImplementation.clearResults();
+                            setSearchSectionVisible(false);
                         }
                     } catch (Exception e) {
                         LOGGER.log(Level.WARNING, "Error in search listener", e);
@@ -685,6 +685,13 @@ public class HomeController extends CommonController {
         }
     }
 
+    private void setSearchSectionVisible(boolean visible) {
+        if (searchResultsSection != null) {
+            searchResultsSection.setVisible(visible);
+            searchResultsSection.setManaged(visible);
+        }
+    }
+
     @Override
     @FXML
     public void performSearch() {
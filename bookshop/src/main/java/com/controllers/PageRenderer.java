@@ -0,0 +1,116 @@
+package com.controllers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.control.Pagination;
+import javafx.scene.layout.Pane;
+
+/**
+ * Render scheduler for a paginated book grid. Page changes from the
+ * pagination and data changes from filtering or sorting only request a
+ * render; requests made before the pending render runs are coalesced into it,
+ * so the grid is filled once per pulse with whatever page and data are
+ * current by then. A render whose page and data were already shown is
+ * skipped.
+ *
+ * After each render the pages before and after the shown one are built off
+ * screen, one per event so input is not held up, which starts their cover
+ * loads. Turning to one of them then only swaps the prepared cards in. Only
+ * those two pages are kept, and a data change drops them.
+ *
+ * The pagination's page factory is taken over and always returns the same
+ * page node, holding the grid. Must be used from the FX application thread.
+ */
+final class PageRenderer {
+    private static final Logger LOGGER = Logger.getLogger(PageRenderer.class.getName());
+
+    // Pages kept prepared on each side of the one shown
+    private static final int PREFETCH_DISTANCE = 1;
+
+    private final Pagination pagination;
+    private final Pane grid;
+    private final IntFunction<List<Node>> cards;
+    // Cards built ahead for pages near the shown one, for the current data
+    private final Map<Integer, List<Node>> prefetched = new HashMap<>();
+    private boolean scheduled;
+    // Bumped on every data change, so the same page index renders again
+    private long dataVersion;
+    private long renderedVersion = -1;
+    private int renderedPage = -1;
+
+    /**
+     * @param pagination Pagination whose pages are rendered
+     * @param page       Node shown for every page, holding the grid
+     * @param grid       Pane the cards of the shown page are put in
+     * @param cards      Builds the cards of a page
+     */
+    PageRenderer(Pagination pagination, Node page, Pane grid, IntFunction<List<Node>> cards) {
+        this.pagination = pagination;
+        this.grid = grid;
+        this.cards = cards;
+        pagination.setPageFactory(pageIndex -> {
+            request();
+            return page;
+        });
+    }
+
+    /**
+     * The data behind the pages changed; render the current page again
+     */
+    void refresh() {
+        dataVersion++;
+        prefetched.clear();
+        request();
+    }
+
+    private void request() {
+        if (!scheduled) {
+            scheduled = true;
+            Platform.runLater(this::renderNow);
+        }
+    }
+
+    private void renderNow() {
+        scheduled = false;
+        int pageIndex = pagination.getCurrentPageIndex();
+        if (pageIndex == renderedPage && dataVersion == renderedVersion) {
+            // Superseded requests for what is already shown
+            return;
+        }
+        renderedPage = pageIndex;
+        renderedVersion = dataVersion;
+
+        List<Node> page = prefetched.remove(pageIndex);
+        LOGGER.fine(() -> "Rendering page " + pageIndex + (page != null ? " from prefetch" : ""));
+        grid.getChildren().setAll(page != null ? page : cards.apply(pageIndex));
+        prefetchAround(pageIndex);
+    }
+
+    private void prefetchAround(int pageIndex) {
+        // Pages the user moved away from are dropped, keeping memory bounded
+        prefetched.keySet().removeIf(prepared -> Math.abs(prepared - pageIndex) > PREFETCH_DISTANCE);
+        for (int distance = 1; distance <= PREFETCH_DISTANCE; distance++) {
+            for (int target : new int[] { pageIndex + distance, pageIndex - distance }) {
+                if (target >= 0 && target < pagination.getPageCount() && !prefetched.containsKey(target)) {
+                    long version = dataVersion;
+                    Platform.runLater(() -> prefetch(target, version));
+                }
+            }
+        }
+    }
+
+    private void prefetch(int pageIndex, long version) {
+        // Skipped if the data changed or the user moved on in the meantime
+        if (version != dataVersion || pageIndex == renderedPage
+                || Math.abs(pageIndex - renderedPage) > PREFETCH_DISTANCE || prefetched.containsKey(pageIndex)) {
+            return;
+        }
+        prefetched.put(pageIndex, cards.apply(pageIndex));
+    }
+}
@@ -194,6 +194,7 @@ public class ShareBookController extends CommonController implements Initializab
                 fetchDetailsButton.setOnAction(this::fetchBookDetails);
             }
             updateProfileButton();
+            installSearchSuggestions();
             LOGGER.info("ShareBookController initialization completed successfully");
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error initializing ShareBookController", e);
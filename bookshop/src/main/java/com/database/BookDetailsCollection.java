@@ -3,11 +3,17 @@ package com.database;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
@@ -16,19 +22,26 @@ import org.bson.conversions.Bson;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.Sorts;
-import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertOneResult;
 import com.mongodb.client.result.UpdateResult;
 import com.services.SessionManager;
 import com.models.Book;
 import com.models.Book.Review;
+import com.search.CatalogExecutor;
+import com.search.CatalogExecutor.Operation;
+import com.search.SearchIndex;
 
 public class BookDetailsCollection {
     private static final Logger LOGGER = Logger.getLogger(BookDetailsCollection.class.getName());
     private static final String COLLECTION_NAME = "bookdetails";
     private static final MongoCollection<Document> books = DatabaseManager.getCollection(COLLECTION_NAME);
+    public static final int DEFAULT_BATCH_SIZE = 100;
 
     public static void initialize() {
         try {
@@ -49,6 +62,10 @@ public class BookDetailsCollection {
             if (result.wasAcknowledged() && result.getInsertedId() != null) {
                 // Update the book's ID with the generated MongoDB ID
                 book.set_id(result.getInsertedId().asObjectId().getValue().toString());
+                // Cached queries are dropped once the index, which filters
+                // and resolves them, has the new book
+                SearchIndex.getInstance().index(book,
+                        () -> QueryCache.getInstance().onInsert(SearchIndex.keyOf(book)));
                 return true;
             }
             return false;
@@ -82,27 +99,12 @@ public class BookDetailsCollection {
 
     // Get all books
     public static List<Book> getAllBooks() {
-        List<Book> bookList = new ArrayList<>();
-        MongoCursor<Document> cursor = null;
-
         try {
-            FindIterable<Document> iterable = books.find();
-            cursor = iterable.iterator();
-
-            while (cursor.hasNext()) {
-                Document doc = cursor.next();
-                Book book = convertDocumentToBook(doc);
-                bookList.add(book);
-            }
+            return fetchAndDecode(books.find());
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error getting all books", e);
-        } finally {
-            // Close cursor in finally block to ensure resources are released
-            if (cursor != null) {
-                cursor.close();
-            }
+            return new ArrayList<>();
         }
-        return bookList;
     }
 
     // Get books by seller ID
@@ -140,9 +142,7 @@ public class BookDetailsCollection {
 public static List<Book> getBooksByPublisher(String publisher) {
     try {
         Bson filter = Filters.eq("publisher", publisher);
-        return books.find(filter).into(new ArrayList<>()).stream()
-                .map(BookDetailsCollection::convertDocumentToBook)
-                .collect(Collectors.toList());
+        return fetchAndDecode(books.find(filter));
     } catch (Exception e) {
         LOGGER.log(Level.SEVERE, "Error getting books by publisher: " + publisher, e);
         return new ArrayList<>();
@@ -196,6 +196,99 @@ public static List<Book> getBooksByPublisher(String publisher) {
         return bookList;
     }
 
+    // Count books currently held by a user without loading them
+    public static long countBooksByHolderId(String holderId) {
+        try {
+            return books.countDocuments(Filters.eq("holderId", holderId));
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error counting books by holder ID: " + holderId, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Aggregates a seller's upload, purchase, revenue and rating totals on the
+     * server. Used to backfill the per-user counters in UsersCollection.
+     * 
+     * @param sellerId The seller's user ID
+     * @return Document keyed by the UsersCollection stat field names
+     */
+    public static Document aggregateSellerStats(String sellerId) {
+        Document stats = new Document(UsersCollection.STAT_UPLOADED_COUNT, 0)
+                .append(UsersCollection.STAT_TOTAL_PURCHASES, 0)
+                .append(UsersCollection.STAT_REVENUE, 0.0)
+                .append(UsersCollection.STAT_RATING_SUM, 0.0)
+                .append(UsersCollection.STAT_RATING_COUNT, 0);
+        try {
+            Document totals = books.aggregate(Arrays.asList(
+                    Aggregates.match(Filters.eq("sellerId", sellerId)),
+                    Aggregates.group(null,
+                            Accumulators.sum("uploaded", 1),
+                            Accumulators.sum("purchases", "$totalPurchases"),
+                            Accumulators.sum("revenue",
+                                    new Document("$multiply", Arrays.asList("$currentPrice", "$totalPurchases"))),
+                            Accumulators.sum("ratingSum",
+                                    new Document("$multiply", Arrays.asList("$rating", "$reviewCount"))),
+                            Accumulators.sum("ratingCount", "$reviewCount"))))
+                    .first();
+
+            if (totals != null) {
+                stats.put(UsersCollection.STAT_UPLOADED_COUNT, totals.get("uploaded", Number.class).intValue());
+                stats.put(UsersCollection.STAT_TOTAL_PURCHASES, totals.get("purchases", Number.class).intValue());
+                stats.put(UsersCollection.STAT_REVENUE, totals.get("revenue", Number.class).doubleValue());
+                stats.put(UsersCollection.STAT_RATING_SUM, totals.get("ratingSum", Number.class).doubleValue());
+                stats.put(UsersCollection.STAT_RATING_COUNT, totals.get("ratingCount", Number.class).intValue());
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error aggregating seller stats for: " + sellerId, e);
+        }
+        return stats;
+    }
+
+    // =============== STREAMING OPERATIONS ===============
+
+    /**
+     * Streams every book in the catalog straight off the cursor. Documents are
+     * decoded one at a time, so only a single batch is held in memory. The stream
+     * must be closed, preferably with try-with-resources, to release the cursor.
+     * 
+     * @param batchSize Number of documents fetched per round trip
+     * @return Lazily decoded stream of books
+     */
+    public static Stream<Book> streamAllBooks(int batchSize) {
+        return streamBooksByFilter(new Document(), batchSize);
+    }
+
+    /**
+     * Streams books matching a filter straight off the cursor
+     * 
+     * @param filter    Query filter
+     * @param batchSize Number of documents fetched per round trip
+     * @return Lazily decoded stream of books, to be closed by the caller
+     */
+    public static Stream<Book> streamBooksByFilter(Bson filter, int batchSize) {
+        MongoCursor<Document> cursor = books.find(filter)
+                .batchSize(batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE)
+                .iterator();
+
+        Spliterator<Document> spliterator = Spliterators.spliteratorUnknownSize(cursor,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(cursor::close)
+                .map(BookDetailsCollection::convertDocumentToBook)
+                .filter(Objects::nonNull);
+    }
+
+    // Stream books by seller ID
+    public static Stream<Book> streamBooksBySellerId(String sellerId, int batchSize) {
+        return streamBooksByFilter(Filters.eq("sellerId", sellerId), batchSize);
+    }
+
+    // Stream books by holder ID
+    public static Stream<Book> streamBooksByHolderId(String holderId, int batchSize) {
+        return streamBooksByFilter(Filters.eq("holderId", holderId), batchSize);
+    }
+
     // =============== SEARCH OPERATIONS ===============
 
     // Search books by title (partial match)
@@ -206,9 +299,6 @@ public static List<Book> getBooksByPublisher(String publisher) {
 
     // Comprehensive search across multiple fields
     public static List<Book> searchBooks(String searchTerm) {
-        List<Book> bookList = new ArrayList<>();
-        MongoCursor<Document> cursor = null;
-
         try {
             // Create comprehensive filters to match the document structure
             FindIterable<Document> iterable = books.find(Filters.or(
@@ -220,23 +310,11 @@ public static List<Book> getBooksByPublisher(String publisher) {
                     Filters.regex("isbn", searchTerm, "i"),
                     Filters.regex("id", searchTerm, "i")));
 
-            cursor = iterable.iterator();
-            while (cursor.hasNext()) {
-                Document doc = cursor.next();
-                Book book = convertDocumentToBook(doc);
-                if (book != null) {
-                    bookList.add(book);
-                }
-            }
+            return fetchAndDecode(iterable);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error searching books: " + e.getMessage(), e);
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            return new ArrayList<>();
         }
-
-        return bookList;
     }
 
     // =============== UPDATE OPERATIONS ===============
@@ -261,13 +339,6 @@ public static List<Book> getBooksByPublisher(String publisher) {
                 filter = Filters.eq("id", idToUse);
             }
 
-            // Get the existing document
-            Document existingDoc = books.find(filter).first();
-            if (existingDoc == null) {
-                LOGGER.warning("Book not found with ID: " + idToUse);
-                return false;
-            }
-
             // Convert book to document for update
             Document updateDoc = convertBookToDocument(book);
             updateDoc.remove("_id");
@@ -281,8 +352,40 @@ public static List<Book> getBooksByPublisher(String publisher) {
                 }
             }
 
-            UpdateResult result = books.updateOne(filter, new Document("$set", filteredUpdate));
-            return result.getModifiedCount() > 0;
+            // The document as it was before this update, so counters follow
+            // exactly the change this update made
+            Document existingDoc = books.findOneAndUpdate(filter, new Document("$set", filteredUpdate),
+                    new FindOneAndUpdateOptions().returnDocument(ReturnDocument.BEFORE));
+            if (existingDoc == null) {
+                LOGGER.warning("Book not found with ID: " + idToUse);
+                return false;
+            }
+
+            // Only queries reading a field whose value changed need invalidating
+            List<String> changedFields = new ArrayList<>();
+            for (String key : filteredUpdate.keySet()) {
+                if (!Objects.equals(existingDoc.get(key), filteredUpdate.get(key))) {
+                    changedFields.add(key);
+                }
+            }
+            if (!changedFields.isEmpty()) {
+                if (changedFields.contains("holderId")) {
+                    UsersCollection.recordHolderChange(existingDoc.getString("holderId"),
+                            filteredUpdate.getString("holderId"));
+                }
+
+                // Re-index the merged document so partial updates keep untouched fields
+                existingDoc.putAll(filteredUpdate);
+                Book updated = convertDocumentToBook(existingDoc);
+                if (updated != null) {
+                    SearchIndex.getInstance().index(updated,
+                            () -> QueryCache.getInstance().onUpdate(SearchIndex.keyOf(updated), changedFields));
+                } else {
+                    QueryCache.getInstance().clear();
+                }
+                return true;
+            }
+            return false;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error updating book with ID: " +
                     (book.get_id() != null ? book.get_id() : book.getId()), e);
@@ -300,8 +403,15 @@ public static List<Book> getBooksByPublisher(String publisher) {
                 return false;
             }
 
-            DeleteResult result = books.deleteOne(Filters.eq("id", new ObjectId(id)));
-            return result.getDeletedCount() > 0;
+            Document deleted = books.findOneAndDelete(Filters.eq("id", new ObjectId(id)));
+            if (deleted != null) {
+                UsersCollection.recordBookDeleted(deleted.getString("sellerId"), deleted.getString("holderId"),
+                        numberOf(deleted, "totalPurchases").intValue(), numberOf(deleted, "currentPrice").doubleValue(),
+                        numberOf(deleted, "rating").doubleValue(), numberOf(deleted, "reviewCount").intValue());
+                SearchIndex.getInstance().remove(id, () -> QueryCache.getInstance().onDelete(id));
+                return true;
+            }
+            return false;
         } catch (IllegalArgumentException e) {
             LOGGER.log(Level.WARNING, "Invalid ObjectId format: " + id, e);
             return false;
@@ -313,6 +423,12 @@ public static List<Book> getBooksByPublisher(String publisher) {
 
     // =============== HELPER METHODS ===============
 
+    // Numeric field of a document, 0 when missing
+    private static Number numberOf(Document doc, String field) {
+        Number value = doc.get(field, Number.class);
+        return value != null ? value : 0;
+    }
+
     // Helper function to check if the ID is a valid ObjectId
     private static boolean isValidObjectId(String id) {
         return id != null && id.matches("^[0-9a-fA-F]{24}$");
@@ -320,31 +436,72 @@ public static List<Book> getBooksByPublisher(String publisher) {
 
     // Generic method to get books by any filter
     private static List<Book> getBooksByFilter(Bson filter) {
-        List<Book> bookList = new ArrayList<>();
-        MongoCursor<Document> cursor = null;
-
         try {
-            FindIterable<Document> iterable = books.find(filter);
-            cursor = iterable.iterator();
-
-            while (cursor.hasNext()) {
-                Document doc = cursor.next();
-                Book book = convertDocumentToBook(doc);
-                if (book != null) {
-                    bookList.add(book);
-                }
-            }
+            return fetchAndDecode(books.find(filter));
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error getting books by filter: " + e.getMessage(), e);
-        } finally {
-            if (cursor != null) {
-                cursor.close();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Drains a query into a list of books, fetching it in batches of the size
+     * the catalog executor finds worth decoding on its pool
+     */
+    private static List<Book> fetchAndDecode(FindIterable<Document> iterable) {
+        int batchSize = CatalogExecutor.taskSize(Operation.DECODE);
+        try (MongoCursor<Document> cursor = iterable.batchSize(batchSize).iterator()) {
+            return decodeAll(cursor, batchSize);
+        }
+    }
+
+    /**
+     * Decodes documents as they are read. Each full batch is forked to the
+     * catalog executor's pool as soon as it is read, so decoding overlaps with
+     * reading the next batch and only batches in flight are held undecoded. The
+     * rest is decoded on the calling thread. Document order is kept.
+     *
+     * @param documents Documents to decode, e.g. a cursor
+     * @param batchSize Documents per forked batch
+     * @return Decoded books
+     */
+    static List<Book> decodeAll(Iterator<Document> documents, int batchSize) {
+        List<ForkJoinTask<List<Book>>> pending = new ArrayList<>();
+        List<Document> batch = new ArrayList<>(batchSize);
+        while (documents.hasNext()) {
+            batch.add(documents.next());
+            if (batch.size() == batchSize) {
+                List<Document> full = batch;
+                pending.add(CatalogExecutor.fork(Operation.DECODE, full.size(), () -> decodeBatch(full)));
+                batch = new ArrayList<>(batchSize);
             }
         }
 
+        List<Document> rest = batch;
+        List<Book> tail = CatalogExecutor.map(Operation.DECODE, rest.size(),
+                (from, to) -> decodeBatch(rest.subList(from, to)), CatalogExecutor::concat);
+        if (pending.isEmpty()) {
+            return tail;
+        }
+        List<Book> bookList = new ArrayList<>(pending.size() * batchSize + tail.size());
+        for (ForkJoinTask<List<Book>> task : pending) {
+            bookList.addAll(task.join());
+        }
+        bookList.addAll(tail);
         return bookList;
     }
 
+    static List<Book> decodeBatch(List<Document> docs) {
+        List<Book> decoded = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            Book book = convertDocumentToBook(doc);
+            if (book != null) {
+                decoded.add(book);
+            }
+        }
+        return decoded;
+    }
+
     // Generic method to get books by filter and sort
     private static List<Book> getBooksByFilterAndSort(Bson filter, Bson sort, int limit) {
         List<Book> bookList = new ArrayList<>();
@@ -437,6 +594,19 @@ public static List<Book> getBooksByPublisher(String publisher) {
 
             if (result.getModifiedCount() > 0) {
                 LOGGER.info("Successfully added review to book with ID: " + bookId);
+                UsersCollection.recordReview(bookDoc.getString("sellerId"), newReview.getRating());
+
+                // Keep the search index and cached queries in step with the new rating
+                List<Document> reviews = currentReviews != null ? new ArrayList<>(currentReviews) : new ArrayList<>();
+                reviews.add(reviewDoc);
+                bookDoc.append("buyerReviews", reviews)
+                        .append("rating", newAverageRating)
+                        .append("reviewCount", newReviewCount);
+                Book reviewed = convertDocumentToBook(bookDoc);
+                if (reviewed != null) {
+                    SearchIndex.getInstance().index(reviewed, () -> QueryCache.getInstance()
+                            .onUpdate(SearchIndex.keyOf(reviewed), Arrays.asList("buyerReviews", "rating", "reviewCount")));
+                }
                 return true;
             } else {
                 LOGGER.warning("Failed to add review: No document was modified");
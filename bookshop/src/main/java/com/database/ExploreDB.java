@@ -1,17 +1,22 @@
 package com.database;
 
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.logging.Level;
+import java.util.function.Function;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Sorts;
 import com.models.Book;
+import com.search.BookTable;
+import com.search.CatalogExecutor;
+import com.search.CollationKeys;
+import com.search.RelevanceRanker;
+import com.search.RowBitmap;
+import com.search.SearchIndex;
+import com.search.StructuredQuery;
 
 /**
  * Handles all database operations for the Explore page by leveraging
@@ -19,7 +24,18 @@ import com.models.Book;
  */
 public class ExploreDB {
     private static final Logger LOGGER = Logger.getLogger(ExploreDB.class.getName());
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int MAX_FUZZY_RESULTS = 200;
+
+    // Document fields read by a free-text search
+    private static final Set<String> SEARCH_FIELDS = Set.of("id", "title", "author", "categories", "publisher",
+            "description", "isbn");
+    private static final Map<String, BookTable.SortKey> SORT_KEYS = Map.of("Title", BookTable.SortKey.TITLE,
+            "Author", BookTable.SortKey.AUTHOR, "Price", BookTable.SortKey.PRICE, "Rating", BookTable.SortKey.RATING,
+            "Publication Date", BookTable.SortKey.PUBLICATION_DATE);
+
+    // Filters and result of the last filtered query, kept to refine when the
+    // next query only narrows it
+    private volatile Selection lastSelection;
 
     /**
      * Fetches all books from the database
@@ -71,16 +87,51 @@ public class ExploreDB {
     }
 
     /**
-     * Searches books based on the search term using BookDetailsCollection
+     * Searches books based on the search term using BookDetailsCollection. Once
+     * the local search index is built, books matching only with typos (e.g.
+     * "Drakula") are appended after the exact matches.
      * 
      * @param searchTerm The search term to find in books
-     * @return List of books matching the search term
+     * @return List of books matching the search term, exact matches first
      */
     public List<Book> searchBooks(String searchTerm) {
         if (searchTerm == null || searchTerm.isEmpty()) {
             return BookDetailsCollection.getAllBooks();
         }
-        return BookDetailsCollection.searchBooks(searchTerm);
+
+        QueryCache cache = QueryCache.getInstance();
+        String cacheKey = "search:" + searchTerm.trim().toLowerCase(Locale.ROOT);
+        List<Book> cached = cache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        List<Book> result = findMatches(searchTerm);
+        cache.put(cacheKey, SEARCH_FIELDS, result, generation);
+        return result;
+    }
+
+    // Exact database matches followed by index matches found only through a
+    // misspelled term
+    private List<Book> findMatches(String searchTerm) {
+        List<Book> exactMatches = BookDetailsCollection.searchBooks(searchTerm);
+        SearchIndex index = SearchIndex.getInstance();
+        if (!index.isReady()) {
+            index.ensureBuilt();
+            return exactMatches;
+        }
+
+        List<Book> result = new ArrayList<>(exactMatches);
+        Set<String> seen = new HashSet<>();
+        for (Book book : exactMatches) {
+            seen.add(SearchIndex.keyOf(book));
+        }
+        for (Book book : index.searchTypos(searchTerm, MAX_FUZZY_RESULTS)) {
+            if (seen.add(SearchIndex.keyOf(book))) {
+                result.add(book);
+            }
+        }
+        return result;
     }
 
     /**
@@ -122,140 +173,315 @@ public class ExploreDB {
         return BookDetailsCollection.getBooksByPublisher(publisher);
     }
 
-    // Modify the getFilteredBooks method to check for publisher filter
+    /**
+     * Filters and sorts the catalog. The search term may carry field clauses
+     * such as {@code author:humayun price<500} (see {@link StructuredQuery}),
+     * which are applied as the matching filters.
+     * 
+     * @param filterParams Map of filter parameters
+     * @return Matching books in the requested order
+     */
     public List<Book> getFilteredBooks(Map<String, Object> filterParams) {
-        List<Book> result;
-
-        // First try to use specialized search methods if applicable
+        filterParams = StructuredQuery.expand(filterParams);
         String searchTerm = (String) filterParams.get("searchTerm");
-        String authorFilter = (String) filterParams.get("author");
-        String categoryFilter = (String) filterParams.get("category");
-        String publisherFilter = (String) filterParams.get("publisher");
-
-        if (searchTerm != null && !searchTerm.isEmpty()) {
-            // Use the search capability from BookDetailsCollection
-            result = searchBooks(searchTerm);
-        } else if (authorFilter != null && !authorFilter.isEmpty()) {
-            // Use the author filter from BookDetailsCollection
-            result = getBooksByAuthor(authorFilter);
-        } else if (categoryFilter != null && !categoryFilter.isEmpty()) {
-            // Use the category filter from BookDetailsCollection
-            result = getBooksByCategory(categoryFilter);
-        } else if (publisherFilter != null && !publisherFilter.isEmpty()) {
-            // Use the publisher filter
-            result = getBooksByPublisher(publisherFilter);
-        } else {
-            // Get all books if no specialized filter is applicable
-            result = getAllBooks();
-        }
-
-        // Rest of the method remains the same...
-        result = applyCompositeFilters(result, filterParams);
         String sortBy = (String) filterParams.get("sortBy");
         Boolean ascending = (Boolean) filterParams.get("ascending");
-        result = sortBooks(result, sortBy, ascending);
 
-        return result;
+        // Only the filtered set is cached. Every sort orders lazily, so sorting
+        // the cached set again costs only the pages read, while caching the
+        // sorted list would read, and so order, all of it.
+        List<Book> filtered = filteredSet(filterParams, QueryCache.getInstance().generation(), true);
+        return sortBooks(filtered, sortBy, ascending, searchTerm);
     }
 
     /**
-     * Applies composite filters that aren't directly available in
-     * BookDetailsCollection
-     * 
-     * @param books        Original list of books
+     * Counts of results for each option of the filter dropdowns under the
+     * current filters. Each facet is counted with the other filters applied
+     * but not its own, so a count is what choosing that option would show.
+     *
+     * @param filterParams Map of filter parameters, as for
+     *                     {@link #getFilteredBooks(Map)}
+     * @param languages    Language options
+     * @param categories   Category options
+     * @return Counts by option under "languages", "categories", "availability",
+     *         "price" (by price bucket) and "rating" (by minimum rating)
+     */
+    public Map<String, Map<String, Integer>> getFacetCounts(Map<String, Object> filterParams,
+            Collection<String> languages, Collection<String> categories) {
+        filterParams = StructuredQuery.expand(filterParams);
+        Map<String, Object> baseParams = new HashMap<>(filterParams);
+        baseParams.keySet().removeAll(FacetCounter.FACET_PARAMS);
+        List<Book> candidates = filteredSet(baseParams, QueryCache.getInstance().generation(), false);
+
+        // Count over the index's table when it holds every candidate, otherwise
+        // over a table of just the candidates
+        BookTable table = SearchIndex.getInstance().getTable();
+        int[] rows = new int[candidates.size()];
+        for (int i = 0; i < rows.length && table != null; i++) {
+            rows[i] = table.rowOf(SearchIndex.keyOf(candidates.get(i)));
+            if (rows[i] < 0) {
+                table = null;
+            }
+        }
+        if (table == null) {
+            table = BookTable.of(candidates);
+            rows = new int[table.size()];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+        }
+        rows = Arrays.stream(rows).sorted().distinct().toArray();
+        return FacetCounter.count(table, RowBitmap.of(rows), filterParams, languages, categories);
+    }
+
+    /**
+     * Books passing the filters in their stored order, cached until a write
+     * changes a field the filters read. A query that only adds or tightens
+     * filters since the remembered one is answered by testing just those
+     * filters on the remembered result.
+     *
      * @param filterParams Map of filter parameters
-     * @return Filtered list of books
+     * @param generation   Cache write generation read before the query
+     * @param remember     Whether to remember this query and its result
+     * @return Books passing the filters
      */
-    public List<Book> applyCompositeFilters(List<Book> books, Map<String, Object> filterParams) {
-        List<Book> result = new ArrayList<>(books);
-
-        // Apply language filter
-        String languageFilter = (String) filterParams.get("language");
-        if (languageFilter != null && !languageFilter.isEmpty()) {
-            result = result.stream()
-                    .filter(book -> languageFilter.equals(book.getLanguage()))
-                    .collect(Collectors.toList());
+    private List<Book> filteredSet(Map<String, Object> filterParams, long generation, boolean remember) {
+        QueryCache cache = QueryCache.getInstance();
+        String filterKey = filterCacheKey(filterParams);
+        List<Book> filtered = cache.get(filterKey);
+        if (filtered == null) {
+            Selection last = lastSelection;
+            Map<String, Object> narrowing = last != null && last.generation == generation
+                    ? narrowing(last.filterParams, filterParams)
+                    : null;
+            if (narrowing != null) {
+                FilterPlan plan = FilterPlan.create(narrowing);
+                LOGGER.fine("Refining " + last.books.size() + " books: " + plan);
+                filtered = plan.refine(last.books);
+            } else {
+                filtered = runFilteredQuery(filterParams);
+            }
+            cache.put(filterKey, filterFields(filterParams), filtered, generation);
+        }
+        if (remember) {
+            lastSelection = new Selection(filterParams, filtered, generation);
         }
+        return filtered;
+    }
 
-        // Apply price range filters
-        Double minPrice = (Double) filterParams.get("minPrice");
-        if (minPrice != null) {
-            result = result.stream()
-                    .filter(book -> book.getCurrentPrice() >= minPrice)
-                    .collect(Collectors.toList());
+    /**
+     * Filters that turn the previous query into the next one, when the next
+     * only adds filters or tightens a range
+     *
+     * @param previous Filter parameters of the previous query
+     * @param next     Filter parameters of the next query
+     * @return The added and tightened filters, or null if the next query drops,
+     *         loosens or changes one of the previous filters
+     */
+    private Map<String, Object> narrowing(Map<String, Object> previous, Map<String, Object> next) {
+        Map<String, Object> narrowing = new HashMap<>();
+        for (Map.Entry<String, Object> entry : next.entrySet()) {
+            String name = entry.getKey();
+            if (isSortParam(name) || normalizeFilterValue(name, entry.getValue()) == null) {
+                continue;
+            }
+            String before = normalizeFilterValue(name, previous.get(name));
+            if (!normalizeFilterValue(name, entry.getValue()).equals(before)) {
+                narrowing.put(name, entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Object> entry : previous.entrySet()) {
+            String name = entry.getKey();
+            if (isSortParam(name) || normalizeFilterValue(name, entry.getValue()) == null) {
+                continue;
+            }
+            Object after = next.get(name);
+            if (normalizeFilterValue(name, after) == null
+                    || narrowing.containsKey(name) && !tightens(name, entry.getValue(), after)) {
+                return null;
+            }
         }
+        return narrowing;
+    }
 
-        Double maxPrice = (Double) filterParams.get("maxPrice");
-        if (maxPrice != null) {
-            result = result.stream()
-                    .filter(book -> book.getCurrentPrice() <= maxPrice)
-                    .collect(Collectors.toList());
+    private static boolean isSortParam(String name) {
+        return name.equals("sortBy") || name.equals("ascending");
+    }
+
+    // Whether a changed filter value passes only books the old one passed
+    private static boolean tightens(String name, Object before, Object after) {
+        switch (name) {
+            case "minPrice":
+            case "minRating":
+                return ((Number) after).doubleValue() >= ((Number) before).doubleValue();
+            case "maxPrice":
+            case "maxRating":
+                return ((Number) after).doubleValue() <= ((Number) before).doubleValue();
+            case "fromDate":
+                return !((LocalDate) after).isBefore((LocalDate) before);
+            case "toDate":
+                return !((LocalDate) after).isAfter((LocalDate) before);
+            default:
+                return false;
         }
+    }
 
-        // Apply rating filter
-        Double minRating = (Double) filterParams.get("minRating");
-        if (minRating != null && minRating > 0) {
-            result = result.stream()
-                    .filter(book -> book.getRating() >= minRating)
-                    .collect(Collectors.toList());
+    /**
+     * Filters of a query with the books passing them
+     */
+    private static final class Selection {
+        final Map<String, Object> filterParams;
+        final List<Book> books;
+        final long generation;
+
+        Selection(Map<String, Object> filterParams, List<Book> books, long generation) {
+            this.filterParams = new HashMap<>(filterParams);
+            this.books = books;
+            this.generation = generation;
         }
+    }
 
-        // Apply date filters
-        LocalDate fromDate = (LocalDate) filterParams.get("fromDate");
-        LocalDate toDate = (LocalDate) filterParams.get("toDate");
-
-        if (fromDate != null || toDate != null) {
-            result = result.stream()
-                    .filter(book -> {
-                        try {
-                            String dateStr = book.getPublicationDate();
-                            if (dateStr == null || dateStr.isEmpty()) {
-                                return true; // Keep if no date is available
-                            }
-
-                            LocalDate pubDate = LocalDate.parse(dateStr, DATE_FORMATTER);
-
-                            boolean afterFromDate = fromDate == null || !pubDate.isBefore(fromDate);
-                            boolean beforeToDate = toDate == null || !pubDate.isAfter(toDate);
-
-                            return afterFromDate && beforeToDate;
-                        } catch (Exception e) {
-                            LOGGER.log(Level.WARNING, "Error parsing date for book: " + book.getTitle(), e);
-                            return true; // Keep if date parsing fails
-                        }
-                    })
-                    .collect(Collectors.toList());
+    private List<Book> runFilteredQuery(Map<String, Object> filterParams) {
+        FilterPlan plan = FilterPlan.create(filterParams);
+        LOGGER.fine("Filter plan: " + plan);
+
+        List<Book> candidates;
+        switch (plan.getSource()) {
+            case SEARCH:
+                candidates = searchBooks(plan.getSourceValue());
+                break;
+            case AUTHOR:
+                candidates = getBooksByAuthor(plan.getSourceValue());
+                break;
+            case CATEGORY:
+                candidates = getBooksByCategory(plan.getSourceValue());
+                break;
+            case PUBLISHER:
+                candidates = getBooksByPublisher(plan.getSourceValue());
+                break;
+            default:
+                candidates = getAllBooks();
+                break;
         }
+        return plan.filter(candidates);
+    }
 
-        // Apply availability filter
-        String availabilityFilter = (String) filterParams.get("availability");
-        if (availabilityFilter != null && !availabilityFilter.equals("Any")) {
-            switch (availabilityFilter) {
-                case "Available Now":
-                    result = result.stream()
-                            .filter(book -> book.getHolderId() == null || book.getHolderId().isEmpty())
-                            .collect(Collectors.toList());
+    /**
+     * Normalized cache key for a set of filter parameters. Parameters left at
+     * their "no filter" value are dropped and the rest are written in a fixed
+     * order, so equivalent filter states share one key.
+     * 
+     * @param filterParams Map of filter parameters
+     * @return Cache key
+     */
+    private String filterCacheKey(Map<String, Object> filterParams) {
+        Map<String, String> normalized = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : filterParams.entrySet()) {
+            String value = normalizeFilterValue(entry.getKey(), entry.getValue());
+            if (value != null) {
+                normalized.put(entry.getKey(), value);
+            }
+        }
+
+        // The filtered set does not depend on the order it is shown in
+        normalized.remove("sortBy");
+        normalized.remove("ascending");
+        return "filter:" + normalized;
+    }
+
+    private String normalizeFilterValue(String name, Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (name) {
+            case "searchTerm":
+            case "author":
+            case "category":
+                // Matched case-insensitively
+                String text = value.toString().trim().toLowerCase(Locale.ROOT);
+                return text.isEmpty() ? null : text;
+            case "minRating":
+                return ((Number) value).doubleValue() > 0 ? value.toString() : null;
+            case "discountOnly":
+            case "featuredOnly":
+                return Boolean.TRUE.equals(value) ? "true" : null;
+            case "availability":
+                return "Any".equals(value) ? null : value.toString();
+            default:
+                String raw = value.toString().trim();
+                return raw.isEmpty() ? null : raw;
+        }
+    }
+
+    /**
+     * Document fields a filtered query reads, so the cached result can be
+     * dropped when a write changes one of them
+     * 
+     * @param filterParams Map of filter parameters
+     * @return Names of the fields the query depends on
+     */
+    private Set<String> filterFields(Map<String, Object> filterParams) {
+        Set<String> fields = new HashSet<>();
+        for (Map.Entry<String, Object> entry : filterParams.entrySet()) {
+            if (normalizeFilterValue(entry.getKey(), entry.getValue()) == null) {
+                continue;
+            }
+            switch (entry.getKey()) {
+                case "searchTerm":
+                    fields.addAll(SEARCH_FIELDS);
+                    break;
+                case "author":
+                    fields.add("author");
+                    break;
+                case "category":
+                    fields.add("categories");
+                    break;
+                case "publisher":
+                    fields.add("publisher");
+                    break;
+                case "language":
+                    fields.add("language");
+                    break;
+                case "minPrice":
+                case "maxPrice":
+                    fields.add("currentPrice");
+                    break;
+                case "minRating":
+                case "maxRating":
+                    fields.add("rating");
                     break;
-                case "Available for Purchase":
-                    // All books are available for purchase in this system
+                case "fromDate":
+                case "toDate":
+                    fields.add("publicationDate");
                     break;
-                case "Available for Borrowing":
-                    result = result.stream()
-                            .filter(book -> book.getHolderId() == null || book.getHolderId().isEmpty())
-                            .collect(Collectors.toList());
+                case "availability":
+                    fields.add("holderId");
+                    break;
+                case "discountOnly":
+                    fields.add("discount");
+                    break;
+                case "featuredOnly":
+                    fields.add("featured");
+                    break;
+                default:
                     break;
             }
         }
+        return fields;
+    }
 
-        // Apply discount filter
-        Boolean discountOnly = (Boolean) filterParams.get("discountOnly");
-        if (discountOnly != null && discountOnly) {
-            result = result.stream()
-                    .filter(book -> book.getDiscount() > 0)
-                    .collect(Collectors.toList());
-        }
-
-        return result;
+    /**
+     * Applies composite filters that aren't directly available in
+     * BookDetailsCollection
+     * 
+     * @param books        Original list of books
+     * @param filterParams Map of filter parameters
+     * @return Filtered list of books
+     */
+    public List<Book> applyCompositeFilters(List<Book> books, Map<String, Object> filterParams) {
+        Map<String, Object> noSource = new HashMap<>(filterParams);
+        noSource.keySet().removeAll(List.of("searchTerm", "author", "category", "publisher"));
+        return FilterPlan.create(noSource).filter(books);
     }
 
     /**
@@ -267,18 +493,40 @@ public class ExploreDB {
      * @return Sorted list of books
      */
     public List<Book> sortBooks(List<Book> books, String sortBy, Boolean ascending) {
+        return sortBooks(books, sortBy, ascending, null);
+    }
+
+    /**
+     * Applies sorting to the book list. "Relevance" ranks by text match, rating,
+     * recent purchases and availability, and only sorts as far as it is read.
+     * The other options read the books off the search index's presorted rows
+     * when the index holds them all, or else select each page with a bounded
+     * heap; either way only as far as the list is read.
+     * 
+     * @param books      List of books to sort
+     * @param sortBy     Field to sort by
+     * @param ascending  Whether to sort in ascending order
+     * @param searchTerm Search text the books were found with, may be null
+     * @return Sorted list of books
+     */
+    public List<Book> sortBooks(List<Book> books, String sortBy, Boolean ascending, String searchTerm) {
         if (sortBy == null || sortBy.equals("Relevance")) {
-            return books; // No sorting
+            return RelevanceRanker.rank(books, searchTerm);
+        }
+
+        List<Book> presorted = presorted(books, sortBy, ascending != null && ascending);
+        if (presorted != null) {
+            return presorted;
         }
 
         Comparator<Book> comparator = null;
 
         switch (sortBy) {
             case "Title":
-                comparator = Comparator.comparing(Book::getTitle, Comparator.nullsLast(String::compareTo));
+                comparator = collated(books, Book::getTitle);
                 break;
             case "Author":
-                comparator = Comparator.comparing(Book::getAuthor, Comparator.nullsLast(String::compareTo));
+                comparator = collated(books, Book::getAuthor);
                 break;
             case "Price":
                 comparator = Comparator.comparing(Book::getCurrentPrice, Comparator.nullsLast(Double::compareTo));
@@ -293,12 +541,53 @@ public class ExploreDB {
                 return books;
         }
 
-        List<Book> sortedBooks = new ArrayList<>(books);
         if (ascending == null || !ascending) {
             comparator = comparator.reversed();
         }
 
-        sortedBooks.sort(comparator);
-        return sortedBooks;
+        // Only the pages read get ordered
+        return new TopKList<>(books, comparator);
+    }
+
+    /**
+     * Order by a text field under the catalog's collation, with each book's
+     * collation key made once up front
+     */
+    private static Comparator<Book> collated(List<Book> books, Function<Book, String> field) {
+        byte[][] byIndex = new byte[books.size()][];
+        CatalogExecutor.forEach(CatalogExecutor.Operation.SORT_KEYS, byIndex.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                byIndex[i] = CollationKeys.of(field.apply(books.get(i)));
+            }
+        });
+        Map<Book, byte[]> keys = new IdentityHashMap<>();
+        for (int i = 0; i < byIndex.length; i++) {
+            keys.put(books.get(i), byIndex[i]);
+        }
+        return Comparator.comparing(keys::get, Comparator.nullsLast(CollationKeys::compare));
+    }
+
+    /**
+     * Books in sort order from the book table's permutation for the sort
+     * option
+     *
+     * @return The sorted list, or null if the option has no permutation or a
+     *         book is not in the table
+     */
+    private List<Book> presorted(List<Book> books, String sortBy, boolean ascending) {
+        BookTable.SortKey key = SORT_KEYS.get(sortBy);
+        BookTable table = SearchIndex.getInstance().getTable();
+        if (key == null || table.size() == 0) {
+            return null;
+        }
+        Book[] byRow = new Book[table.size()];
+        for (Book book : books) {
+            int row = table.rowOf(SearchIndex.keyOf(book));
+            if (row < 0 || byRow[row] != null) {
+                return null;
+            }
+            byRow[row] = book;
+        }
+        return table.sorted(key, ascending, byRow, books.size());
     }
 }
\ No newline at end of file
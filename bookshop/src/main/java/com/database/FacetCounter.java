@@ -0,0 +1,171 @@
+package com.database;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.search.BookTable;
+import com.search.CatalogExecutor;
+import com.search.RowBitmap;
+
+/**
+ * Result counts for each option of the Explore filters under the current
+ * filter state. A facet is counted with every filter applied except its own,
+ * so each count is the number of results picking that option would give.
+ *
+ * Counts are bitmap intersections over a {@link BookTable}: the rows passing
+ * the other filters are ANDed with each option's rows. Price and rating, which
+ * have no bitmaps, are counted in one pass over the rows left.
+ */
+final class FacetCounter {
+
+    /**
+     * Filter parameters that belong to a facet; the others narrow every facet
+     */
+    static final Set<String> FACET_PARAMS = Set.of("language", "category", "minPrice", "maxPrice", "minRating",
+            "maxRating", "availability");
+
+    static final String[] AVAILABILITY_OPTIONS = { "Any", "Available Now", "Available for Purchase",
+            "Available for Borrowing" };
+
+    private static final double[] PRICE_BOUNDS = { 0, 200, 500, 1000, 2000 };
+    private static final String[] PRICE_LABELS = { "Under ৳200", "৳200-500", "৳500-1000", "৳1000-2000",
+            "৳2000+" };
+    private static final double[] RATING_BOUNDS = { 1, 2, 3, 4, 5 };
+
+    private enum Facet {
+        LANGUAGE, CATEGORY, PRICE, RATING, AVAILABILITY
+    }
+
+    private FacetCounter() {
+    }
+
+    /**
+     * Count every facet
+     *
+     * @param table        Table holding the books
+     * @param base         Rows passing the filters that are not facets
+     * @param filterParams Filter parameters, expanded from the search box
+     * @param languages    Language options
+     * @param categories   Category options
+     * @return Counts by option, under "languages", "categories", "price",
+     *         "rating" and "availability", each in option order
+     */
+    static Map<String, Map<String, Integer>> count(BookTable table, RowBitmap base, Map<String, Object> filterParams,
+            Collection<String> languages, Collection<String> categories) {
+        Map<Facet, RowBitmap> active = activeFilters(table, base, filterParams);
+
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+
+        RowBitmap rows = without(base, active, Facet.LANGUAGE);
+        Map<String, Integer> languageCounts = new LinkedHashMap<>();
+        for (String language : languages) {
+            languageCounts.put(language, rows.and(table.languageRows(language)).cardinality());
+        }
+        facets.put("languages", languageCounts);
+
+        // Each category option matches a regex against every category name,
+        // so options are counted in parallel when there are many
+        RowBitmap categoryBase = without(base, active, Facet.CATEGORY);
+        String[] options = categories.toArray(new String[0]);
+        int[] counts = new int[options.length];
+        CatalogExecutor.forEach(CatalogExecutor.Operation.FACETS, options.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                counts[i] = categoryBase.and(categoryRows(table, options[i])).cardinality();
+            }
+        });
+        Map<String, Integer> categoryCounts = new LinkedHashMap<>();
+        for (int i = 0; i < options.length; i++) {
+            categoryCounts.put(options[i], counts[i]);
+        }
+        facets.put("categories", categoryCounts);
+
+        int[] prices = table.priceHistogram(PRICE_BOUNDS, without(base, active, Facet.PRICE).toArray());
+        Map<String, Integer> priceCounts = new LinkedHashMap<>();
+        for (int i = 0; i < PRICE_LABELS.length; i++) {
+            priceCounts.put(PRICE_LABELS[i], prices[i]);
+        }
+        facets.put("price", priceCounts);
+
+        // Bands are cumulative, like the minimum rating slider
+        int[] ratings = table.ratingHistogram(RATING_BOUNDS, without(base, active, Facet.RATING).toArray());
+        int[] atLeast = new int[RATING_BOUNDS.length];
+        for (int i = RATING_BOUNDS.length - 1; i >= 0; i--) {
+            atLeast[i] = ratings[i] + (i + 1 < atLeast.length ? atLeast[i + 1] : 0);
+        }
+        Map<String, Integer> ratingCounts = new LinkedHashMap<>();
+        for (int i = 0; i < RATING_BOUNDS.length; i++) {
+            ratingCounts.put((int) RATING_BOUNDS[i] + "+", atLeast[i]);
+        }
+        facets.put("rating", ratingCounts);
+
+        rows = without(base, active, Facet.AVAILABILITY);
+        int available = rows.and(table.availableRows()).cardinality();
+        Map<String, Integer> availabilityCounts = new LinkedHashMap<>();
+        for (String option : AVAILABILITY_OPTIONS) {
+            availabilityCounts.put(option, requiresAvailable(option) ? available : rows.cardinality());
+        }
+        facets.put("availability", availabilityCounts);
+        return facets;
+    }
+
+    // Rows passing each facet filter that is set, within the base rows
+    private static Map<Facet, RowBitmap> activeFilters(BookTable table, RowBitmap base,
+            Map<String, Object> filterParams) {
+        Map<Facet, RowBitmap> active = new EnumMap<>(Facet.class);
+
+        String language = (String) filterParams.get("language");
+        if (language != null && !language.isEmpty()) {
+            active.put(Facet.LANGUAGE, table.languageRows(language));
+        }
+        Object category = filterParams.get("category");
+        if (category instanceof String && !((String) category).trim().isEmpty()) {
+            active.put(Facet.CATEGORY, categoryRows(table, ((String) category).trim()));
+        }
+
+        Double minPrice = (Double) filterParams.get("minPrice");
+        Double maxPrice = (Double) filterParams.get("maxPrice");
+        if (minPrice != null || maxPrice != null) {
+            active.put(Facet.PRICE, RowBitmap.of(table.priceBetween(minPrice != null ? minPrice
+                    : Double.NEGATIVE_INFINITY, maxPrice != null ? maxPrice : Double.POSITIVE_INFINITY,
+                    base.toArray())));
+        }
+        Double minRating = (Double) filterParams.get("minRating");
+        Double maxRating = (Double) filterParams.get("maxRating");
+        if (minRating != null && minRating > 0 || maxRating != null) {
+            active.put(Facet.RATING, RowBitmap.of(table.ratingBetween(minRating != null && minRating > 0
+                    ? minRating : Double.NEGATIVE_INFINITY, maxRating != null ? maxRating : Double.POSITIVE_INFINITY,
+                    base.toArray())));
+        }
+
+        if (requiresAvailable((String) filterParams.get("availability"))) {
+            active.put(Facet.AVAILABILITY, table.availableRows());
+        }
+        return active;
+    }
+
+    private static RowBitmap without(RowBitmap base, Map<Facet, RowBitmap> active, Facet facet) {
+        RowBitmap rows = base;
+        for (Map.Entry<Facet, RowBitmap> filter : active.entrySet()) {
+            if (filter.getKey() != facet) {
+                rows = rows.and(filter.getValue());
+            }
+        }
+        return rows;
+    }
+
+    // The category filter is a case-insensitive regex, so an option can match
+    // other category names containing it
+    private static RowBitmap categoryRows(BookTable table, String category) {
+        Pattern pattern = FilterPlan.regex(category);
+        return table.categoryRows(name -> pattern.matcher(name).find());
+    }
+
+    // All books are available for purchase in this system
+    private static boolean requiresAvailable(String availability) {
+        return "Available Now".equals(availability) || "Available for Borrowing".equals(availability);
+    }
+}
@@ -0,0 +1,412 @@
+package com.database;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.models.Book;
+import com.search.BookTable;
+import com.search.CatalogExecutor;
+import com.search.RowBitmap;
+import com.search.SearchField;
+import com.search.SearchIndex;
+
+/**
+ * Execution plan for a filtered catalog query. Of the filters the database can
+ * answer with a query (text search, author, category, publisher), the one the
+ * search index estimates to match the fewest books fetches the candidates.
+ * Every other filter is fused into a single test applied in one pass over the
+ * candidates.
+ *
+ * Filters on plain values (price, rating, language, dates, availability,
+ * discount, featured) and a category filter that is not fetching are first
+ * resolved against the search index's {@link BookTable}: categorical ones as
+ * an AND of its row bitmaps, ranges as scans over its columns. Candidates found
+ * there only need a row lookup. Candidates missing from the table are tested
+ * field by field.
+ */
+final class FilterPlan {
+    private static final Logger LOGGER = Logger.getLogger(FilterPlan.class.getName());
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * Filters backed by a database query, in the order they are preferred when
+     * there are no index statistics
+     */
+    enum Source {
+        SEARCH("searchTerm", EnumSet.allOf(SearchField.class)),
+        AUTHOR("author", EnumSet.of(SearchField.AUTHOR)),
+        CATEGORY("category", EnumSet.of(SearchField.CATEGORIES)),
+        PUBLISHER("publisher", EnumSet.of(SearchField.PUBLISHER)),
+        ALL(null, Collections.emptySet());
+
+        private final String param;
+        private final Set<SearchField> fields;
+
+        Source(String param, Set<SearchField> fields) {
+            this.param = param;
+            this.fields = fields;
+        }
+    }
+
+    private final Source source;
+    private final String sourceValue;
+    private final int estimate;
+    private final List<Predicate<Book>> residual;
+    private final List<Predicate<Book>> composite;
+    private final Pattern category;
+    private final Map<String, Object> filterParams;
+
+    private FilterPlan(Source source, String sourceValue, int estimate, List<Predicate<Book>> residual,
+            Pattern category, Map<String, Object> filterParams) {
+        this.source = source;
+        this.sourceValue = sourceValue;
+        this.estimate = estimate;
+        this.residual = residual;
+        this.composite = compositePredicates(filterParams);
+        if (category != null) {
+            composite.add(book -> anyCategory(category, book));
+        }
+        this.category = category;
+        this.filterParams = filterParams;
+    }
+
+    /**
+     * Plan a query
+     *
+     * @param filterParams Filter parameters as given to
+     *                     {@link ExploreDB#getFilteredBooks(Map)}
+     * @return The plan
+     */
+    static FilterPlan create(Map<String, Object> filterParams) {
+        Map<Source, String> indexed = new EnumMap<>(Source.class);
+        for (Source candidate : Source.values()) {
+            if (candidate.param == null) {
+                continue;
+            }
+            Object value = filterParams.get(candidate.param);
+            if (value instanceof String && !((String) value).trim().isEmpty()) {
+                indexed.put(candidate, ((String) value).trim());
+            }
+        }
+
+        Source best = Source.ALL;
+        int bestEstimate = -1;
+        SearchIndex index = SearchIndex.getInstance();
+        for (Map.Entry<Source, String> entry : indexed.entrySet()) {
+            int estimate = index.estimateMatches(entry.getValue(), entry.getKey().fields);
+            if (estimate < 0) {
+                // No statistics yet: keep the fixed preference order
+                best = indexed.keySet().iterator().next();
+                bestEstimate = -1;
+                break;
+            }
+            if (best == Source.ALL || estimate < bestEstimate) {
+                best = entry.getKey();
+                bestEstimate = estimate;
+            }
+        }
+
+        // A category filter that does not fetch is resolved with the table's
+        // category bitmaps along with the other composite filters
+        List<Predicate<Book>> residual = new ArrayList<>();
+        Pattern category = null;
+        for (Map.Entry<Source, String> entry : indexed.entrySet()) {
+            if (entry.getKey() == Source.CATEGORY && best != Source.CATEGORY) {
+                category = regex(entry.getValue());
+            } else if (entry.getKey() != best) {
+                residual.add(sourcePredicate(entry.getKey(), entry.getValue()));
+            }
+        }
+        return new FilterPlan(best, indexed.get(best), bestEstimate, residual, category, filterParams);
+    }
+
+    /**
+     * Filter that fetches the candidates
+     */
+    Source getSource() {
+        return source;
+    }
+
+    /**
+     * Value of the fetching filter, null for {@link Source#ALL}
+     */
+    String getSourceValue() {
+        return sourceValue;
+    }
+
+    /**
+     * Keep the candidates passing every other filter
+     *
+     * @param candidates Books fetched for the source filter
+     * @return Books passing all filters, in candidate order
+     */
+    List<Book> filter(List<Book> candidates) {
+        BookTable table = SearchIndex.getInstance().getTable();
+        BitSet selected = null;
+        if (!composite.isEmpty() && table.size() > 0) {
+            selected = new BitSet(table.size());
+            for (int row : compositeRows(table, filterParams, category)) {
+                selected.set(row);
+            }
+        }
+
+        // Large candidate lists are tested in parallel ranges, joined in order
+        BitSet rows = selected;
+        return CatalogExecutor.map(CatalogExecutor.Operation.FILTER, candidates.size(), (from, to) -> {
+            List<Book> result = new ArrayList<>();
+            for (Book book : candidates.subList(from, to)) {
+                int row = rows != null ? table.rowOf(SearchIndex.keyOf(book)) : -1;
+                boolean passes = row >= 0 ? rows.get(row) : all(composite, book);
+                if (passes && all(residual, book)) {
+                    result.add(book);
+                }
+            }
+            return result;
+        }, CatalogExecutor::concat);
+    }
+
+    /**
+     * Keep the books of an earlier selection passing every filter of this
+     * plan, the fetching one included. Used when the filters only narrow a
+     * selection, so nothing needs fetching.
+     *
+     * @param selection Books passing the earlier filters
+     * @return Books also passing these filters, in selection order
+     */
+    List<Book> refine(List<Book> selection) {
+        if (source == Source.ALL) {
+            return filter(selection);
+        }
+        Predicate<Book> fetched = sourcePredicate(source, sourceValue);
+        List<Book> candidates = new ArrayList<>();
+        for (Book book : selection) {
+            if (fetched.test(book)) {
+                candidates.add(book);
+            }
+        }
+        return filter(candidates);
+    }
+
+    private static boolean all(List<Predicate<Book>> predicates, Book book) {
+        for (Predicate<Book> predicate : predicates) {
+            if (!predicate.test(book)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "fetch " + source + (sourceValue != null ? " '" + sourceValue + "'" : "")
+                + (estimate >= 0 ? " (~" + estimate + " books)" : "") + ", then "
+                + (residual.size() + composite.size()) + " filters";
+    }
+
+    /**
+     * Tests for the filters that have no database query: language, price,
+     * rating, publication date, availability, discount and featured. Cheap
+     * comparisons come first so most books are rejected before dates are parsed.
+     *
+     * @param filterParams Filter parameters
+     * @return Tests every book must pass
+     */
+    static List<Predicate<Book>> compositePredicates(Map<String, Object> filterParams) {
+        List<Predicate<Book>> predicates = new ArrayList<>();
+
+        Double minPrice = (Double) filterParams.get("minPrice");
+        if (minPrice != null) {
+            predicates.add(book -> book.getCurrentPrice() >= minPrice);
+        }
+        Double maxPrice = (Double) filterParams.get("maxPrice");
+        if (maxPrice != null) {
+            predicates.add(book -> book.getCurrentPrice() <= maxPrice);
+        }
+
+        Double minRating = (Double) filterParams.get("minRating");
+        if (minRating != null && minRating > 0) {
+            predicates.add(book -> book.getRating() >= minRating);
+        }
+        Double maxRating = (Double) filterParams.get("maxRating");
+        if (maxRating != null) {
+            predicates.add(book -> book.getRating() <= maxRating);
+        }
+
+        Boolean discountOnly = (Boolean) filterParams.get("discountOnly");
+        if (discountOnly != null && discountOnly) {
+            predicates.add(book -> book.getDiscount() > 0);
+        }
+
+        Boolean featuredOnly = (Boolean) filterParams.get("featuredOnly");
+        if (featuredOnly != null && featuredOnly) {
+            predicates.add(Book::isFeatured);
+        }
+
+        String availability = (String) filterParams.get("availability");
+        if ("Available Now".equals(availability) || "Available for Borrowing".equals(availability)) {
+            predicates.add(book -> book.getHolderId() == null || book.getHolderId().isEmpty());
+        }
+        // All books are available for purchase in this system
+
+        String language = (String) filterParams.get("language");
+        if (language != null && !language.isEmpty()) {
+            predicates.add(book -> language.equalsIgnoreCase(book.getLanguage()));
+        }
+
+        LocalDate fromDate = (LocalDate) filterParams.get("fromDate");
+        LocalDate toDate = (LocalDate) filterParams.get("toDate");
+        if (fromDate != null || toDate != null) {
+            predicates.add(book -> publishedWithin(book, fromDate, toDate));
+        }
+        return predicates;
+    }
+
+    /**
+     * Rows of a book table passing the filters of
+     * {@link #compositePredicates(Map)} and a category filter. The categorical
+     * filters are intersected as bitmaps, then only the rows left are scanned
+     * for the range filters.
+     *
+     * @param table        The table
+     * @param filterParams Filter parameters
+     * @param category     Pattern some category of a book must contain, or null
+     * @return Passing rows in increasing order
+     */
+    static int[] compositeRows(BookTable table, Map<String, Object> filterParams, Pattern category) {
+        RowBitmap bitmap = null;
+
+        String language = (String) filterParams.get("language");
+        if (language != null && !language.isEmpty()) {
+            bitmap = intersect(bitmap, table.languageRows(language));
+        }
+        if (category != null) {
+            bitmap = intersect(bitmap, table.categoryRows(name -> category.matcher(name).find()));
+        }
+        Boolean discountOnly = (Boolean) filterParams.get("discountOnly");
+        if (discountOnly != null && discountOnly) {
+            bitmap = intersect(bitmap, table.discountedRows());
+        }
+        Boolean featuredOnly = (Boolean) filterParams.get("featuredOnly");
+        if (featuredOnly != null && featuredOnly) {
+            bitmap = intersect(bitmap, table.featuredRows());
+        }
+        String availability = (String) filterParams.get("availability");
+        if ("Available Now".equals(availability) || "Available for Borrowing".equals(availability)) {
+            bitmap = intersect(bitmap, table.availableRows());
+        }
+        int[] rows = bitmap != null ? bitmap.toArray() : null;
+
+        Double minPrice = (Double) filterParams.get("minPrice");
+        Double maxPrice = (Double) filterParams.get("maxPrice");
+        if (minPrice != null || maxPrice != null) {
+            rows = table.priceBetween(minPrice != null ? minPrice : Double.NEGATIVE_INFINITY,
+                    maxPrice != null ? maxPrice : Double.POSITIVE_INFINITY, rows);
+        }
+        Double minRating = (Double) filterParams.get("minRating");
+        Double maxRating = (Double) filterParams.get("maxRating");
+        if (minRating != null && minRating > 0 || maxRating != null) {
+            rows = table.ratingBetween(minRating != null && minRating > 0 ? minRating : Double.NEGATIVE_INFINITY,
+                    maxRating != null ? maxRating : Double.POSITIVE_INFINITY, rows);
+        }
+
+        LocalDate fromDate = (LocalDate) filterParams.get("fromDate");
+        LocalDate toDate = (LocalDate) filterParams.get("toDate");
+        if (fromDate != null || toDate != null) {
+            rows = table.publishedBetween(fromDate, toDate, rows);
+        }
+
+        if (rows == null) {
+            rows = new int[table.size()];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+        }
+        return rows;
+    }
+
+    private static RowBitmap intersect(RowBitmap rows, RowBitmap filter) {
+        return rows != null ? rows.and(filter) : filter;
+    }
+
+    // Books without a readable date are kept
+    private static boolean publishedWithin(Book book, LocalDate fromDate, LocalDate toDate) {
+        try {
+            String dateStr = book.getPublicationDate();
+            if (dateStr == null || dateStr.isEmpty()) {
+                return true;
+            }
+            LocalDate pubDate = LocalDate.parse(dateStr, DATE_FORMATTER);
+            return (fromDate == null || !pubDate.isBefore(fromDate)) && (toDate == null || !pubDate.isAfter(toDate));
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error parsing date for book: " + book.getTitle(), e);
+            return true;
+        }
+    }
+
+    /**
+     * In-memory equivalent of a source filter's database query, for when another
+     * filter fetches the candidates
+     */
+    private static Predicate<Book> sourcePredicate(Source source, String value) {
+        switch (source) {
+            case SEARCH:
+                Pattern text = regex(value);
+                Set<String> indexMatches = SearchIndex.getInstance().isReady()
+                        ? SearchIndex.getInstance().textScores(value).keySet()
+                        : Collections.emptySet();
+                return book -> indexMatches.contains(SearchIndex.keyOf(book)) || find(text, book.getTitle())
+                        || find(text, book.getAuthor()) || find(text, book.getPublisher())
+                        || find(text, book.getDescription()) || find(text, book.getIsbn())
+                        || find(text, book.getId()) || anyCategory(text, book);
+            case AUTHOR:
+                Pattern author = regex(value);
+                return book -> find(author, book.getAuthor());
+            case CATEGORY:
+                Pattern category = regex(value);
+                return book -> anyCategory(category, book);
+            case PUBLISHER:
+                return book -> value.equals(book.getPublisher());
+            default:
+                return book -> true;
+        }
+    }
+
+    // The database queries treat their value as a case-insensitive regex; text
+    // that is not a valid one is matched literally
+    static Pattern regex(String value) {
+        try {
+            return Pattern.compile(value, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            return Pattern.compile(Pattern.quote(value), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+    }
+
+    private static boolean find(Pattern pattern, String value) {
+        return value != null && pattern.matcher(value).find();
+    }
+
+    private static boolean anyCategory(Pattern pattern, Book book) {
+        if (book.getCategories() == null) {
+            return false;
+        }
+        for (String category : book.getCategories()) {
+            if (find(pattern, category)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
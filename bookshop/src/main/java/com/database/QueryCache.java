@@ -0,0 +1,318 @@
+package com.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+import com.models.Book;
+import com.search.SearchIndex;
+
+/**
+ * Caches book query results by a normalized query key. Entries hold the IDs of
+ * the matching books rather than copies; books are resolved through the search
+ * index on a hit, so a cached result always shows current book data.
+ *
+ * Eviction is LRU within a memory budget, with TinyLFU admission: when the
+ * cache is full, a new entry is only admitted if its key has been requested
+ * more often recently than the entry it would evict. One-off queries therefore
+ * cannot flush popular ones.
+ *
+ * Each entry records the document fields its query reads. An update drops only
+ * the entries that read one of the changed fields, a delete drops the entries
+ * containing the book, and an insert drops everything since any query might
+ * now match the new book. Writers report a change once the search index has
+ * published it, as queries filter on and resolve through the index; a query
+ * that read the index before then holds an older generation and is not cached.
+ */
+public class QueryCache {
+    private static final Logger LOGGER = Logger.getLogger(QueryCache.class.getName());
+    private static final QueryCache INSTANCE = new QueryCache();
+
+    public static final long DEFAULT_BUDGET_BYTES = 4L * 1024 * 1024;
+
+    // Rough per-entry costs used for the memory budget
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int ID_REFERENCE_BYTES = 8;
+
+    private final long budgetBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch(4096);
+    private long usedBytes;
+    private long writeGeneration;
+
+    // Metrics
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long rejections;
+
+    private static final class Entry {
+        final String[] ids;
+        final Set<String> fields;
+        final long bytes;
+
+        Entry(String key, String[] ids, Set<String> fields) {
+            this.ids = ids;
+            this.fields = fields;
+            this.bytes = ENTRY_OVERHEAD_BYTES + 2L * key.length() + (long) ID_REFERENCE_BYTES * ids.length;
+        }
+    }
+
+    private QueryCache() {
+        this.budgetBytes = DEFAULT_BUDGET_BYTES;
+    }
+
+    public static QueryCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Look up a cached result
+     *
+     * @param key Normalized query key
+     * @return The cached books in their original order, or null on a miss
+     */
+    public synchronized List<Book> get(String key) {
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        SearchIndex index = SearchIndex.getInstance();
+        List<Book> books = new ArrayList<>(entry.ids.length);
+        for (String id : entry.ids) {
+            Book book = index.getBook(id);
+            if (book == null) {
+                // The index no longer knows this book, treat the entry as stale
+                removeEntry(key);
+                misses++;
+                return null;
+            }
+            books.add(book);
+        }
+        hits++;
+        return books;
+    }
+
+    /**
+     * Write generation to pass to {@link #put}, read before running the query
+     */
+    public synchronized long generation() {
+        return writeGeneration;
+    }
+
+    /**
+     * Cache a query result. The result is dropped if a write happened after the
+     * given generation, since it may already be stale.
+     *
+     * @param key        Normalized query key
+     * @param fields     Document fields the query reads
+     * @param books      The query result
+     * @param generation Value of {@link #generation()} before the query ran
+     */
+    public synchronized void put(String key, Set<String> fields, List<Book> books, long generation) {
+        if (generation != writeGeneration || !SearchIndex.getInstance().isReady()) {
+            return;
+        }
+
+        String[] ids = new String[books.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = SearchIndex.keyOf(books.get(i));
+            if (ids[i] == null) {
+                return;
+            }
+        }
+
+        Entry entry = new Entry(key, ids, new HashSet<>(fields));
+        if (entry.bytes > budgetBytes) {
+            return;
+        }
+        removeEntry(key);
+
+        // Make room, but only at the expense of entries requested less often
+        int frequency = sketch.frequency(key);
+        while (usedBytes + entry.bytes > budgetBytes) {
+            Map.Entry<String, Entry> victim = entries.entrySet().iterator().next();
+            if (sketch.frequency(victim.getKey()) >= frequency) {
+                rejections++;
+                return;
+            }
+            removeEntry(victim.getKey());
+        }
+
+        entries.put(key, entry);
+        usedBytes += entry.bytes;
+    }
+
+    /**
+     * A book was inserted; any cached query might now match it
+     *
+     * @param bookId Key of the new book
+     */
+    public synchronized void onInsert(String bookId) {
+        writeGeneration++;
+        invalidations += entries.size();
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * A book was updated; drop the queries reading any of the changed fields
+     *
+     * @param bookId        Key of the updated book
+     * @param changedFields Document fields whose values changed
+     */
+    public synchronized void onUpdate(String bookId, Collection<String> changedFields) {
+        writeGeneration++;
+        if (changedFields.isEmpty()) {
+            return;
+        }
+        removeIf(entry -> {
+            for (String field : changedFields) {
+                if (entry.fields.contains(field)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * A book was deleted; drop the queries whose result contains it
+     *
+     * @param bookId Key of the deleted book
+     */
+    public synchronized void onDelete(String bookId) {
+        writeGeneration++;
+        removeIf(entry -> {
+            for (String id : entry.ids) {
+                if (id.equals(bookId)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    public synchronized void clear() {
+        writeGeneration++;
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    // =============== METRICS ===============
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void removeIf(Predicate<Entry> stale) {
+        int removed = 0;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (stale.test(entry)) {
+                usedBytes -= entry.bytes;
+                it.remove();
+                removed++;
+            }
+        }
+        invalidations += removed;
+        if (removed > 0) {
+            LOGGER.fine("Invalidated " + removed + " cached queries");
+        }
+    }
+
+    private void removeEntry(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Count-min sketch of recent key popularity with 4-bit counters. All counts
+     * are halved periodically so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+        private final int[][] counts;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(Math.max(16, width - 1) * 2);
+            counts = new int[DEPTH][size];
+            mask = size - 1;
+            sampleSize = size * 10;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            for (int row = 0; row < DEPTH; row++) {
+                int slot = index(hash, row);
+                if (counts[row][slot] < MAX_COUNT) {
+                    counts[row][slot]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int min = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counts[row][index(hash, row)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void age() {
+            for (int[] row : counts) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.database;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list in comparator order, sorted lazily. Reading past the sorted
+ * prefix selects the next K elements with a bounded heap, K being the index
+ * read plus one or double the prefix, whichever is more, so showing a page
+ * costs O(n log K) instead of sorting everything. The rest is only ordered
+ * when someone pages that deep.
+ *
+ * Ties keep the original order, as with {@link List#sort(Comparator)}. Reads
+ * may come from more than one thread, since results are sorted off the FX
+ * thread and paged on it.
+ */
+final class TopKList<E> extends AbstractList<E> implements RandomAccess {
+    private static final int MIN_CHUNK = 64;
+
+    private final List<E> items;
+    private final Comparator<? super E> comparator;
+    private final int[] order;
+    private int sortedPrefix;
+
+    /**
+     * @param items      Elements in their original order; not modified
+     * @param comparator Order of the list
+     */
+    TopKList(List<E> items, Comparator<? super E> comparator) {
+        this.items = items;
+        this.comparator = comparator;
+        this.order = new int[items.size()];
+    }
+
+    @Override
+    public synchronized E get(int index) {
+        if (index < 0 || index >= order.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + order.length);
+        }
+        if (index >= sortedPrefix) {
+            int target = Math.max(index + 1, Math.max(sortedPrefix * 2, MIN_CHUNK));
+            selectNext(Math.min(target, order.length));
+        }
+        return items.get(order[index]);
+    }
+
+    @Override
+    public int size() {
+        return order.length;
+    }
+
+    // The heap keeps the best candidates seen with the worst on top, so most
+    // elements cost one comparison against the top
+    private void selectNext(int end) {
+        int k = end - sortedPrefix;
+        int last = sortedPrefix > 0 ? order[sortedPrefix - 1] : -1;
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (last >= 0 && compare(i, last) <= 0) {
+                // Already in the sorted prefix
+                continue;
+            }
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++);
+            } else if (compare(i, heap[0]) < 0) {
+                heap[0] = i;
+                siftDown(heap, size);
+            }
+        }
+
+        // Popping the worst first fills the new chunk from its end
+        for (int n = size; n > 0; n--) {
+            order[sortedPrefix + n - 1] = heap[0];
+            heap[0] = heap[n - 1];
+            siftDown(heap, n - 1);
+        }
+        sortedPrefix += size;
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(heap[i], heap[parent]) <= 0) {
+                return;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && compare(heap[left], heap[worst]) > 0) {
+                worst = left;
+            }
+            if (right < size && compare(heap[right], heap[worst]) > 0) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(heap, i, worst);
+            i = worst;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int swap = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swap;
+    }
+
+    // Negative when element a comes before element b
+    private int compare(int a, int b) {
+        int byComparator = comparator.compare(items.get(a), items.get(b));
+        return byComparator != 0 ? byComparator : Integer.compare(a, b);
+    }
+}
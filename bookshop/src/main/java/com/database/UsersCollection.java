@@ -4,15 +4,19 @@ import org.bson.Document;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.result.UpdateResult;
+import com.search.SimilarBooksIndex;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
@@ -25,6 +29,22 @@ public class UsersCollection {
     private static final String HASH_ALGORITHM = "SHA-256";
     private static final String USER_ID_PREFIX = "BH";
 
+    // Denormalized per-user counters over the books currently in the
+    // catalog, kept current with $inc on every write. Deleting a book or
+    // changing its holder takes its numbers off again, so the counters always
+    // match what the backfill would aggregate.
+    public static final String STATS_FIELD = "stats";
+    public static final String STAT_UPLOADED_COUNT = "uploaded_count";
+    public static final String STAT_ACTIVE_BORROWS = "active_borrows";
+    public static final String STAT_TOTAL_PURCHASES = "total_purchases";
+    public static final String STAT_REVENUE = "revenue";
+    public static final String STAT_RATING_SUM = "rating_sum";
+    public static final String STAT_RATING_COUNT = "rating_count";
+    // Set once a user's counters hold every write; older accounts lack it and
+    // may carry counters that only count writes made since they existed
+    private static final String STATS_VERSION_FIELD = "stats_version";
+    private static final int STATS_VERSION = 1;
+
     private static final MongoCollection<Document> users = DatabaseManager.getCollection(COLLECTION_NAME);
 
     // Initialize indexes
@@ -89,15 +109,18 @@ public class UsersCollection {
                 return false;
             }
 
-            // Add book ID to the uploaded_books array using $addToSet to avoid duplicates
+            // Add book ID to the uploaded_books array and bump the upload counter in the
+            // same update. The $ne guard keeps the counter exact if a book is re-shared.
             Document update = new Document("$addToSet",
-                    new Document("uploaded_books", bookId));
+                    new Document("uploaded_books", bookId))
+                    .append("$inc", new Document(statPath(STAT_UPLOADED_COUNT), 1));
 
             UpdateResult result = users.updateOne(
-                    Filters.eq("id", userId),
+                    Filters.and(Filters.eq("id", userId), Filters.ne("uploaded_books", bookId)),
                     update);
 
-            boolean success = result.getModifiedCount() > 0 || result.getMatchedCount() > 0;
+            boolean success = result.getMatchedCount() > 0
+                    || users.countDocuments(Filters.eq("id", userId)) > 0;
 
             if (success) {
                 LOGGER.log(Level.INFO, "Successfully shared book ID: {0} for user: {1}",
@@ -143,6 +166,8 @@ public class UsersCollection {
                     .append("uploaded_books", new ArrayList<>())
                     .append("borrowed_books", new ArrayList<>())
                     .append("buyers_reviews", new ArrayList<>())
+                    .append(STATS_FIELD, emptyStats())
+                    .append(STATS_VERSION_FIELD, STATS_VERSION)
                     .append("created_at", System.currentTimeMillis())
                     .append("imgPath", null);
 
@@ -163,6 +188,8 @@ public class UsersCollection {
      */
     public static boolean updateUserBorrowedBooks(String userId, List<String> bookIds) {
         try {
+            // The list is the user's borrow history; the active borrow counter
+            // follows the books' holder instead, see recordHolderChange
             Document update = new Document("$addToSet",
                     new Document("borrowed_books",
                             new Document("$each", bookIds)));
@@ -171,13 +198,189 @@ public class UsersCollection {
                     Filters.eq("id", userId),
                     update);
 
-            return result.getModifiedCount() > 0 || result.getMatchedCount() > 0;
+            boolean updated = result.getMatchedCount() > 0;
+            if (updated) {
+                SimilarBooksIndex.getInstance().recordBorrows(userId, bookIds);
+            }
+            return updated;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error updating user's borrowed books for user: " + userId, e);
             return false;
         }
     }
 
+    /**
+     * Get every user's borrowed book IDs, for co-borrow recommendations
+     * 
+     * @return Borrowed book IDs by user ID; users who never borrowed are left out
+     */
+    public static Map<String, List<String>> getBorrowHistories() {
+        Map<String, List<String>> histories = new HashMap<>();
+        try {
+            for (Document doc : users.find(Filters.exists("borrowed_books.0"))
+                    .projection(Projections.include("id", "borrowed_books"))) {
+                List<String> bookIds = doc.getList("borrowed_books", String.class);
+                if (doc.getString("id") != null && bookIds != null) {
+                    histories.put(doc.getString("id"), bookIds);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error getting borrow histories", e);
+        }
+        return histories;
+    }
+
+    /**
+     * Record a completed sale against the seller's counters
+     * 
+     * @param sellerId The seller's user ID
+     * @param amount   Revenue earned from the sale
+     * @return true if the counters were updated
+     */
+    public static boolean recordSale(String sellerId, double amount) {
+        return incrementStats(sellerId, new Document(statPath(STAT_TOTAL_PURCHASES), 1)
+                .append(statPath(STAT_REVENUE), amount));
+    }
+
+    /**
+     * Record a new review on one of the seller's books
+     * 
+     * @param sellerId The seller's user ID
+     * @param rating   Rating given by the reviewer
+     * @return true if the counters were updated
+     */
+    public static boolean recordReview(String sellerId, double rating) {
+        return incrementStats(sellerId, new Document(statPath(STAT_RATING_SUM), rating)
+                .append(statPath(STAT_RATING_COUNT), 1));
+    }
+
+    /**
+     * Move a book's active borrow from its previous holder to its new one
+     * 
+     * @param previousHolderId The user who held the book, null or empty if none
+     * @param holderId         The user who holds it now, null or empty if none
+     */
+    public static void recordHolderChange(String previousHolderId, String holderId) {
+        if (Objects.equals(previousHolderId, holderId)) {
+            return;
+        }
+        incrementStats(previousHolderId, new Document(statPath(STAT_ACTIVE_BORROWS), -1));
+        incrementStats(holderId, new Document(statPath(STAT_ACTIVE_BORROWS), 1));
+    }
+
+    /**
+     * Take a deleted book off its seller's and holder's counters. Purchases,
+     * revenue and ratings are taken off by the same rules
+     * {@link BookDetailsCollection#aggregateSellerStats(String)} adds them up.
+     * 
+     * @param sellerId  The seller's user ID
+     * @param holderId  The user holding the book, null or empty if none
+     * @param purchases Times the book was bought
+     * @param price     Current price of the book
+     * @param rating    Average rating of the book
+     * @param reviews   Number of reviews of the book
+     */
+    public static void recordBookDeleted(String sellerId, String holderId, int purchases, double price,
+            double rating, int reviews) {
+        incrementStats(sellerId, new Document(statPath(STAT_UPLOADED_COUNT), -1)
+                .append(statPath(STAT_TOTAL_PURCHASES), -purchases)
+                .append(statPath(STAT_REVENUE), -price * purchases)
+                .append(statPath(STAT_RATING_SUM), -rating * reviews)
+                .append(statPath(STAT_RATING_COUNT), -reviews));
+        incrementStats(holderId, new Document(statPath(STAT_ACTIVE_BORROWS), -1));
+    }
+
+    /**
+     * Get the dashboard counters for a user in a single small read. Users created
+     * before the counters existed are backfilled from the book collection once.
+     * 
+     * @param userId The user's ID
+     * @return Document of counters or an empty document if the user is not found
+     */
+    public static Document getUserStats(String userId) {
+        try {
+            Document user = users.find(Filters.eq("id", userId))
+                    .projection(Projections.include(STATS_FIELD, STATS_VERSION_FIELD))
+                    .first();
+            if (user == null) {
+                return emptyStats();
+            }
+
+            Document stats = user.get(STATS_FIELD, Document.class);
+            if (user.get(STATS_VERSION_FIELD) == null) {
+                return backfillStats(userId, stats);
+            }
+            return stats != null ? stats : emptyStats();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error retrieving user stats for ID: " + userId, e);
+            return emptyStats();
+        }
+    }
+
+    /**
+     * Average rating across all reviews of a user's books
+     * 
+     * @param stats Counters returned by {@link #getUserStats(String)}
+     * @return Average rating or 0 if there are no reviews
+     */
+    public static double getAverageRating(Document stats) {
+        Number sum = stats.get(STAT_RATING_SUM, Number.class);
+        Number count = stats.get(STAT_RATING_COUNT, Number.class);
+        if (sum == null || count == null || count.intValue() == 0) {
+            return 0.0;
+        }
+        return sum.doubleValue() / count.intValue();
+    }
+
+    private static boolean incrementStats(String userId, Document increments) {
+        try {
+            if (userId == null || userId.isEmpty()) {
+                return false;
+            }
+            UpdateResult result = users.updateOne(Filters.eq("id", userId), new Document("$inc", increments));
+            return result.getMatchedCount() > 0;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error updating stats for user: " + userId, e);
+            return false;
+        }
+    }
+
+    /**
+     * One-off aggregation for accounts that predate the counters. Writes since
+     * then may have left partial counters, e.g. an upload count of 1 for a
+     * seller of 50 books. Every such write is also in the book collection, so
+     * the aggregated totals replace the partial counters rather than adding
+     * to them.
+     *
+     * @param userId  The user's ID
+     * @param partial Counters as read, or null if there are none
+     * @return The aggregated counters
+     */
+    private static Document backfillStats(String userId, Document partial) {
+        Document stats = BookDetailsCollection.aggregateSellerStats(userId)
+                .append(STAT_ACTIVE_BORROWS, (int) BookDetailsCollection.countBooksByHolderId(userId));
+
+        // Only set if the counters are still as read, so a concurrent $inc is
+        // never overwritten; the next read then aggregates again
+        users.updateOne(Filters.and(Filters.eq("id", userId), Filters.exists(STATS_VERSION_FIELD, false),
+                partial != null ? Filters.eq(STATS_FIELD, partial) : Filters.exists(STATS_FIELD, false)),
+                new Document("$set", new Document(STATS_FIELD, stats).append(STATS_VERSION_FIELD, STATS_VERSION)));
+        return stats;
+    }
+
+    private static Document emptyStats() {
+        return new Document(STAT_UPLOADED_COUNT, 0)
+                .append(STAT_ACTIVE_BORROWS, 0)
+                .append(STAT_TOTAL_PURCHASES, 0)
+                .append(STAT_REVENUE, 0.0)
+                .append(STAT_RATING_SUM, 0.0)
+                .append(STAT_RATING_COUNT, 0);
+    }
+
+    private static String statPath(String stat) {
+        return STATS_FIELD + "." + stat;
+    }
+
     /**
      * Generate a unique user ID with format BH followed by 6 digits
      * 
@@ -0,0 +1,428 @@
+package com.search;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.models.Book;
+
+/**
+ * Prefix completion over titles, authors, publishers and categories. Every
+ * suggestion is keyed from the start of each of its words, so "alch" finds
+ * "The Alchemist".
+ *
+ * The keys live in one sorted array, a flattened trie: a prefix maps to a
+ * contiguous range found by binary search. A max-weight segment tree over the
+ * range then yields the top completions in O(k log n) without scanning it.
+ *
+ * A suggestion's weight is the popularity of the books it came from. Catalog
+ * changes made within a short delay of each other are published together on
+ * a background thread: only the keys of the suggestions they touched are
+ * sorted, then merged into the previous snapshot's arrays. Lookups keep using
+ * the previous snapshot until the new one is published.
+ */
+public class AutocompleteIndex {
+    private static final Logger LOGGER = Logger.getLogger(AutocompleteIndex.class.getName());
+    private static final AutocompleteIndex INSTANCE = new AutocompleteIndex();
+
+    private static final int MAX_KEY_LENGTH = 64;
+    // Changes arriving within this long of the first are published together
+    private static final long PUBLISH_DELAY_MS = 200;
+    private static final ScheduledExecutorService PUBLISHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autocomplete-publish");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum Kind {
+        TITLE, AUTHOR, PUBLISHER, CATEGORY
+    }
+
+    /**
+     * A completion offered for a typed prefix
+     */
+    public static final class Suggestion {
+        private final String text;
+        private final Kind kind;
+        private volatile long weight;
+        private final Map<String, Long> weightsByBook = new HashMap<>();
+
+        private Suggestion(String text, Kind kind) {
+            this.text = text;
+            this.kind = kind;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * The book this suggestion points at, if it came from exactly one book
+         */
+        public synchronized String getBookKey() {
+            return weightsByBook.size() == 1 ? weightsByBook.keySet().iterator().next() : null;
+        }
+    }
+
+    private final Map<String, Suggestion> suggestions = new HashMap<>();
+    private final Map<String, List<Suggestion>> suggestionsByBook = new HashMap<>();
+    // Suggestions added, reweighted or removed since the last publish
+    private Set<Suggestion> changed = new HashSet<>();
+    private final AtomicBoolean publishScheduled = new AtomicBoolean(false);
+    private final Object publishLock = new Object();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    AutocompleteIndex() {
+    }
+
+    public static AutocompleteIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replace all suggestions with those drawn from the given books. Runs on the
+     * caller's thread, which is expected to be a background thread.
+     *
+     * @param books Full catalog
+     */
+    public void rebuild(Collection<Book> books) {
+        synchronized (this) {
+            suggestions.clear();
+            suggestionsByBook.clear();
+            for (Book book : books) {
+                if (book != null) {
+                    addBook(book);
+                }
+            }
+            changed = new HashSet<>();
+        }
+        publishSnapshot();
+    }
+
+    /**
+     * Add or replace the suggestions contributed by a book
+     *
+     * @param book The inserted or updated book
+     */
+    public void update(Book book) {
+        synchronized (this) {
+            removeBook(SearchIndex.keyOf(book));
+            addBook(book);
+        }
+        schedulePublish();
+    }
+
+    /**
+     * Withdraw the suggestions contributed by a book
+     *
+     * @param bookKey Key the book is indexed under
+     */
+    public void remove(String bookKey) {
+        synchronized (this) {
+            removeBook(bookKey);
+        }
+        schedulePublish();
+    }
+
+    /**
+     * Most popular completions for a typed prefix
+     *
+     * @param prefix Text typed so far
+     * @param limit  Maximum number of completions
+     * @return Completions, most popular first
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        return snapshot.top(key, limit);
+    }
+
+    private void addBook(Book book) {
+        String bookKey = SearchIndex.keyOf(book);
+        if (bookKey == null) {
+            return;
+        }
+
+        long weight = 1L + book.getTotalPurchases() + book.getReviewCount();
+        addSuggestion(book.getTitle(), Kind.TITLE, bookKey, weight);
+        addSuggestion(book.getAuthor(), Kind.AUTHOR, bookKey, weight);
+        addSuggestion(book.getPublisher(), Kind.PUBLISHER, bookKey, weight);
+        if (book.getCategories() != null) {
+            for (String category : book.getCategories()) {
+                addSuggestion(category, Kind.CATEGORY, bookKey, weight);
+            }
+        }
+    }
+
+    private void addSuggestion(String text, Kind kind, String bookKey, long weight) {
+        String key = normalize(text);
+        if (key.isEmpty()) {
+            return;
+        }
+
+        Suggestion suggestion = suggestions.computeIfAbsent(kind + ":" + key, k -> new Suggestion(text.trim(), kind));
+        synchronized (suggestion) {
+            if (suggestion.weightsByBook.putIfAbsent(bookKey, weight) != null) {
+                return;
+            }
+            suggestion.weight += weight;
+        }
+        changed.add(suggestion);
+        suggestionsByBook.computeIfAbsent(bookKey, k -> new ArrayList<>()).add(suggestion);
+    }
+
+    private void removeBook(String bookKey) {
+        List<Suggestion> contributed = bookKey != null ? suggestionsByBook.remove(bookKey) : null;
+        if (contributed == null) {
+            return;
+        }
+        for (Suggestion suggestion : contributed) {
+            synchronized (suggestion) {
+                Long weight = suggestion.weightsByBook.remove(bookKey);
+                suggestion.weight -= weight != null ? weight : 0;
+                if (suggestion.weightsByBook.isEmpty()) {
+                    suggestions.remove(mapKey(suggestion));
+                }
+            }
+            changed.add(suggestion);
+        }
+    }
+
+    private static String mapKey(Suggestion suggestion) {
+        return suggestion.kind + ":" + normalize(suggestion.text);
+    }
+
+    private void schedulePublish() {
+        if (publishScheduled.compareAndSet(false, true)) {
+            PUBLISHER.schedule(() -> {
+                publishScheduled.set(false);
+                try {
+                    publishChanges();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Error updating autocomplete index", e);
+                }
+            }, PUBLISH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Only the copy of the suggestions holds the monitor, so updates from the
+    // search index writer are not held up while the arrays are sorted
+    private void publishSnapshot() {
+        synchronized (publishLock) {
+            List<Suggestion> current;
+            synchronized (this) {
+                current = new ArrayList<>(suggestions.values());
+            }
+
+            List<Map.Entry<String, Suggestion>> entries = new ArrayList<>();
+            for (Suggestion suggestion : current) {
+                addEntries(suggestion, entries);
+            }
+            entries.sort(Map.Entry.comparingByKey());
+            snapshot = Snapshot.of(entries);
+        }
+    }
+
+    /**
+     * Publish the suggestions changed since the last publish. Their keys are
+     * sorted on their own and merged with the rest of the previous snapshot's,
+     * which are already in order, so a publish costs one pass over the arrays
+     * rather than a full sort.
+     */
+    void publishChanges() {
+        synchronized (publishLock) {
+            Set<Suggestion> touched;
+            List<Map.Entry<String, Suggestion>> added = new ArrayList<>();
+            synchronized (this) {
+                touched = changed;
+                changed = new HashSet<>();
+                for (Suggestion suggestion : touched) {
+                    // Removed ones are left out; one added again under the same
+                    // text is a new object and in the set itself
+                    if (suggestions.get(mapKey(suggestion)) == suggestion) {
+                        addEntries(suggestion, added);
+                    }
+                }
+            }
+            if (touched.isEmpty()) {
+                return;
+            }
+            added.sort(Map.Entry.comparingByKey());
+
+            Snapshot previous = snapshot;
+            int kept = 0;
+            for (Suggestion owner : previous.owners) {
+                kept += touched.contains(owner) ? 0 : 1;
+            }
+            String[] keys = new String[kept + added.size()];
+            Suggestion[] owners = new Suggestion[keys.length];
+            int from = 0;
+            int next = 0;
+            for (int i = 0; i < keys.length; i++) {
+                while (from < previous.keys.length && touched.contains(previous.owners[from])) {
+                    from++;
+                }
+                if (from < previous.keys.length
+                        && (next == added.size() || previous.keys[from].compareTo(added.get(next).getKey()) <= 0)) {
+                    keys[i] = previous.keys[from];
+                    owners[i] = previous.owners[from++];
+                } else {
+                    keys[i] = added.get(next).getKey();
+                    owners[i] = added.get(next++).getValue();
+                }
+            }
+            snapshot = new Snapshot(keys, owners);
+        }
+    }
+
+    // One entry per word the suggestion's text starts with
+    private static void addEntries(Suggestion suggestion, List<Map.Entry<String, Suggestion>> entries) {
+        String key = normalize(suggestion.text);
+        if (key.length() > MAX_KEY_LENGTH) {
+            key = key.substring(0, MAX_KEY_LENGTH);
+        }
+        for (int start = 0; start < key.length(); start++) {
+            if (start == 0 || key.charAt(start - 1) == ' ') {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(key.substring(start), suggestion));
+            }
+        }
+    }
+
+    private static String normalize(String text) {
+        // Index keys, so a prefix typed in either script reaches both spellings
+        return String.join(" ", TextAnalyzer.indexTerms(text));
+    }
+
+    /**
+     * Immutable sorted key array with a max-weight segment tree over it
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new String[0], new Suggestion[0]);
+
+        private final String[] keys;
+        private final Suggestion[] owners;
+        private final long[] weights;
+        private final int[] tree;
+        private final int size;
+
+        static Snapshot of(List<Map.Entry<String, Suggestion>> sortedEntries) {
+            String[] keys = new String[sortedEntries.size()];
+            Suggestion[] owners = new Suggestion[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = sortedEntries.get(i).getKey();
+                owners[i] = sortedEntries.get(i).getValue();
+            }
+            return new Snapshot(keys, owners);
+        }
+
+        Snapshot(String[] sortedKeys, Suggestion[] owners) {
+            int n = sortedKeys.length;
+            this.keys = sortedKeys;
+            this.owners = owners;
+            weights = new long[n];
+            for (int i = 0; i < n; i++) {
+                weights[i] = owners[i].getWeight();
+            }
+
+            // Leaves hold entry positions, inner nodes the heavier child's position
+            size = Math.max(1, Integer.highestOneBit(Math.max(1, n) * 2 - 1));
+            tree = new int[2 * size];
+            Arrays.fill(tree, -1);
+            for (int i = 0; i < n; i++) {
+                tree[size + i] = i;
+            }
+            for (int node = size - 1; node > 0; node--) {
+                tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        List<Suggestion> top(String prefix, int limit) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            List<Suggestion> result = new ArrayList<>(limit);
+            if (from >= to) {
+                return result;
+            }
+
+            // Best-first split of the range: pop the heaviest entry, then search the
+            // pieces either side of it. Duplicates reached via other words are skipped.
+            PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> Long.compare(weights[b[2]], weights[a[2]]));
+            ranges.add(new int[] { from, to, argMax(from, to) });
+            Set<Suggestion> seen = new HashSet<>();
+            while (!ranges.isEmpty() && result.size() < limit) {
+                int[] range = ranges.poll();
+                int best = range[2];
+                if (seen.add(owners[best])) {
+                    result.add(owners[best]);
+                }
+                if (range[0] < best) {
+                    ranges.add(new int[] { range[0], best, argMax(range[0], best) });
+                }
+                if (best + 1 < range[1]) {
+                    ranges.add(new int[] { best + 1, range[1], argMax(best + 1, range[1]) });
+                }
+            }
+            return result;
+        }
+
+        private int argMax(int from, int to) {
+            int best = -1;
+            for (int lo = from + size, hi = to + size; lo < hi; lo >>= 1, hi >>= 1) {
+                if ((lo & 1) == 1) {
+                    best = heavier(best, tree[lo++]);
+                }
+                if ((hi & 1) == 1) {
+                    best = heavier(best, tree[--hi]);
+                }
+            }
+            return best;
+        }
+
+        private int heavier(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return weights[b] > weights[a] ? b : a;
+        }
+
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
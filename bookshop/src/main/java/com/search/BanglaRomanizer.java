@@ -0,0 +1,179 @@
+package com.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Romanizes Bangla-script terms the way titles are commonly spelled in Latin
+ * letters, e.g. "অপেক্ষা" becomes "opekkha" and "বঙ্গ" becomes "bongo".
+ *
+ * The inherent vowel is written "o" between consonants and after a word-final
+ * conjunct, and dropped after a single word-final consonant. This matches
+ * colloquial spellings closely enough for the fuzzy matcher to cover the rest.
+ */
+final class BanglaRomanizer {
+    private static final int BLOCK_START = 0x0980;
+    private static final int BLOCK_END = 0x09FF;
+
+    private static final char VIRAMA = '্';
+    private static final char NUKTA = '়';
+    private static final char KHANDA_TA = 'ৎ';
+    private static final String INHERENT_VOWEL = "o";
+
+    private static final Map<Character, String> CONSONANTS = new HashMap<>();
+    private static final Map<Character, String> NUKTA_CONSONANTS = new HashMap<>();
+    private static final Map<String, String> CONJUNCTS = new HashMap<>();
+    private static final Map<Character, String> VOWELS = new HashMap<>();
+    private static final Map<Character, String> VOWEL_SIGNS = new HashMap<>();
+    private static final Map<Character, String> SIGNS = new HashMap<>();
+
+    static {
+        String[][] consonants = {
+                { "ক", "k" }, { "খ", "kh" }, { "গ", "g" }, { "ঘ", "gh" }, { "ঙ", "ng" },
+                { "চ", "ch" }, { "ছ", "chh" }, { "জ", "j" }, { "ঝ", "jh" }, { "ঞ", "n" },
+                { "ট", "t" }, { "ঠ", "th" }, { "ড", "d" }, { "ঢ", "dh" }, { "ণ", "n" },
+                { "ত", "t" }, { "থ", "th" }, { "দ", "d" }, { "ধ", "dh" }, { "ন", "n" },
+                { "প", "p" }, { "ফ", "f" }, { "ব", "b" }, { "ভ", "bh" }, { "ম", "m" },
+                { "য", "j" }, { "র", "r" }, { "ল", "l" }, { "শ", "sh" }, { "ষ", "sh" },
+                { "স", "s" }, { "হ", "h" }, { "ৎ", "t" } };
+        for (String[] entry : consonants) {
+            CONSONANTS.put(entry[0].charAt(0), entry[1]);
+        }
+
+        // NFC keeps these as consonant + nukta
+        NUKTA_CONSONANTS.put('য', "y");
+        NUKTA_CONSONANTS.put('ড', "r");
+        NUKTA_CONSONANTS.put('ঢ', "rh");
+
+        CONJUNCTS.put("ক্ষ", "kkh");
+        CONJUNCTS.put("জ্ঞ", "gg");
+        CONJUNCTS.put("ঙ্গ", "ng");
+
+        String[][] vowels = {
+                { "অ", "o" }, { "আ", "a" }, { "ই", "i" }, { "ঈ", "i" }, { "উ", "u" }, { "ঊ", "u" },
+                { "ঋ", "ri" }, { "এ", "e" }, { "ঐ", "oi" }, { "ও", "o" }, { "ঔ", "ou" } };
+        for (String[] entry : vowels) {
+            VOWELS.put(entry[0].charAt(0), entry[1]);
+        }
+
+        String[][] vowelSigns = {
+                { "া", "a" }, { "ি", "i" }, { "ী", "i" }, { "ু", "u" }, { "ূ", "u" },
+                { "ৃ", "ri" }, { "ে", "e" }, { "ৈ", "oi" }, { "ো", "o" }, { "ৌ", "ou" } };
+        for (String[] entry : vowelSigns) {
+            VOWEL_SIGNS.put(entry[0].charAt(0), entry[1]);
+        }
+
+        SIGNS.put('ং', "ng");
+        SIGNS.put('ঃ', "h");
+        SIGNS.put('ঁ', "");
+    }
+
+    private BanglaRomanizer() {
+    }
+
+    /**
+     * Whether a term contains any Bangla-script character
+     */
+    static boolean isBangla(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c >= BLOCK_START && c <= BLOCK_END) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Romanize an NFC-normalized term. Characters outside the Bangla block are
+     * copied unchanged.
+     *
+     * @param term Lowercase term
+     * @return Latin spelling of the term
+     */
+    static String romanize(String term) {
+        StringBuilder out = new StringBuilder(term.length() * 2);
+        int i = 0;
+        while (i < term.length()) {
+            char c = term.charAt(i);
+
+            if (CONSONANTS.containsKey(c)) {
+                i = appendSyllable(term, i, out);
+            } else if (VOWELS.containsKey(c)) {
+                out.append(VOWELS.get(c));
+                i++;
+            } else if (VOWEL_SIGNS.containsKey(c)) {
+                // A stray vowel sign, e.g. after a nukta-less fallback
+                out.append(VOWEL_SIGNS.get(c));
+                i++;
+            } else if (SIGNS.containsKey(c)) {
+                out.append(SIGNS.get(c));
+                i++;
+            } else if (c >= '০' && c <= '৯') {
+                out.append((char) ('0' + (c - '০')));
+                i++;
+            } else if (c == VIRAMA || c == NUKTA) {
+                i++;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Append a consonant cluster and its vowel, returning the index after them
+     */
+    private static int appendSyllable(String term, int start, StringBuilder out) {
+        StringBuilder cluster = new StringBuilder();
+        int consonants = 0;
+        int i = start;
+        boolean khandaTa = false;
+
+        while (i < term.length() && CONSONANTS.containsKey(term.charAt(i))) {
+            String conjunct = i + 3 <= term.length() ? CONJUNCTS.get(term.substring(i, i + 3)) : null;
+            if (conjunct != null) {
+                cluster.append(conjunct);
+                consonants += 2;
+                i += 3;
+            } else {
+                char c = term.charAt(i);
+                if (i + 1 < term.length() && term.charAt(i + 1) == NUKTA && NUKTA_CONSONANTS.containsKey(c)) {
+                    cluster.append(NUKTA_CONSONANTS.get(c));
+                    i += 2;
+                } else {
+                    cluster.append(CONSONANTS.get(c));
+                    i++;
+                }
+                consonants++;
+                khandaTa = c == KHANDA_TA;
+            }
+
+            // A virama joins the next consonant into the same cluster
+            if (i + 1 < term.length() && term.charAt(i) == VIRAMA && CONSONANTS.containsKey(term.charAt(i + 1))) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        out.append(cluster);
+
+        if (i < term.length() && VOWEL_SIGNS.containsKey(term.charAt(i))) {
+            out.append(VOWEL_SIGNS.get(term.charAt(i)));
+            return i + 1;
+        }
+        if (i < term.length() && term.charAt(i) == VIRAMA) {
+            return i + 1;
+        }
+        if (khandaTa) {
+            return i;
+        }
+
+        boolean wordEnd = i >= term.length();
+        if (!wordEnd || consonants > 1) {
+            out.append(INHERENT_VOWEL);
+        }
+        return i;
+    }
+}
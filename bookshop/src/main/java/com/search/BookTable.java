@@ -0,0 +1,995 @@
+package com.search;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntBinaryOperator;
+import java.util.function.Predicate;
+
+import com.models.Book;
+
+/**
+ * Columnar copy of the catalog for Explore filtering. Each row is one book,
+ * and the fields filters test are held in parallel primitive arrays: price,
+ * rating, review count, publication day, discount and availability, with
+ * language and publisher as ids into small dictionaries. A filter is a tight
+ * loop over one array, producing the ids of the rows that pass, and the next
+ * filter only visits those rows.
+ *
+ * Low-cardinality fields (language, category, availability, discount,
+ * featured) also have a {@link RowBitmap} of the rows for each value, so a
+ * combination of them resolves with bitmap AND/OR before any row is visited.
+ * For each Explore sort option the table keeps its rows presorted, so a sorted
+ * result is read off that permutation instead of being sorted. Titles and
+ * authors sort by their {@link CollationKeys}, kept per row.
+ *
+ * A table never changes. The search index writer derives a new one for each
+ * batch of catalog changes, copying the columns and only the bitmaps the
+ * changed rows touch, so scans need no locking. Row ids are only meaningful
+ * within the table that produced them.
+ */
+public final class BookTable {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * Publication day of books without a readable date; date filters keep them
+     */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    /**
+     * Orders rows are kept in, one per Explore sort option
+     */
+    public enum SortKey {
+        TITLE, AUTHOR, PRICE, RATING, PUBLICATION_DATE
+    }
+
+    public static final BookTable EMPTY = of(new ArrayList<>());
+
+    private final int size;
+    private final Book[] books;
+    private final Map<String, Integer> rowsByKey;
+    private final double[] prices;
+    private final double[] ratings;
+    private final int[] reviewCounts;
+    private final int[] publishedDays;
+    private final double[] discounts;
+    private final boolean[] available;
+    private final boolean[] featured;
+    private final int[] languages;
+    private final int[] publishers;
+    private final int[][] categories;
+    private final byte[][] titleKeys;
+    private final byte[][] authorKeys;
+    private final Dictionary languageNames;
+    private final Dictionary publisherNames;
+    private final Dictionary categoryNames;
+
+    // Rows per value: by language and category id, and for the flags
+    private final RowBitmap[] languageRows;
+    private final RowBitmap[] categoryRows;
+    private final RowBitmap availableRows;
+    private final RowBitmap discountedRows;
+    private final RowBitmap featuredRows;
+
+    // Rows in ascending order of each sort key, ties by row
+    private final int[][] sortOrders;
+
+    private BookTable(Builder builder, RowBitmap[] languageRows, RowBitmap[] categoryRows, RowBitmap availableRows,
+            RowBitmap discountedRows, RowBitmap featuredRows) {
+        size = builder.size;
+        books = builder.books;
+        rowsByKey = builder.rowsByKey;
+        prices = builder.prices;
+        ratings = builder.ratings;
+        reviewCounts = builder.reviewCounts;
+        publishedDays = builder.publishedDays;
+        discounts = builder.discounts;
+        available = builder.available;
+        featured = builder.featured;
+        languages = builder.languages;
+        publishers = builder.publishers;
+        categories = builder.categories;
+        titleKeys = builder.titleKeys;
+        authorKeys = builder.authorKeys;
+        languageNames = builder.languageNames;
+        publisherNames = builder.publisherNames;
+        categoryNames = builder.categoryNames;
+        this.languageRows = languageRows;
+        this.categoryRows = categoryRows;
+        this.availableRows = availableRows;
+        this.discountedRows = discountedRows;
+        this.featuredRows = featuredRows;
+        sortOrders = builder.sortOrders();
+    }
+
+    /**
+     * Build a table from the catalog
+     *
+     * @param catalog Books; later copies of a key replace earlier ones
+     * @return The table
+     */
+    public static BookTable of(Collection<Book> catalog) {
+        Builder builder = new Builder(null, Math.max(catalog.size(), 1));
+        builder.collationKeys(catalog);
+        for (Book book : catalog) {
+            if (book != null && SearchIndex.keyOf(book) != null) {
+                builder.put(book);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Derive a table with books added, replaced and removed
+     *
+     * @param changed Books inserted or updated
+     * @param removed Keys of deleted books
+     * @return The new table; this one is unchanged
+     */
+    public BookTable with(Collection<Book> changed, Collection<String> removed) {
+        int capacity = Math.max(size + changed.size(), 1);
+        Builder builder = new Builder(this, capacity);
+        builder.collationKeys(changed);
+        for (String key : removed) {
+            builder.remove(key);
+        }
+        for (Book book : changed) {
+            if (book != null && SearchIndex.keyOf(book) != null) {
+                builder.put(book);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    public Book book(int row) {
+        return books[row];
+    }
+
+    /**
+     * Row of the book with the given key, or -1
+     */
+    public int rowOf(String bookKey) {
+        Integer row = bookKey != null ? rowsByKey.get(bookKey) : null;
+        return row != null ? row : -1;
+    }
+
+    /**
+     * Books of the given rows, in row order
+     *
+     * @param rows Row ids, or null for every row
+     */
+    public List<Book> books(int[] rows) {
+        int count = rows != null ? rows.length : size;
+        List<Book> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(books[rows != null ? rows[i] : i]);
+        }
+        return result;
+    }
+
+    /**
+     * Books in the order of a sort key, read off the key's presorted rows
+     * without comparing books. The list only walks the rows as far as it is
+     * read, so showing one page costs about the page size divided by the
+     * fraction of rows listed.
+     *
+     * @param key       Sort key
+     * @param ascending Whether ascending; books without a title, author or date
+     *                  come last when ascending and first when descending.
+     *                  Titles and authors are in collation order.
+     * @param byRow     Books to list, at the index of their row, other entries
+     *                  null; shown in place of the table's copies
+     * @param count     Number of books in byRow
+     * @return Read-only sorted list
+     */
+    public List<Book> sorted(SortKey key, boolean ascending, Book[] byRow, int count) {
+        return new PresortedList<>(sortOrders[key.ordinal()], ascending, byRow, count);
+    }
+
+    /*
+     * Every scan below takes the rows to test, in increasing order or null for
+     * every row, and returns the rows that pass in the same order.
+     */
+
+    public int[] priceBetween(double min, double max, int[] rows) {
+        return between(prices, min, max, rows);
+    }
+
+    public int[] ratingBetween(double min, double max, int[] rows) {
+        return between(ratings, min, max, rows);
+    }
+
+    public int[] reviewCountAtLeast(int min, int[] rows) {
+        return scan(rows, (from, to) -> {
+            int[] selected = new int[to - from];
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                int row = rows != null ? rows[i] : i;
+                selected[n] = row;
+                n += reviewCounts[row] >= min ? 1 : 0;
+            }
+            return Arrays.copyOf(selected, n);
+        });
+    }
+
+    /**
+     * Rows published within a range of days. Books without a readable date pass.
+     *
+     * @param from First day, or null for no lower bound
+     * @param to   Last day, or null for no upper bound
+     */
+    public int[] publishedBetween(LocalDate from, LocalDate to, int[] rows) {
+        long first = from != null ? from.toEpochDay() : Long.MIN_VALUE;
+        long last = to != null ? to.toEpochDay() : Long.MAX_VALUE;
+        return scan(rows, (start, end) -> {
+            int[] selected = new int[end - start];
+            int n = 0;
+            for (int i = start; i < end; i++) {
+                int row = rows != null ? rows[i] : i;
+                int day = publishedDays[row];
+                selected[n] = row;
+                n += day == NO_DATE || day >= first && day <= last ? 1 : 0;
+            }
+            return Arrays.copyOf(selected, n);
+        });
+    }
+
+    /**
+     * Count rows by price bucket
+     *
+     * @param bounds Lower bounds of the buckets, increasing; the last bucket has
+     *               no upper bound and rows below the first are not counted
+     * @param rows   Rows to count, or null for every row
+     * @return Number of rows in each bucket
+     */
+    public int[] priceHistogram(double[] bounds, int[] rows) {
+        return histogram(prices, bounds, rows);
+    }
+
+    /**
+     * Count rows by rating band, see {@link #priceHistogram(double[], int[])}
+     */
+    public int[] ratingHistogram(double[] bounds, int[] rows) {
+        return histogram(ratings, bounds, rows);
+    }
+
+    private int[] histogram(double[] column, double[] bounds, int[] rows) {
+        int[] counts = new int[bounds.length];
+        int count = rows != null ? rows.length : size;
+        for (int i = 0; i < count; i++) {
+            double value = column[rows != null ? rows[i] : i];
+            int bucket = -1;
+            for (double bound : bounds) {
+                bucket += value >= bound ? 1 : 0;
+            }
+            if (bucket >= 0) {
+                counts[bucket]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Rows in a language, compared ignoring case
+     */
+    public RowBitmap languageRows(String language) {
+        int id = languageNames.find(languageKey(language));
+        return id >= 0 ? languageRows[id] : RowBitmap.EMPTY;
+    }
+
+    /**
+     * Rows with at least one category whose name, in lower case, is accepted
+     *
+     * @param name Test for lower-cased category names
+     */
+    public RowBitmap categoryRows(Predicate<String> name) {
+        RowBitmap rows = RowBitmap.EMPTY;
+        for (int id = 0; id < categoryNames.size(); id++) {
+            if (name.test(categoryNames.get(id))) {
+                rows = rows.or(categoryRows[id]);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Rows whose book nobody currently holds
+     */
+    public RowBitmap availableRows() {
+        return availableRows;
+    }
+
+    public RowBitmap discountedRows() {
+        return discountedRows;
+    }
+
+    public RowBitmap featuredRows() {
+        return featuredRows;
+    }
+
+    /**
+     * Rows from a publisher, compared exactly
+     */
+    public int[] publisher(String publisher, int[] rows) {
+        return equal(publishers, publisherNames.find(publisher), rows);
+    }
+
+    private int[] between(double[] column, double min, double max, int[] rows) {
+        return scan(rows, (from, to) -> {
+            int[] selected = new int[to - from];
+            int n = 0;
+            if (rows == null) {
+                // Branch-free: the row is always written and only kept if it passes
+                for (int row = from; row < to; row++) {
+                    double value = column[row];
+                    selected[n] = row;
+                    n += value >= min & value <= max ? 1 : 0;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    int row = rows[i];
+                    double value = column[row];
+                    selected[n] = row;
+                    n += value >= min & value <= max ? 1 : 0;
+                }
+            }
+            return Arrays.copyOf(selected, n);
+        });
+    }
+
+    private int[] equal(int[] column, int id, int[] rows) {
+        if (id < 0) {
+            return new int[0];
+        }
+        return scan(rows, (from, to) -> {
+            int[] selected = new int[to - from];
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                int row = rows != null ? rows[i] : i;
+                selected[n] = row;
+                n += column[row] == id ? 1 : 0;
+            }
+            return Arrays.copyOf(selected, n);
+        });
+    }
+
+    // Large scans are split into ranges of rows that run in parallel
+    private int[] scan(int[] rows, CatalogExecutor.RangeTask<int[]> range) {
+        return CatalogExecutor.select(CatalogExecutor.Operation.SCAN, rows != null ? rows.length : size, range);
+    }
+
+    private static String languageKey(String language) {
+        return language != null ? language.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static String categoryKey(String category) {
+        return category != null ? category.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static int epochDay(String date) {
+        if (date == null || date.isEmpty()) {
+            return NO_DATE;
+        }
+        try {
+            return (int) LocalDate.parse(date, DATE_FORMATTER).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return NO_DATE;
+        }
+    }
+
+    /**
+     * Distinct values of a text column, numbered in order of first appearance.
+     * Id -1 stands for a missing value. A dictionary shared between tables is
+     * copied before a new value is added.
+     */
+    private static final class Dictionary {
+        private final List<String> values;
+        private final Map<String, Integer> ids;
+
+        Dictionary() {
+            this(new ArrayList<>(), new HashMap<>());
+        }
+
+        private Dictionary(List<String> values, Map<String, Integer> ids) {
+            this.values = values;
+            this.ids = ids;
+        }
+
+        int find(String value) {
+            Integer id = value != null ? ids.get(value) : null;
+            return id != null ? id : -1;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        Dictionary copy() {
+            return new Dictionary(new ArrayList<>(values), new HashMap<>(ids));
+        }
+
+        int add(String value) {
+            int id = values.size();
+            values.add(value);
+            ids.put(value, id);
+            return id;
+        }
+    }
+
+    /**
+     * Rows to add to and remove from one bitmap. Adding a row removed earlier in
+     * the same batch cancels out, and the other way round.
+     */
+    private static final class BitmapEdit {
+        final TreeSet<Integer> added = new TreeSet<>();
+        final TreeSet<Integer> removed = new TreeSet<>();
+
+        void add(int row) {
+            if (!removed.remove(row)) {
+                added.add(row);
+            }
+        }
+
+        void remove(int row) {
+            if (!added.remove(row)) {
+                removed.add(row);
+            }
+        }
+
+        RowBitmap applyTo(RowBitmap bitmap) {
+            return bitmap.with(toArray(added), toArray(removed));
+        }
+
+        private static int[] toArray(TreeSet<Integer> rows) {
+            int[] array = new int[rows.size()];
+            int i = 0;
+            for (int row : rows) {
+                array[i++] = row;
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Copies of a table's columns being changed into the next table. Starting
+     * from no table, bitmaps are built in one pass at the end instead of edited
+     * row by row.
+     */
+    private static final class Builder {
+        private final BookTable base;
+        private int size;
+        private final Book[] books;
+        private final Map<String, Integer> rowsByKey;
+        private final double[] prices;
+        private final double[] ratings;
+        private final int[] reviewCounts;
+        private final int[] publishedDays;
+        private final double[] discounts;
+        private final boolean[] available;
+        private final boolean[] featured;
+        private final int[] languages;
+        private final int[] publishers;
+        private final int[][] categories;
+        private final byte[][] titleKeys;
+        private final byte[][] authorKeys;
+        // Collation keys made by this builder, as authors repeat
+        private final Map<String, byte[]> collationKeys = new HashMap<>();
+        private Dictionary languageNames;
+        private Dictionary publisherNames;
+        private Dictionary categoryNames;
+        private boolean dictionariesCopied;
+
+        private final Map<Integer, BitmapEdit> languageEdits = new HashMap<>();
+        private final Map<Integer, BitmapEdit> categoryEdits = new HashMap<>();
+        private final BitmapEdit availableEdit = new BitmapEdit();
+        private final BitmapEdit discountedEdit = new BitmapEdit();
+        private final BitmapEdit featuredEdit = new BitmapEdit();
+        // Rows whose book was put or moved, to re-place in the sort orders
+        private final BitSet changedRows = new BitSet();
+
+        Builder(BookTable table, int capacity) {
+            base = table;
+            if (table == null) {
+                books = new Book[capacity];
+                rowsByKey = new HashMap<>();
+                prices = new double[capacity];
+                ratings = new double[capacity];
+                reviewCounts = new int[capacity];
+                publishedDays = new int[capacity];
+                discounts = new double[capacity];
+                available = new boolean[capacity];
+                featured = new boolean[capacity];
+                languages = new int[capacity];
+                publishers = new int[capacity];
+                categories = new int[capacity][];
+                titleKeys = new byte[capacity][];
+                authorKeys = new byte[capacity][];
+                languageNames = new Dictionary();
+                publisherNames = new Dictionary();
+                categoryNames = new Dictionary();
+                dictionariesCopied = true;
+                return;
+            }
+            size = table.size;
+            books = Arrays.copyOf(table.books, capacity);
+            rowsByKey = new HashMap<>(table.rowsByKey);
+            prices = Arrays.copyOf(table.prices, capacity);
+            ratings = Arrays.copyOf(table.ratings, capacity);
+            reviewCounts = Arrays.copyOf(table.reviewCounts, capacity);
+            publishedDays = Arrays.copyOf(table.publishedDays, capacity);
+            discounts = Arrays.copyOf(table.discounts, capacity);
+            available = Arrays.copyOf(table.available, capacity);
+            featured = Arrays.copyOf(table.featured, capacity);
+            languages = Arrays.copyOf(table.languages, capacity);
+            publishers = Arrays.copyOf(table.publishers, capacity);
+            categories = Arrays.copyOf(table.categories, capacity);
+            titleKeys = Arrays.copyOf(table.titleKeys, capacity);
+            authorKeys = Arrays.copyOf(table.authorKeys, capacity);
+            languageNames = table.languageNames;
+            publisherNames = table.publisherNames;
+            categoryNames = table.categoryNames;
+        }
+
+        void put(Book book) {
+            String key = SearchIndex.keyOf(book);
+            Integer existing = rowsByKey.get(key);
+            int row;
+            if (existing != null) {
+                row = existing;
+                unindex(row);
+            } else {
+                row = size++;
+                rowsByKey.put(key, row);
+            }
+            books[row] = book;
+            prices[row] = book.getCurrentPrice();
+            ratings[row] = book.getRating();
+            reviewCounts[row] = book.getReviewCount() != null ? book.getReviewCount() : 0;
+            publishedDays[row] = epochDay(book.getPublicationDate());
+            discounts[row] = book.getDiscount();
+            available[row] = book.getHolderId() == null || book.getHolderId().isEmpty();
+            featured[row] = book.isFeatured();
+            languages[row] = id(languageKey(book.getLanguage()), Dimension.LANGUAGE);
+            publishers[row] = id(book.getPublisher(), Dimension.PUBLISHER);
+            categories[row] = categoryIds(book.getCategories());
+            titleKeys[row] = collationKey(book.getTitle());
+            authorKeys[row] = collationKey(book.getAuthor());
+            changedRows.set(row);
+            index(row);
+        }
+
+        // The last row moves into the removed one, so rows stay contiguous
+        void remove(String key) {
+            Integer row = rowsByKey.remove(key);
+            if (row == null) {
+                return;
+            }
+            unindex(row);
+            int last = --size;
+            if (row != last) {
+                unindex(last);
+                books[row] = books[last];
+                prices[row] = prices[last];
+                ratings[row] = ratings[last];
+                reviewCounts[row] = reviewCounts[last];
+                publishedDays[row] = publishedDays[last];
+                discounts[row] = discounts[last];
+                available[row] = available[last];
+                featured[row] = featured[last];
+                languages[row] = languages[last];
+                publishers[row] = publishers[last];
+                categories[row] = categories[last];
+                titleKeys[row] = titleKeys[last];
+                authorKeys[row] = authorKeys[last];
+                rowsByKey.put(SearchIndex.keyOf(books[row]), row);
+                changedRows.set(row);
+                index(row);
+            }
+            books[last] = null;
+            categories[last] = null;
+            titleKeys[last] = null;
+            authorKeys[last] = null;
+        }
+
+        private void index(int row) {
+            if (base == null) {
+                return;
+            }
+            if (languages[row] >= 0) {
+                languageEdits.computeIfAbsent(languages[row], id -> new BitmapEdit()).add(row);
+            }
+            for (int category : categories[row]) {
+                categoryEdits.computeIfAbsent(category, id -> new BitmapEdit()).add(row);
+            }
+            if (available[row]) {
+                availableEdit.add(row);
+            }
+            if (discounts[row] > 0) {
+                discountedEdit.add(row);
+            }
+            if (featured[row]) {
+                featuredEdit.add(row);
+            }
+        }
+
+        private void unindex(int row) {
+            if (base == null) {
+                return;
+            }
+            if (languages[row] >= 0) {
+                languageEdits.computeIfAbsent(languages[row], id -> new BitmapEdit()).remove(row);
+            }
+            for (int category : categories[row]) {
+                categoryEdits.computeIfAbsent(category, id -> new BitmapEdit()).remove(row);
+            }
+            if (available[row]) {
+                availableEdit.remove(row);
+            }
+            if (discounts[row] > 0) {
+                discountedEdit.remove(row);
+            }
+            if (featured[row]) {
+                featuredEdit.remove(row);
+            }
+        }
+
+        /**
+         * Make the collation keys of the titles and authors of books about to
+         * be put, in parallel when there are many, as keys are slow to make
+         */
+        void collationKeys(Collection<Book> books) {
+            Set<String> distinct = new LinkedHashSet<>();
+            for (Book book : books) {
+                if (book != null) {
+                    distinct.add(book.getTitle());
+                    distinct.add(book.getAuthor());
+                }
+            }
+            distinct.remove(null);
+            distinct.removeAll(collationKeys.keySet());
+            String[] texts = distinct.toArray(new String[0]);
+            byte[][] keys = new byte[texts.length][];
+            CatalogExecutor.forEach(CatalogExecutor.Operation.SORT_KEYS, texts.length, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    keys[i] = CollationKeys.of(texts[i]);
+                }
+            });
+            for (int i = 0; i < texts.length; i++) {
+                collationKeys.put(texts[i], keys[i]);
+            }
+        }
+
+        private byte[] collationKey(String text) {
+            return text != null ? collationKeys.computeIfAbsent(text, CollationKeys::of) : null;
+        }
+
+        private int[] categoryIds(String[] names) {
+            if (names == null) {
+                return new int[0];
+            }
+            int[] ids = new int[names.length];
+            int n = 0;
+            for (String name : names) {
+                int id = id(categoryKey(name), Dimension.CATEGORY);
+                boolean repeated = false;
+                for (int i = 0; i < n; i++) {
+                    repeated |= ids[i] == id;
+                }
+                if (id >= 0 && !repeated) {
+                    ids[n++] = id;
+                }
+            }
+            return Arrays.copyOf(ids, n);
+        }
+
+        private int id(String value, Dimension dimension) {
+            if (value == null) {
+                return -1;
+            }
+            int id = dictionary(dimension).find(value);
+            if (id >= 0) {
+                return id;
+            }
+            if (!dictionariesCopied) {
+                languageNames = languageNames.copy();
+                publisherNames = publisherNames.copy();
+                categoryNames = categoryNames.copy();
+                dictionariesCopied = true;
+            }
+            return dictionary(dimension).add(value);
+        }
+
+        private Dictionary dictionary(Dimension dimension) {
+            switch (dimension) {
+                case LANGUAGE:
+                    return languageNames;
+                case CATEGORY:
+                    return categoryNames;
+                default:
+                    return publisherNames;
+            }
+        }
+
+        BookTable build() {
+            if (base == null) {
+                return buildBitmaps();
+            }
+            RowBitmap[] languageRows = edited(base.languageRows, languageNames.size(), languageEdits);
+            RowBitmap[] categoryRows = edited(base.categoryRows, categoryNames.size(), categoryEdits);
+            return new BookTable(this, languageRows, categoryRows, availableEdit.applyTo(base.availableRows),
+                    discountedEdit.applyTo(base.discountedRows), featuredEdit.applyTo(base.featuredRows));
+        }
+
+        /**
+         * Sort orders of the table being built. From a previous table, the
+         * unchanged rows keep their order and the changed ones are sorted and
+         * merged in.
+         */
+        int[][] sortOrders() {
+            int[][] orders = new int[SortKey.values().length][];
+            for (SortKey key : SortKey.values()) {
+                if (base == null) {
+                    orders[key.ordinal()] = sortAll(key);
+                    continue;
+                }
+                IntBinaryOperator order = comparator(key);
+                int[] previous = base.sortOrders[key.ordinal()];
+                int[] kept = new int[previous.length];
+                int n = 0;
+                for (int row : previous) {
+                    if (row < size && !changedRows.get(row)) {
+                        kept[n++] = row;
+                    }
+                }
+                int[] changed = changedRows.get(0, size).stream().toArray();
+                sortRows(changed, order);
+                orders[key.ordinal()] = merge(kept, n, changed, order);
+            }
+            return orders;
+        }
+
+        // Every row is packed with the rank of its value among the distinct
+        // values into a long, so one primitive sort orders them
+        private int[] sortAll(SortKey key) {
+            int[] ranks = key == SortKey.PRICE ? numberRanks(prices)
+                    : key == SortKey.RATING ? numberRanks(ratings) : textRanks(key);
+            long[] packed = new long[size];
+            for (int row = 0; row < size; row++) {
+                packed[row] = (long) ranks[row] << 32 | row;
+            }
+            Arrays.sort(packed);
+            int[] rows = new int[size];
+            for (int i = 0; i < size; i++) {
+                rows[i] = (int) packed[i];
+            }
+            return rows;
+        }
+
+        private int[] numberRanks(double[] column) {
+            double[] distinct = Arrays.copyOf(column, size);
+            Arrays.sort(distinct);
+            int n = 0;
+            for (double value : distinct) {
+                if (n == 0 || Double.compare(distinct[n - 1], value) != 0) {
+                    distinct[n++] = value;
+                }
+            }
+            int[] ranks = new int[size];
+            for (int row = 0; row < size; row++) {
+                ranks[row] = Arrays.binarySearch(distinct, 0, n, column[row]);
+            }
+            return ranks;
+        }
+
+        private int[] textRanks(SortKey key) {
+            if (key == SortKey.TITLE || key == SortKey.AUTHOR) {
+                return ranks(key == SortKey.TITLE ? titleKeys : authorKeys, CollationKeys::compare);
+            }
+            String[] dates = new String[size];
+            for (int row = 0; row < size; row++) {
+                dates[row] = books[row].getPublicationDate();
+            }
+            return ranks(dates, Comparator.naturalOrder());
+        }
+
+        // Missing values rank after every value
+        private <T> int[] ranks(T[] values, Comparator<? super T> order) {
+            T[] distinct = Arrays.copyOf(values, size);
+            int n = 0;
+            for (T value : distinct) {
+                if (value != null) {
+                    distinct[n++] = value;
+                }
+            }
+            Arrays.sort(distinct, 0, n, order);
+            int unique = 0;
+            for (int i = 0; i < n; i++) {
+                if (unique == 0 || order.compare(distinct[unique - 1], distinct[i]) != 0) {
+                    distinct[unique++] = distinct[i];
+                }
+            }
+            int[] ranks = new int[size];
+            for (int row = 0; row < size; row++) {
+                ranks[row] = values[row] != null ? Arrays.binarySearch(distinct, 0, unique, values[row], order)
+                        : unique;
+            }
+            return ranks;
+        }
+
+        private IntBinaryOperator comparator(SortKey key) {
+            switch (key) {
+                case TITLE:
+                    return (a, b) -> compareValues(titleKeys[a], titleKeys[b], CollationKeys::compare, a, b);
+                case AUTHOR:
+                    return (a, b) -> compareValues(authorKeys[a], authorKeys[b], CollationKeys::compare, a, b);
+                case PRICE:
+                    return (a, b) -> compareNumbers(prices[a], prices[b], a, b);
+                case RATING:
+                    return (a, b) -> compareNumbers(ratings[a], ratings[b], a, b);
+                default:
+                    return (a, b) -> compareValues(books[a].getPublicationDate(), books[b].getPublicationDate(),
+                            Comparator.naturalOrder(), a, b);
+            }
+        }
+
+        // Missing values sort last, as in ExploreDB.sortBooks
+        private static <T> int compareValues(T x, T y, Comparator<? super T> order, int a, int b) {
+            if (x == null || y == null) {
+                return x != null ? -1 : y != null ? 1 : Integer.compare(a, b);
+            }
+            int byValue = order.compare(x, y);
+            return byValue != 0 ? byValue : Integer.compare(a, b);
+        }
+
+        private static int compareNumbers(double x, double y, int a, int b) {
+            int order = Double.compare(x, y);
+            return order != 0 ? order : Integer.compare(a, b);
+        }
+
+        // Each changed row is placed by binary search, and the kept rows between
+        // are copied in bulk, so a batch costs few comparisons however big the
+        // table is
+        private static int[] merge(int[] kept, int keptCount, int[] changed, IntBinaryOperator order) {
+            int[] merged = new int[keptCount + changed.length];
+            int from = 0;
+            int k = 0;
+            for (int row : changed) {
+                int low = from;
+                int high = keptCount;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (order.applyAsInt(kept[mid], row) < 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                System.arraycopy(kept, from, merged, k, low - from);
+                k += low - from;
+                merged[k++] = row;
+                from = low;
+            }
+            System.arraycopy(kept, from, merged, k, keptCount - from);
+            return merged;
+        }
+
+        // Merge sort on primitive rows, so sorting boxes nothing
+        private static void sortRows(int[] rows, IntBinaryOperator order) {
+            int[] buffer = new int[rows.length];
+            for (int width = 1; width < rows.length; width *= 2) {
+                for (int from = 0; from < rows.length - width; from += 2 * width) {
+                    int middle = from + width;
+                    int to = Math.min(from + 2 * width, rows.length);
+                    System.arraycopy(rows, from, buffer, from, to - from);
+                    int i = from;
+                    int j = middle;
+                    for (int k = from; k < to; k++) {
+                        rows[k] = j == to || i < middle && order.applyAsInt(buffer[i], buffer[j]) <= 0
+                                ? buffer[i++]
+                                : buffer[j++];
+                    }
+                }
+            }
+        }
+
+        private static RowBitmap[] edited(RowBitmap[] bitmaps, int count, Map<Integer, BitmapEdit> edits) {
+            RowBitmap[] result = Arrays.copyOf(bitmaps, count);
+            for (int id = 0; id < count; id++) {
+                RowBitmap bitmap = result[id] != null ? result[id] : RowBitmap.EMPTY;
+                BitmapEdit edit = edits.get(id);
+                result[id] = edit != null ? edit.applyTo(bitmap) : bitmap;
+            }
+            return result;
+        }
+
+        // Rows are visited in order, so each value's rows come out sorted
+        private BookTable buildBitmaps() {
+            RowList[] byLanguage = RowList.array(languageNames.size());
+            RowList[] byCategory = RowList.array(categoryNames.size());
+            RowList availableList = new RowList();
+            RowList discountedList = new RowList();
+            RowList featuredList = new RowList();
+            for (int row = 0; row < size; row++) {
+                if (languages[row] >= 0) {
+                    byLanguage[languages[row]].add(row);
+                }
+                for (int category : categories[row]) {
+                    byCategory[category].add(row);
+                }
+                if (available[row]) {
+                    availableList.add(row);
+                }
+                if (discounts[row] > 0) {
+                    discountedList.add(row);
+                }
+                if (featured[row]) {
+                    featuredList.add(row);
+                }
+            }
+            return new BookTable(this, RowList.bitmaps(byLanguage), RowList.bitmaps(byCategory),
+                    availableList.bitmap(), discountedList.bitmap(), featuredList.bitmap());
+        }
+    }
+
+    private enum Dimension {
+        LANGUAGE, PUBLISHER, CATEGORY
+    }
+
+    /**
+     * Growable array of increasing row ids
+     */
+    private static final class RowList {
+        private int[] rows = new int[8];
+        private int size;
+
+        static RowList[] array(int count) {
+            RowList[] lists = new RowList[count];
+            for (int i = 0; i < count; i++) {
+                lists[i] = new RowList();
+            }
+            return lists;
+        }
+
+        static RowBitmap[] bitmaps(RowList[] lists) {
+            RowBitmap[] bitmaps = new RowBitmap[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                bitmaps[i] = lists[i].bitmap();
+            }
+            return bitmaps;
+        }
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        RowBitmap bitmap() {
+            return RowBitmap.of(rows, size);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Runs catalog-wide loops (decoding query results, filtering, table scans,
+ * sort keys, facet counts, scoring) either on the calling thread or split into ranges across a
+ * dedicated fork-join pool, whichever the cost model expects to be faster.
+ *
+ * Each kind of {@link Operation} keeps a running estimate of its cost per
+ * item, measured on every run. A loop is split only when its estimated time
+ * is well above the cost of handing ranges to the pool, and ranges are sized
+ * so each carries a useful amount of work. The pool is separate from the
+ * common pool, so catalog work never queues behind CompletableFuture I/O
+ * tasks or holds them up.
+ *
+ * Work that can overlap with the caller's own I/O, such as decoding one batch
+ * of query results while the next is fetched, is forked to the same pool in
+ * tasks sized by the same estimates.
+ */
+public final class CatalogExecutor {
+    private static final Logger LOGGER = Logger.getLogger(CatalogExecutor.class.getName());
+
+    // Loops estimated to take less than this run on the calling thread
+    private static final long PARALLEL_THRESHOLD_NANOS = 500_000;
+    // Work per range, so a range outweighs its hand-off many times over
+    private static final long RANGE_NANOS = 100_000;
+    private static final int RANGES_PER_THREAD = 4;
+    // Weight of the newest measurement in an operation's cost estimate
+    private static final double SMOOTHING = 0.2;
+
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("catalog-worker-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    /**
+     * Kinds of catalog loops, each with its own cost estimate. The starting
+     * estimates are rough; measurements replace them within a few runs.
+     */
+    public enum Operation {
+        SCAN(5), FILTER(200), SCORE(300), DECODE(2_000), SORT_KEYS(5_000), FACETS(20_000);
+
+        private volatile double nanosPerItem;
+
+        Operation(double initialNanosPerItem) {
+            this.nanosPerItem = initialNanosPerItem;
+        }
+
+        /**
+         * Current estimate of the cost of one item
+         */
+        public double nanosPerItem() {
+            return nanosPerItem;
+        }
+
+        // Races between runs only lose a measurement
+        private void record(long nanos, int items) {
+            if (items > 0) {
+                nanosPerItem += SMOOTHING * ((double) nanos / items - nanosPerItem);
+            }
+        }
+    }
+
+    /**
+     * Work on a range of items
+     */
+    @FunctionalInterface
+    public interface RangeTask<R> {
+        /**
+         * @param from First item
+         * @param to   Item after the last
+         * @return Result for the range
+         */
+        R apply(int from, int to);
+    }
+
+    /**
+     * Loop over every item of a range without a result
+     */
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private CatalogExecutor() {
+    }
+
+    /**
+     * Run a task over items [0, size), in parallel ranges if that pays
+     *
+     * @param operation Kind of loop, for the cost estimate
+     * @param size      Number of items
+     * @param task      Work on one range; ranges never overlap
+     * @param combine   Joins the results of adjacent ranges, earlier first
+     * @return The combined result, or the task's result for [0, size)
+     */
+    public static <R> R map(Operation operation, int size, RangeTask<R> task, BinaryOperator<R> combine) {
+        int ranges = ranges(operation, size);
+        if (ranges < 2) {
+            long start = System.nanoTime();
+            R result = task.apply(0, size);
+            operation.record(System.nanoTime() - start, size);
+            return result;
+        }
+
+        long[] nanos = new long[ranges];
+        List<ForkJoinTask<R>> forked = new ArrayList<>(ranges - 1);
+        for (int i = 1; i < ranges; i++) {
+            int range = i;
+            forked.add(POOL.submit(() -> timed(task, bound(range, ranges, size), bound(range + 1, ranges, size),
+                    nanos, range)));
+        }
+        // The caller works on the first range instead of waiting idle
+        R result = timed(task, 0, bound(1, ranges, size), nanos, 0);
+        for (ForkJoinTask<R> range : forked) {
+            result = combine.apply(result, range.join());
+        }
+
+        long total = 0;
+        for (long rangeNanos : nanos) {
+            total += rangeNanos;
+        }
+        operation.record(total, size);
+        LOGGER.finest(() -> operation + ": " + size + " items in " + ranges + " ranges");
+        return result;
+    }
+
+    /**
+     * Run a loop over items [0, size), in parallel ranges if that pays
+     *
+     * @param operation Kind of loop, for the cost estimate
+     * @param size      Number of items
+     * @param body      Work on one range; ranges never overlap
+     */
+    public static void forEach(Operation operation, int size, RangeBody body) {
+        map(operation, size, (from, to) -> {
+            body.run(from, to);
+            return null;
+        }, (a, b) -> null);
+    }
+
+    /**
+     * Select items [0, size) with a task returning the selected ids of a
+     * range, in parallel ranges if that pays
+     *
+     * @param operation Kind of loop, for the cost estimate
+     * @param size      Number of items
+     * @param task      Ids selected in one range, in order
+     * @return The selected ids of every range, in order
+     */
+    public static int[] select(Operation operation, int size, RangeTask<int[]> task) {
+        List<int[]> parts = map(operation, size, (from, to) -> {
+            List<int[]> part = new ArrayList<>();
+            part.add(task.apply(from, to));
+            return part;
+        }, CatalogExecutor::concat);
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length;
+        }
+        int[] selected = new int[length];
+        int n = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, selected, n, part.length);
+            n += part.length;
+        }
+        return selected;
+    }
+
+    /**
+     * Number of items of an operation that make a task worth handing to the
+     * pool, by the current estimate of its cost
+     */
+    public static int taskSize(Operation operation) {
+        double items = Math.ceil(PARALLEL_THRESHOLD_NANOS / Math.max(operation.nanosPerItem(), 1e-3));
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, items));
+    }
+
+    /**
+     * Start a task on the pool and return without waiting for it
+     *
+     * @param operation Kind of work, for the cost estimate
+     * @param size      Number of items the task covers
+     * @param task      The work
+     * @return The running task, to be joined for its result
+     */
+    public static <R> ForkJoinTask<R> fork(Operation operation, int size, Supplier<R> task) {
+        return POOL.submit(() -> {
+            long start = System.nanoTime();
+            R result = task.get();
+            operation.record(System.nanoTime() - start, size);
+            return result;
+        });
+    }
+
+    /**
+     * Join the results of two consecutive ranges, for use as a combiner
+     */
+    public static <E> List<E> concat(List<E> first, List<E> second) {
+        first.addAll(second);
+        return first;
+    }
+
+    // Number of ranges to split a loop into; below 2 it runs on the caller
+    private static int ranges(Operation operation, int size) {
+        double cost = operation.nanosPerItem();
+        if (PARALLELISM < 2 || size < 2 || size * cost < PARALLEL_THRESHOLD_NANOS) {
+            return 1;
+        }
+        long itemsPerRange = Math.max(1, (long) (RANGE_NANOS / Math.max(cost, 1e-3)));
+        long ranges = (size + itemsPerRange - 1) / itemsPerRange;
+        return (int) Math.min(ranges, (long) PARALLELISM * RANGES_PER_THREAD);
+    }
+
+    private static int bound(int range, int ranges, int size) {
+        return (int) ((long) size * range / ranges);
+    }
+
+    private static <R> R timed(RangeTask<R> task, int from, int to, long[] nanos, int range) {
+        long start = System.nanoTime();
+        R result = task.apply(from, to);
+        nanos[range] = System.nanoTime() - start;
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+package com.search;
+
+import java.text.Collator;
+import java.text.ParseException;
+import java.text.RuleBasedCollator;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sort keys for titles and authors. Text is ordered by one collation covering
+ * both scripts: Latin by the English rules, so "apple", "Apple" and "Éclair"
+ * sort among the e's and a's instead of by code point, then Bangla in
+ * dictionary order, with ড়, ঢ় and য় after the letters they are built on and
+ * ৎ after ত. Bangla digits sort with the matching ASCII digits.
+ *
+ * A collator is slow to compare with, so each text is turned into its
+ * collation key once and keys are compared as unsigned bytes, which orders
+ * them exactly as the collator would.
+ */
+public final class CollationKeys {
+    private static final Logger LOGGER = Logger.getLogger(CollationKeys.class.getName());
+
+    // Appended to the English rules, so Bangla sorts after Latin text
+    private static final String BANGLA_RULES = "< অ < আ < ই < ঈ < উ < ঊ < ঋ < ৠ < ঌ < ৡ < এ < ঐ < ও < ঔ"
+            + " < ঁ < ং < ঃ"
+            + " < ক < খ < গ < ঘ < ঙ < চ < ছ < জ < ঝ < ঞ < ট < ঠ < ড < ড় < ঢ < ঢ় < ণ"
+            + " < ত < ৎ < থ < দ < ধ < ন < প < ফ < ব < ভ < ম < য < য় < র < ল < শ < ষ < স < হ"
+            + " < া < ি < ী < ু < ূ < ৃ < ৄ < ে < ৈ < ো < ৌ < ্";
+
+    // Collators are not safe to share between threads
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(CollationKeys::newCollator);
+
+    private CollationKeys() {
+    }
+
+    /**
+     * Collation key of a text
+     *
+     * @param text The text, may be null
+     * @return Its key, or null for null text
+     */
+    public static byte[] of(String text) {
+        return text != null ? COLLATOR.get().getCollationKey(text).toByteArray() : null;
+    }
+
+    /**
+     * Compare two keys from {@link #of(String)}
+     */
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    private static Collator newCollator() {
+        RuleBasedCollator english = (RuleBasedCollator) Collator.getInstance(Locale.ENGLISH);
+        StringBuilder rules = new StringBuilder(english.getRules()).append(BANGLA_RULES);
+        for (int digit = 0; digit <= 9; digit++) {
+            rules.append(" & ").append(digit).append(" ; ").append((char) ('০' + digit));
+        }
+        try {
+            Collator collator = new RuleBasedCollator(rules.toString());
+            // Lets nukta letters typed as two characters match the single ones
+            collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+            return collator;
+        } catch (ParseException e) {
+            LOGGER.log(Level.WARNING, "Invalid collation rules, sorting by English rules only", e);
+            return english;
+        }
+    }
+}
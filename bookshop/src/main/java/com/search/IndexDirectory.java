@@ -0,0 +1,146 @@
+package com.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.models.Book;
+
+/**
+ * Directory holding the segment files of the search index and a manifest that
+ * names the current segments and their deleted docs. The manifest is replaced
+ * atomically, so the directory always describes one consistent index; files it
+ * does not name are leftovers of merges and are deleted.
+ */
+final class IndexDirectory {
+    private static final Logger LOGGER = Logger.getLogger(IndexDirectory.class.getName());
+
+    private static final String MANIFEST = "segments.manifest";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MANIFEST_VERSION = 1;
+
+    private final Path path;
+    private long nextGeneration;
+
+    IndexDirectory(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Open the segments named by the manifest
+     *
+     * @return Segments with their deleted docs, oldest first; empty if there is
+     *         no index on disk yet
+     * @throws IOException If the manifest or a segment cannot be read
+     */
+    synchronized Map<IndexSegment, BitSet> load() throws IOException {
+        Map<IndexSegment, BitSet> segments = new LinkedHashMap<>();
+        try (InputStream stream = Files.newInputStream(path.resolve(MANIFEST))) {
+            DataInputStream in = new DataInputStream(stream);
+            if (in.readInt() != MANIFEST_VERSION) {
+                throw new IOException("Unsupported search index manifest version");
+            }
+            nextGeneration = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                IndexSegment segment = IndexSegment.open(path.resolve(in.readUTF()));
+                long[] words = new long[in.readInt()];
+                for (int w = 0; w < words.length; w++) {
+                    words[w] = in.readLong();
+                }
+                segments.put(segment, BitSet.valueOf(words));
+            }
+        } catch (NoSuchFileException e) {
+            return segments;
+        }
+        deleteUnreferenced(segments.keySet());
+        return segments;
+    }
+
+    /**
+     * Write books to a new segment file
+     *
+     * @param books Books of the segment, in doc id order
+     * @return The opened segment
+     * @throws IOException If the segment cannot be written
+     */
+    IndexSegment write(List<Book> books) throws IOException {
+        Files.createDirectories(path);
+        return IndexSegment.write(path.resolve(nextSegmentName()), books);
+    }
+
+    /**
+     * Make the given segments the current index and delete files of segments no
+     * longer in use
+     *
+     * @param segments Current segments with their deleted docs, oldest first
+     * @throws IOException If the manifest cannot be written
+     */
+    synchronized void commit(Map<IndexSegment, BitSet> segments) throws IOException {
+        Files.createDirectories(path);
+        Path temp = path.resolve(MANIFEST + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MANIFEST_VERSION);
+            out.writeLong(nextGeneration);
+            out.writeInt(segments.size());
+            for (Map.Entry<IndexSegment, BitSet> segment : segments.entrySet()) {
+                out.writeUTF(segment.getKey().file().getFileName().toString());
+                long[] words = segment.getValue().toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+            out.flush();
+        }
+        // On disk before it replaces the old manifest, which may then name
+        // segments that are deleted below
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, path.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        deleteUnreferenced(segments.keySet());
+    }
+
+    private synchronized String nextSegmentName() {
+        return "segment-" + Long.toString(nextGeneration++, 36) + SEGMENT_SUFFIX;
+    }
+
+    // Best effort: a segment still mapped by a reader may refuse deletion on some
+    // platforms, in which case it is removed on a later commit or start
+    private void deleteUnreferenced(Collection<IndexSegment> segments) {
+        Set<Path> live = new HashSet<>();
+        for (IndexSegment segment : segments) {
+            live.add(segment.file().getFileName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + SEGMENT_SUFFIX + "*")) {
+            for (Path file : files) {
+                if (!live.contains(file.getFileName())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not remove unused search index files", e);
+        }
+    }
+}
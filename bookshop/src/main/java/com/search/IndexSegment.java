@@ -0,0 +1,366 @@
+package com.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import com.models.Book;
+
+/**
+ * Immutable segment file, memory-mapped read-only so opening it costs a few
+ * reads of the footer and the operating system pages data in on demand.
+ *
+ * Layout, all integers big-endian and positions absolute:
+ * <pre>
+ * field lengths   int[docCount * fieldCount]
+ * stored fields   one {@link StoredFields} record per doc
+ * stored offsets  int[docCount]
+ * keys            one length-prefixed UTF-8 key per doc
+ * key offsets     int[docCount]
+ * keys by value   int[docCount] doc ids sorted by key
+ * per field       postings, then terms, then the dictionary:
+ *                 termCount, int[termCount] term offsets,
+ *                 int[termCount + 1] posting offsets, int[termCount] doc freqs
+ * footer          long[fieldCount] total field lengths, section positions,
+ *                 docCount, fieldCount, version, magic
+ * </pre>
+ * Dictionary terms are sorted by {@link String#compareTo}, so exact and prefix
+ * lookups are binary searches that decode a handful of terms.
+ */
+final class IndexSegment implements Segment {
+    private static final int MAGIC = 0x42534958; // "BSIX"
+    private static final int VERSION = 1;
+    private static final int NULL_LENGTH = -1;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int docCount;
+    private final int fieldCount;
+    private final long[] totalFieldLengths;
+    private final int lengthsPos;
+    private final int storedOffsetsPos;
+    private final int keyOffsetsPos;
+    private final int sortedKeysPos;
+    private final int[] dictionaryPos;
+    private final AtomicReferenceArray<Book> documents;
+
+    private IndexSegment(Path file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+
+        int end = buffer.limit();
+        if (end < 4 * Integer.BYTES || buffer.getInt(end - 4) != MAGIC) {
+            throw new IOException("Not a search index segment: " + file);
+        }
+        if (buffer.getInt(end - 8) != VERSION) {
+            throw new IOException("Unsupported segment version in " + file);
+        }
+        fieldCount = buffer.getInt(end - 12);
+        docCount = buffer.getInt(end - 16);
+        if (fieldCount != SearchField.values().length) {
+            throw new IOException("Segment was written for different search fields: " + file);
+        }
+
+        int position = end - footerLength(fieldCount);
+        totalFieldLengths = new long[fieldCount];
+        for (int field = 0; field < fieldCount; field++) {
+            totalFieldLengths[field] = buffer.getLong(position);
+            position += Long.BYTES;
+        }
+        lengthsPos = buffer.getInt(position);
+        storedOffsetsPos = buffer.getInt(position + 4);
+        keyOffsetsPos = buffer.getInt(position + 8);
+        sortedKeysPos = buffer.getInt(position + 12);
+        position += 16;
+        dictionaryPos = new int[fieldCount];
+        for (int field = 0; field < fieldCount; field++) {
+            dictionaryPos[field] = buffer.getInt(position);
+            position += Integer.BYTES;
+        }
+        documents = new AtomicReferenceArray<>(docCount);
+    }
+
+    /**
+     * Map an existing segment file
+     *
+     * @param file Segment file
+     * @return The opened segment
+     * @throws IOException If the file cannot be read or is not a segment
+     */
+    static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new IndexSegment(file, mapped);
+        }
+    }
+
+    /**
+     * Write books to a new segment file and open it. The file is written under a
+     * temporary name and moved into place, so a crash never leaves a partial
+     * segment behind.
+     *
+     * @param file  Target file
+     * @param books Books in doc id order; later duplicates of a key are skipped
+     * @return The opened segment
+     * @throws IOException If the file cannot be written
+     */
+    static IndexSegment write(Path file, List<Book> books) throws IOException {
+        MemorySegment source = MemorySegment.of(books);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            writeSegment(out, source);
+            out.flush();
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    private static void writeSegment(DataOutputStream out, MemorySegment source) throws IOException {
+        int docs = source.docCount();
+        SearchField[] fields = SearchField.values();
+
+        int lengthsPos = out.size();
+        for (int docId = 0; docId < docs; docId++) {
+            for (SearchField field : fields) {
+                out.writeInt(source.fieldLength(docId, field));
+            }
+        }
+
+        int[] storedOffsets = new int[docs];
+        for (int docId = 0; docId < docs; docId++) {
+            storedOffsets[docId] = out.size();
+            StoredFields.write(out, source.document(docId));
+        }
+        int storedOffsetsPos = writeInts(out, storedOffsets);
+
+        String[] keys = new String[docs];
+        int[] keyOffsets = new int[docs];
+        for (int docId = 0; docId < docs; docId++) {
+            keys[docId] = SearchIndex.keyOf(source.document(docId));
+            keyOffsets[docId] = out.size();
+            StoredFields.writeString(out, keys[docId]);
+        }
+        int keyOffsetsPos = writeInts(out, keyOffsets);
+
+        Integer[] byKey = new Integer[docs];
+        for (int docId = 0; docId < docs; docId++) {
+            byKey[docId] = docId;
+        }
+        Arrays.sort(byKey, Comparator.comparing(docId -> keys[docId]));
+        int sortedKeysPos = out.size();
+        for (int docId : byKey) {
+            out.writeInt(docId);
+        }
+
+        int[] dictionaryPos = new int[fields.length];
+        for (SearchField field : fields) {
+            SortedMap<String, PostingList> terms = source.terms(field);
+            int termCount = terms.size();
+            int[] postingOffsets = new int[termCount + 1];
+            int[] docFreqs = new int[termCount];
+            int[] termOffsets = new int[termCount];
+
+            int i = 0;
+            for (PostingList list : terms.values()) {
+                postingOffsets[i] = out.size();
+                docFreqs[i] = list.docCount();
+                list.writeTo(out);
+                i++;
+            }
+            postingOffsets[termCount] = out.size();
+
+            i = 0;
+            for (String term : terms.keySet()) {
+                termOffsets[i++] = out.size();
+                StoredFields.writeString(out, term);
+            }
+
+            dictionaryPos[field.ordinal()] = out.size();
+            out.writeInt(termCount);
+            writeInts(out, termOffsets);
+            writeInts(out, postingOffsets);
+            writeInts(out, docFreqs);
+        }
+
+        for (SearchField field : fields) {
+            out.writeLong(source.totalFieldLength(field));
+        }
+        out.writeInt(lengthsPos);
+        out.writeInt(storedOffsetsPos);
+        out.writeInt(keyOffsetsPos);
+        out.writeInt(sortedKeysPos);
+        writeInts(out, dictionaryPos);
+        out.writeInt(docs);
+        out.writeInt(fields.length);
+        out.writeInt(VERSION);
+        out.writeInt(MAGIC);
+    }
+
+    private static int writeInts(DataOutputStream out, int[] values) throws IOException {
+        int position = out.size();
+        for (int value : values) {
+            out.writeInt(value);
+        }
+        return position;
+    }
+
+    private static int footerLength(int fieldCount) {
+        return fieldCount * Long.BYTES + (4 + fieldCount) * Integer.BYTES + 4 * Integer.BYTES;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    @Override
+    public int docCount() {
+        return docCount;
+    }
+
+    @Override
+    public PostingList postings(SearchField field, String term) {
+        int index = lowerBound(field, term);
+        if (index < termCount(field) && termAt(field, index).equals(term)) {
+            return postingsAt(field, index);
+        }
+        return null;
+    }
+
+    @Override
+    public List<Map.Entry<String, PostingList>> prefixPostings(SearchField field, String prefix) {
+        int from = lowerBound(field, prefix);
+        int to = lowerBound(field, prefix + Character.MAX_VALUE);
+        List<Map.Entry<String, PostingList>> entries = new ArrayList<>(to - from);
+        for (int index = from; index < to; index++) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(termAt(field, index), postingsAt(field, index)));
+        }
+        return entries;
+    }
+
+    @Override
+    public int fieldLength(int docId, SearchField field) {
+        return buffer.getInt(lengthsPos + (docId * fieldCount + field.ordinal()) * Integer.BYTES);
+    }
+
+    @Override
+    public long totalFieldLength(SearchField field) {
+        return totalFieldLengths[field.ordinal()];
+    }
+
+    /**
+     * Decode a stored book. Decoded books are kept, so each is decoded once.
+     */
+    @Override
+    public Book document(int docId) {
+        Book book = documents.get(docId);
+        if (book == null) {
+            book = StoredFields.read(buffer, buffer.getInt(storedOffsetsPos + docId * Integer.BYTES));
+            documents.compareAndSet(docId, null, book);
+        }
+        return book;
+    }
+
+    @Override
+    public int find(String bookKey) {
+        int low = 0;
+        int high = docCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int docId = buffer.getInt(sortedKeysPos + mid * Integer.BYTES);
+            int cmp = key(docId).compareTo(bookKey);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return docId;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void forEachTerm(Consumer<String> action) {
+        for (SearchField field : SearchField.values()) {
+            int count = termCount(field);
+            for (int index = 0; index < count; index++) {
+                action.accept(termAt(field, index));
+            }
+        }
+    }
+
+    @Override
+    public String key(int docId) {
+        return readString(buffer.getInt(keyOffsetsPos + docId * Integer.BYTES));
+    }
+
+    private int termCount(SearchField field) {
+        return buffer.getInt(dictionaryPos[field.ordinal()]);
+    }
+
+    // Dictionary arrays follow the term count: term offsets, posting offsets, doc freqs
+    private String termAt(SearchField field, int index) {
+        int base = dictionaryPos[field.ordinal()] + Integer.BYTES;
+        return readString(buffer.getInt(base + index * Integer.BYTES));
+    }
+
+    private PostingList postingsAt(SearchField field, int index) {
+        int count = termCount(field);
+        int postingOffsets = dictionaryPos[field.ordinal()] + (1 + count) * Integer.BYTES;
+        int docFreqs = postingOffsets + (count + 1) * Integer.BYTES;
+
+        int start = buffer.getInt(postingOffsets + index * Integer.BYTES);
+        int end = buffer.getInt(postingOffsets + (index + 1) * Integer.BYTES);
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end).position(start);
+        return PostingList.view(slice, buffer.getInt(docFreqs + index * Integer.BYTES));
+    }
+
+    // First term index whose term is not less than the given one
+    private int lowerBound(SearchField field, String term) {
+        int low = 0;
+        int high = termCount(field);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (termAt(field, mid).compareTo(term) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private String readString(int position) {
+        int length = buffer.getInt(position);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,382 @@
+package com.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.models.Book;
+
+/**
+ * Immutable snapshot of the search index: its segments, the docs deleted in
+ * each, the statistics BM25 needs and the fuzzy matching vocabulary. Readers
+ * take the current view once and use it for a whole query, so they never block
+ * and never see half of an update.
+ *
+ * The index writer derives the next view with an {@link Editor}. Segments and
+ * the vocabulary are shared between views; only the deletion sets an edit
+ * touches are copied.
+ */
+final class IndexView {
+
+    // Terms new since the vocabulary was built are matched by brute force until
+    // there are this many, then folded into a copy of the vocabulary
+    private static final int MAX_RECENT_TERMS = 1024;
+
+    static final IndexView EMPTY = new IndexView(Collections.emptyList(), Collections.emptyList(),
+            new long[SearchField.values().length], 0, new TrigramIndex(), Collections.emptySet());
+
+    private final List<Segment> segments;
+    private final List<BitSet> deleted;
+    private final int[] bases;
+    private final int docCount;
+    private final long[] totalFieldLengths;
+    private final int liveDocs;
+    private final TrigramIndex vocabulary;
+    private final Set<String> recentTerms;
+
+    private IndexView(List<Segment> segments, List<BitSet> deleted, long[] totalFieldLengths, int liveDocs,
+            TrigramIndex vocabulary, Set<String> recentTerms) {
+        this.segments = segments;
+        this.deleted = deleted;
+        this.totalFieldLengths = totalFieldLengths;
+        this.liveDocs = liveDocs;
+        this.vocabulary = vocabulary;
+        this.recentTerms = recentTerms;
+
+        bases = new int[segments.size()];
+        int count = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            bases[s] = count;
+            count += segments.get(s).docCount();
+        }
+        docCount = count;
+    }
+
+    /**
+     * Segments, oldest first
+     */
+    List<Segment> segments() {
+        return segments;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    Segment segment(int s) {
+        return segments.get(s);
+    }
+
+    /**
+     * Global doc id of a segment's first doc: the doc counts of the segments
+     * before it
+     */
+    int base(int s) {
+        return bases[s];
+    }
+
+    /**
+     * Number of global doc ids, deleted ones included
+     */
+    int docCount() {
+        return docCount;
+    }
+
+    int liveDocs() {
+        return liveDocs;
+    }
+
+    long totalFieldLength(SearchField field) {
+        return totalFieldLengths[field.ordinal()];
+    }
+
+    boolean isDeleted(int s, int docId) {
+        return deleted.get(s).get(docId);
+    }
+
+    /**
+     * Deleted docs of a segment. The set is shared and must not be modified.
+     */
+    BitSet deletedDocs(int s) {
+        return deleted.get(s);
+    }
+
+    int liveDocCount(int s) {
+        return segments.get(s).docCount() - deleted.get(s).cardinality();
+    }
+
+    /**
+     * Live books of a segment in doc id order
+     */
+    List<Book> liveDocuments(int s) {
+        Segment segment = segments.get(s);
+        List<Book> live = new ArrayList<>(liveDocCount(s));
+        for (int docId = 0; docId < segment.docCount(); docId++) {
+            if (!isDeleted(s, docId)) {
+                live.add(segment.document(docId));
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Last segment starting at or before a global doc id; empty segments share
+     * their base with the next one
+     */
+    int segmentOf(int docId) {
+        int low = 0;
+        int high = bases.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (bases[mid] <= docId) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    Book document(int docId) {
+        int s = segmentOf(docId);
+        return segments.get(s).document(docId - bases[s]);
+    }
+
+    String key(int docId) {
+        int s = segmentOf(docId);
+        return segments.get(s).key(docId - bases[s]);
+    }
+
+    /**
+     * Live book with the given key. Keys are unique among live docs, so the
+     * newest segment holding the key live is the only one.
+     *
+     * @return The book, or null if it is not in the view
+     */
+    Book find(String bookKey) {
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            int docId = segments.get(s).find(bookKey);
+            if (docId >= 0 && !isDeleted(s, docId)) {
+                return segments.get(s).document(docId);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Vocabulary terms within the given edit distance of a term, see
+     * {@link TrigramIndex#similar(String, int, int)}. Recent terms come after
+     * the vocabulary's matches.
+     */
+    List<String> similarTerms(String term, int maxDistance, int maxCandidates) {
+        List<String> similar = vocabulary.similar(term, maxDistance, maxCandidates);
+        for (String recent : recentTerms) {
+            if (!recent.equals(term) && !similar.contains(recent)
+                    && TrigramIndex.boundedLevenshtein(term, recent, maxDistance) <= maxDistance) {
+                similar.add(recent);
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Start deriving the next view from this one
+     */
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Copy-on-write changes to a view. Not thread-safe; used by the index writer
+     * only.
+     */
+    static final class Editor {
+        private final List<Segment> segments;
+        private final List<BitSet> deleted;
+        private final Set<BitSet> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+        private long[] totalFieldLengths;
+        private int liveDocs;
+        private TrigramIndex vocabulary;
+        private Set<String> recentTerms;
+        private boolean recentCopied;
+
+        private Editor(IndexView view) {
+            segments = new ArrayList<>(view.segments);
+            deleted = new ArrayList<>(view.deleted);
+            totalFieldLengths = view.totalFieldLengths.clone();
+            liveDocs = view.liveDocs;
+            vocabulary = view.vocabulary;
+            recentTerms = view.recentTerms;
+        }
+
+        /**
+         * Drop every segment and the vocabulary
+         */
+        Editor clear() {
+            segments.clear();
+            deleted.clear();
+            vocabulary = new TrigramIndex();
+            recentTerms = new HashSet<>();
+            recentCopied = true;
+            recomputeStats();
+            return this;
+        }
+
+        /**
+         * Append a segment as the newest one
+         *
+         * @param segment     The segment
+         * @param deletedDocs Its deleted docs, not modified afterwards by the caller
+         */
+        Editor add(Segment segment, BitSet deletedDocs) {
+            segments.add(segment);
+            deleted.add(deletedDocs);
+            liveDocs += segment.docCount() - deletedDocs.cardinality();
+            for (SearchField field : SearchField.values()) {
+                totalFieldLengths[field.ordinal()] += segment.totalFieldLength(field);
+            }
+            for (int docId = deletedDocs.nextSetBit(0); docId >= 0; docId = deletedDocs.nextSetBit(docId + 1)) {
+                subtractLengths(segment, docId);
+            }
+            return this;
+        }
+
+        /**
+         * Add the terms of a segment to the fuzzy matching vocabulary
+         */
+        Editor addTerms(Segment segment) {
+            segment.forEachTerm(term -> {
+                if (!vocabulary.contains(term) && !recentTerms.contains(term)) {
+                    if (!recentCopied) {
+                        recentTerms = new HashSet<>(recentTerms);
+                        recentCopied = true;
+                    }
+                    recentTerms.add(term);
+                }
+            });
+            if (recentTerms.size() > MAX_RECENT_TERMS) {
+                vocabulary = vocabulary.copyWith(recentTerms);
+                recentTerms = new HashSet<>();
+                recentCopied = true;
+            }
+            return this;
+        }
+
+        /**
+         * Replace the fuzzy matching vocabulary
+         *
+         * @param rebuilt Vocabulary of every segment in the view
+         */
+        Editor setVocabulary(TrigramIndex rebuilt) {
+            vocabulary = rebuilt;
+            recentTerms = new HashSet<>();
+            recentCopied = true;
+            return this;
+        }
+
+        /**
+         * Mark the live doc with the given key deleted
+         *
+         * @return Whether the key was live
+         */
+        boolean delete(String bookKey) {
+            for (int s = segments.size() - 1; s >= 0; s--) {
+                Segment segment = segments.get(s);
+                int docId = segment.find(bookKey);
+                if (docId >= 0 && !deleted.get(s).get(docId)) {
+                    writableDeleted(s).set(docId);
+                    subtractLengths(segment, docId);
+                    liveDocs--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Swap segments for the segment their live docs were written to. Docs
+         * deleted since writing started are deleted in the new segment too.
+         *
+         * @param sources        Segments that were written out
+         * @param deletedAtWrite Their deleted docs when writing started
+         * @param written        New segment, or null if no docs were left
+         * @return This editor; unchanged if a source is no longer in the view,
+         *         as after a rebuild
+         */
+        Editor replace(List<Segment> sources, List<BitSet> deletedAtWrite, Segment written) {
+            if (!segments.containsAll(sources)) {
+                return this;
+            }
+            BitSet carried = new BitSet();
+            int writtenId = 0;
+            int position = segments.size();
+            for (int i = 0; i < sources.size(); i++) {
+                Segment source = sources.get(i);
+                int s = segments.indexOf(source);
+                position = Math.min(position, s);
+                for (int docId = 0; docId < source.docCount(); docId++) {
+                    if (deletedAtWrite.get(i).get(docId)) {
+                        continue;
+                    }
+                    if (deleted.get(s).get(docId)) {
+                        carried.set(writtenId);
+                    }
+                    writtenId++;
+                }
+            }
+
+            for (Segment source : sources) {
+                int s = segments.indexOf(source);
+                segments.remove(s);
+                deleted.remove(s);
+            }
+            if (written != null) {
+                position = Math.min(position, segments.size());
+                segments.add(position, written);
+                deleted.add(position, carried);
+            }
+            recomputeStats();
+            return this;
+        }
+
+        IndexView publish() {
+            return new IndexView(Collections.unmodifiableList(new ArrayList<>(segments)),
+                    Collections.unmodifiableList(new ArrayList<>(deleted)), totalFieldLengths, liveDocs, vocabulary,
+                    Collections.unmodifiableSet(recentTerms));
+        }
+
+        // Deletion sets of the previous view are shared, so each is copied
+        // before its first change
+        private BitSet writableDeleted(int s) {
+            BitSet docs = deleted.get(s);
+            if (!copied.contains(docs)) {
+                docs = (BitSet) docs.clone();
+                copied.add(docs);
+                deleted.set(s, docs);
+            }
+            return docs;
+        }
+
+        private void subtractLengths(Segment segment, int docId) {
+            for (SearchField field : SearchField.values()) {
+                totalFieldLengths[field.ordinal()] -= segment.fieldLength(docId, field);
+            }
+        }
+
+        private void recomputeStats() {
+            totalFieldLengths = new long[SearchField.values().length];
+            liveDocs = 0;
+            List<Segment> current = new ArrayList<>(segments);
+            List<BitSet> currentDeleted = new ArrayList<>(deleted);
+            segments.clear();
+            deleted.clear();
+            for (int s = 0; s < current.size(); s++) {
+                add(current.get(s), currentDeleted.get(s));
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.search;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.models.Book;
+
+/**
+ * In-memory segment holding a batch of added and changed books until they are
+ * flushed to a segment file. It is filled before it is published in an
+ * {@link IndexView} and never changes afterwards.
+ */
+final class MemorySegment implements Segment {
+    private final Map<SearchField, TreeMap<String, PostingList>> postings = new EnumMap<>(SearchField.class);
+    private final List<int[]> fieldLengths = new ArrayList<>();
+    private final long[] totalFieldLengths = new long[SearchField.values().length];
+    private final List<Book> docs = new ArrayList<>();
+    private final Map<String, Integer> docIdsByKey = new HashMap<>();
+
+    private MemorySegment() {
+        for (SearchField field : SearchField.values()) {
+            postings.put(field, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Index books in a new segment
+     *
+     * @param books Books in doc id order; later duplicates of a key are skipped
+     * @return The segment
+     */
+    static MemorySegment of(List<Book> books) {
+        MemorySegment segment = new MemorySegment();
+        for (Book book : books) {
+            if (segment.find(SearchIndex.keyOf(book)) < 0) {
+                segment.add(book);
+            }
+        }
+        return segment;
+    }
+
+    private void add(Book book) {
+        int docId = docs.size();
+        int[] lengths = new int[SearchField.values().length];
+
+        for (SearchField field : SearchField.values()) {
+            List<String> terms = TextAnalyzer.indexTerms(field.extract(book));
+            lengths[field.ordinal()] = terms.size();
+            totalFieldLengths[field.ordinal()] += terms.size();
+
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String term : terms) {
+                frequencies.merge(term, 1, Integer::sum);
+            }
+
+            TreeMap<String, PostingList> fieldPostings = postings.get(field);
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                PostingList list = fieldPostings.get(entry.getKey());
+                if (list == null) {
+                    list = new PostingList();
+                    fieldPostings.put(entry.getKey(), list);
+                }
+                list.add(docId, entry.getValue());
+            }
+        }
+
+        docs.add(book);
+        fieldLengths.add(lengths);
+        docIdsByKey.put(SearchIndex.keyOf(book), docId);
+    }
+
+    /**
+     * Terms of a field in sorted order, for writing the segment to disk
+     */
+    SortedMap<String, PostingList> terms(SearchField field) {
+        return postings.get(field);
+    }
+
+    @Override
+    public int docCount() {
+        return docs.size();
+    }
+
+    @Override
+    public PostingList postings(SearchField field, String term) {
+        return postings.get(field).get(term);
+    }
+
+    @Override
+    public List<Map.Entry<String, PostingList>> prefixPostings(SearchField field, String prefix) {
+        return new ArrayList<>(postings.get(field).subMap(prefix, true, prefix + Character.MAX_VALUE, false)
+                .entrySet());
+    }
+
+    @Override
+    public int fieldLength(int docId, SearchField field) {
+        return fieldLengths.get(docId)[field.ordinal()];
+    }
+
+    @Override
+    public long totalFieldLength(SearchField field) {
+        return totalFieldLengths[field.ordinal()];
+    }
+
+    @Override
+    public Book document(int docId) {
+        return docs.get(docId);
+    }
+
+    @Override
+    public String key(int docId) {
+        return SearchIndex.keyOf(docs.get(docId));
+    }
+
+    @Override
+    public int find(String bookKey) {
+        Integer docId = docIdsByKey.get(bookKey);
+        return docId != null ? docId : -1;
+    }
+
+    @Override
+    public void forEachTerm(Consumer<String> action) {
+        for (TreeMap<String, PostingList> fieldPostings : postings.values()) {
+            fieldPostings.keySet().forEach(action);
+        }
+    }
+}
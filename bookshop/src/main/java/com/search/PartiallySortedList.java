@@ -0,0 +1,117 @@
+package com.search;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list ordered by descending score, sorted lazily. Reading an
+ * element sorts only up to the end of the chunk containing it: the best
+ * remaining elements are first moved to the front by quickselect, then only
+ * that chunk is sorted. Showing the first page of a large result set therefore
+ * costs O(n) rather than O(n log n).
+ *
+ * Chunks double in size as reading moves on, so walking the whole list still
+ * costs O(n log n) overall. Ties keep the original order.
+ */
+final class PartiallySortedList<E> extends AbstractList<E> implements RandomAccess {
+    private static final int MIN_CHUNK = 64;
+
+    private final List<E> items;
+    private final double[] scores;
+    private final int[] order;
+    private int sortedPrefix;
+
+    /**
+     * @param items  Elements in their original order
+     * @param scores Score of each element, higher first
+     */
+    PartiallySortedList(List<E> items, double[] scores) {
+        this.items = items;
+        this.scores = scores;
+        this.order = new int[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= order.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + order.length);
+        }
+        if (index >= sortedPrefix) {
+            int target = Math.max(index + 1, Math.max(sortedPrefix * 2, MIN_CHUNK));
+            sortPrefix(Math.min(target, order.length));
+        }
+        return items.get(order[index]);
+    }
+
+    @Override
+    public int size() {
+        return order.length;
+    }
+
+    private void sortPrefix(int end) {
+        if (end < order.length) {
+            select(sortedPrefix, order.length - 1, end - 1);
+        }
+
+        Integer[] chunk = new Integer[end - sortedPrefix];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = order[sortedPrefix + i];
+        }
+        Arrays.sort(chunk, (a, b) -> compare(a, b));
+        for (int i = 0; i < chunk.length; i++) {
+            order[sortedPrefix + i] = chunk[i];
+        }
+        sortedPrefix = end;
+    }
+
+    // Quickselect: afterwards order[k] holds the element that belongs there and
+    // everything before it ranks no lower
+    private void select(int lo, int hi, int k) {
+        while (lo < hi) {
+            int pivot = order[medianOfThree(lo, (lo + hi) >>> 1, hi)];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(order[i], pivot) < 0) {
+                    i++;
+                }
+                while (compare(order[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int medianOfThree(int a, int b, int c) {
+        int x = order[a];
+        int y = order[b];
+        int z = order[c];
+        if (compare(x, y) < 0) {
+            return compare(y, z) < 0 ? b : (compare(x, z) < 0 ? c : a);
+        }
+        return compare(x, z) < 0 ? a : (compare(y, z) < 0 ? c : b);
+    }
+
+    // Negative when item a ranks before item b
+    private int compare(int a, int b) {
+        int byScore = Double.compare(scores[b], scores[a]);
+        return byScore != 0 ? byScore : Integer.compare(a, b);
+    }
+}
@@ -0,0 +1,132 @@
+package com.search;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Posting list of (docId, term frequency) pairs. Doc ids are stored as
+ * variable-length deltas, so a typical entry takes two bytes.
+ *
+ * A list is either built in memory by appending postings, or is a read-only
+ * view over the same encoding inside a memory-mapped segment file.
+ */
+final class PostingList {
+    private byte[] data;
+    private final ByteBuffer mapped;
+    private int length;
+    private int docCount;
+    private int lastDocId = -1;
+
+    PostingList() {
+        this.data = new byte[8];
+        this.mapped = null;
+    }
+
+    private PostingList(ByteBuffer mapped, int docCount) {
+        this.mapped = mapped;
+        this.length = mapped.remaining();
+        this.docCount = docCount;
+    }
+
+    /**
+     * Read-only view over encoded postings
+     *
+     * @param encoded  Buffer positioned at the first posting and limited to the last
+     * @param docCount Number of postings in the buffer
+     */
+    static PostingList view(ByteBuffer encoded, int docCount) {
+        return new PostingList(encoded.slice(), docCount);
+    }
+
+    /**
+     * Append a posting. Doc ids must be added in increasing order.
+     */
+    void add(int docId, int freq) {
+        if (mapped != null) {
+            throw new UnsupportedOperationException("Mapped posting lists are read-only");
+        }
+        if (docId <= lastDocId) {
+            throw new IllegalArgumentException("Doc ids must be increasing: " + docId + " after " + lastDocId);
+        }
+        writeVInt(docId - lastDocId);
+        writeVInt(freq);
+        lastDocId = docId;
+        docCount++;
+    }
+
+    int docCount() {
+        return docCount;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Write the encoded postings as they are stored in a segment file
+     */
+    void writeTo(DataOutput out) throws IOException {
+        if (mapped != null) {
+            for (int i = 0; i < length; i++) {
+                out.writeByte(mapped.get(i));
+            }
+        } else {
+            out.write(data, 0, length);
+        }
+    }
+
+    int encodedLength() {
+        return length;
+    }
+
+    private void writeVInt(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * Forward-only reader over the postings
+     */
+    final class Cursor {
+        private int position;
+        private int docId = -1;
+        private int freq;
+
+        boolean next() {
+            if (position >= length) {
+                return false;
+            }
+            docId += readVInt();
+            freq = readVInt();
+            return true;
+        }
+
+        int docId() {
+            return docId;
+        }
+
+        int freq() {
+            return freq;
+        }
+
+        private int readVInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mapped != null ? mapped.get(position++) : data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
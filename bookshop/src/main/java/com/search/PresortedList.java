@@ -0,0 +1,57 @@
+package com.search;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of the elements of a row-indexed array, in the order of a
+ * presorted permutation of the rows. Reading an element walks the permutation
+ * only until that many listed rows have been found, so the first page of a
+ * result needs no pass over the rest.
+ *
+ * Reads may come from more than one thread, since results are sorted off the
+ * FX thread and paged on it.
+ */
+final class PresortedList<E> extends AbstractList<E> implements RandomAccess {
+    private final int[] order;
+    private final boolean ascending;
+    private final E[] byRow;
+    private final int size;
+    private final int[] found;
+    private int foundCount;
+    private int cursor;
+
+    /**
+     * @param order     Every row, in ascending order
+     * @param ascending Whether to walk the order forwards
+     * @param byRow     Elements by row, null for rows not listed
+     * @param size      Number of listed rows
+     */
+    PresortedList(int[] order, boolean ascending, E[] byRow, int size) {
+        this.order = order;
+        this.ascending = ascending;
+        this.byRow = byRow;
+        this.size = size;
+        this.found = new int[size];
+    }
+
+    @Override
+    public synchronized E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        while (foundCount <= index && cursor < order.length) {
+            int row = order[ascending ? cursor : order.length - 1 - cursor];
+            cursor++;
+            if (row < byRow.length && byRow[row] != null) {
+                found[foundCount++] = row;
+            }
+        }
+        return byRow[found[index]];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
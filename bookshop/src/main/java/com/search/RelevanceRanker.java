@@ -0,0 +1,121 @@
+package com.search;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.models.Book;
+
+/**
+ * Orders books for the "Relevance" sort option. Each book's score blends:
+ * <ul>
+ * <li>how well it matches the search text, when there is one</li>
+ * <li>its rating, pulled towards the result set's mean rating by a Bayesian
+ * prior so a single 5-star review does not beat a hundred 4.8s</li>
+ * <li>its purchases, worth more on recently uploaded books</li>
+ * <li>whether it is available to borrow right now</li>
+ * </ul>
+ * Scores are computed once per result set; the returned list sorts lazily so
+ * showing one page does not sort the rest.
+ */
+public final class RelevanceRanker {
+    // Weights with and without a text query
+    private static final double TEXT_WEIGHT = 0.45;
+    private static final double[] WEIGHTS_WITH_TEXT = { 0.25, 0.20, 0.10 };
+    private static final double[] WEIGHTS_WITHOUT_TEXT = { 0.45, 0.35, 0.20 };
+
+    // The prior counts as this many reviews at the mean rating
+    private static final double PRIOR_REVIEWS = 10;
+    private static final double DEFAULT_MEAN_RATING = 3.0;
+    private static final double MAX_RATING = 5.0;
+
+    // Purchases of a book uploaded this long ago count half as much as new ones
+    private static final double RECENCY_HALF_LIFE_DAYS = 180;
+
+    private RelevanceRanker() {
+    }
+
+    /**
+     * Rank books by relevance, best first
+     *
+     * @param books Books to rank
+     * @param query Search text the books were found with, may be null
+     * @return Books ordered by relevance
+     */
+    public static List<Book> rank(List<Book> books, String query) {
+        if (books.size() < 2) {
+            return new ArrayList<>(books);
+        }
+
+        Map<String, Double> textScores = query != null && !query.trim().isEmpty()
+                && SearchIndex.getInstance().isReady()
+                        ? SearchIndex.getInstance().textScores(query)
+                        : Collections.emptyMap();
+        boolean useText = !textScores.isEmpty();
+        double[] weights = useText ? WEIGHTS_WITH_TEXT : WEIGHTS_WITHOUT_TEXT;
+
+        double meanRating = meanRating(books);
+        double maxPurchases = 0;
+        for (Book book : books) {
+            maxPurchases = Math.max(maxPurchases, book.getTotalPurchases());
+        }
+        double purchaseScale = Math.log1p(maxPurchases);
+        LocalDate today = LocalDate.now();
+
+        double[] scores = new double[books.size()];
+        CatalogExecutor.forEach(CatalogExecutor.Operation.SCORE, scores.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Book book = books.get(i);
+
+                double rating = bayesianRating(book, meanRating) / MAX_RATING;
+                double purchases = purchaseScale > 0 ? Math.log1p(book.getTotalPurchases()) / purchaseScale : 0;
+                purchases *= 0.5 + 0.5 * recency(book, today);
+                double available = book.getHolderId() == null || book.getHolderId().isEmpty() ? 1 : 0;
+
+                double score = weights[0] * rating + weights[1] * purchases + weights[2] * available;
+                if (useText) {
+                    // Exact database matches the index scored nothing still beat non-matches
+                    String key = SearchIndex.keyOf(book);
+                    score += TEXT_WEIGHT * textScores.getOrDefault(key, 0.0);
+                }
+                scores[i] = score;
+            }
+        });
+        return new PartiallySortedList<>(books, scores);
+    }
+
+    private static double meanRating(List<Book> books) {
+        double sum = 0;
+        long count = 0;
+        for (Book book : books) {
+            if (book.getReviewCount() > 0) {
+                sum += book.getRating() * book.getReviewCount();
+                count += book.getReviewCount();
+            }
+        }
+        return count > 0 ? sum / count : DEFAULT_MEAN_RATING;
+    }
+
+    private static double bayesianRating(Book book, double meanRating) {
+        int reviews = Math.max(0, book.getReviewCount());
+        return (PRIOR_REVIEWS * meanRating + book.getRating() * reviews) / (PRIOR_REVIEWS + reviews);
+    }
+
+    // 1 for a book uploaded today, halving every half-life; 0 if unknown
+    private static double recency(Book book, LocalDate today) {
+        String uploadDate = book.getUploadDate();
+        if (uploadDate == null || uploadDate.length() < 10) {
+            return 0;
+        }
+        try {
+            long days = Math.max(0, ChronoUnit.DAYS.between(LocalDate.parse(uploadDate.substring(0, 10)), today));
+            return Math.pow(0.5, days / RECENCY_HALF_LIFE_DAYS);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable compressed set of row ids, in the manner of Roaring bitmaps. Rows
+ * are split by their high 16 bits into chunks of 65536. A sparse chunk stores
+ * its low 16 bits as a sorted array, a dense one (more than 4096 rows) as a
+ * plain 8 KB bitmap, so a set costs at most about two bytes per row and AND/OR
+ * work chunk by chunk, word by word on dense chunks.
+ *
+ * Deriving a set with rows added or removed copies only the chunks those rows
+ * fall in; the others are shared.
+ */
+public final class RowBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    public static final RowBitmap EMPTY = new RowBitmap(new char[0], new Chunk[0]);
+
+    private final char[] keys;
+    private final Chunk[] chunks;
+
+    private RowBitmap(char[] keys, Chunk[] chunks) {
+        this.keys = keys;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Set of the given rows
+     *
+     * @param rows Row ids in increasing order
+     */
+    public static RowBitmap of(int[] rows) {
+        return of(rows, rows.length);
+    }
+
+    static RowBitmap of(int[] rows, int count) {
+        List<Character> keys = new ArrayList<>();
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < count) {
+            int high = rows[start] >>> 16;
+            int end = start;
+            while (end < count && rows[end] >>> 16 == high) {
+                end++;
+            }
+            char[] low = new char[end - start];
+            for (int i = start; i < end; i++) {
+                low[i - start] = (char) rows[i];
+            }
+            keys.add((char) high);
+            chunks.add(Chunk.ofSorted(low, low.length));
+            start = end;
+        }
+        return build(keys, chunks);
+    }
+
+    public boolean contains(int row) {
+        int index = Arrays.binarySearch(keys, (char) (row >>> 16));
+        return index >= 0 && chunks[index].contains((char) row);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (Chunk chunk : chunks) {
+            cardinality += chunk.cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return chunks.length == 0;
+    }
+
+    /**
+     * Rows in increasing order
+     */
+    public int[] toArray() {
+        int[] rows = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            n = chunks[i].copyTo(keys[i] << 16, rows, n);
+        }
+        return rows;
+    }
+
+    public RowBitmap and(RowBitmap other) {
+        List<Character> resultKeys = new ArrayList<>();
+        List<Chunk> resultChunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Chunk chunk = chunks[i].and(other.chunks[j]);
+                if (chunk.cardinality > 0) {
+                    resultKeys.add(keys[i]);
+                    resultChunks.add(chunk);
+                }
+                i++;
+                j++;
+            }
+        }
+        return build(resultKeys, resultChunks);
+    }
+
+    public RowBitmap or(RowBitmap other) {
+        List<Character> resultKeys = new ArrayList<>();
+        List<Chunk> resultChunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || i < keys.length && keys[i] < other.keys[j]) {
+                resultKeys.add(keys[i]);
+                resultChunks.add(chunks[i++]);
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                resultKeys.add(other.keys[j]);
+                resultChunks.add(other.chunks[j++]);
+            } else {
+                resultKeys.add(keys[i]);
+                resultChunks.add(chunks[i++].or(other.chunks[j++]));
+            }
+        }
+        return build(resultKeys, resultChunks);
+    }
+
+    /**
+     * Derive a set with rows added and removed
+     *
+     * @param added   Rows to add, in increasing order
+     * @param removed Rows to remove, in increasing order
+     * @return The new set; this one is unchanged
+     */
+    public RowBitmap with(int[] added, int[] removed) {
+        if (added.length == 0 && removed.length == 0) {
+            return this;
+        }
+        List<Character> resultKeys = new ArrayList<>();
+        List<Chunk> resultChunks = new ArrayList<>();
+        int i = 0;
+        int a = 0;
+        int r = 0;
+        while (i < keys.length || a < added.length || r < removed.length) {
+            int high = Math.min(i < keys.length ? keys[i] : Integer.MAX_VALUE,
+                    Math.min(a < added.length ? added[a] >>> 16 : Integer.MAX_VALUE,
+                            r < removed.length ? removed[r] >>> 16 : Integer.MAX_VALUE));
+            Chunk existing = i < keys.length && keys[i] == high ? chunks[i++] : null;
+            if (a < added.length && added[a] >>> 16 == high || r < removed.length && removed[r] >>> 16 == high) {
+                long[] words = existing != null ? existing.toWords() : new long[WORDS];
+                for (; a < added.length && added[a] >>> 16 == high; a++) {
+                    words[(added[a] & 0xFFFF) >>> 6] |= 1L << added[a];
+                }
+                for (; r < removed.length && removed[r] >>> 16 == high; r++) {
+                    words[(removed[r] & 0xFFFF) >>> 6] &= ~(1L << removed[r]);
+                }
+                existing = Chunk.ofWords(words);
+            }
+            if (existing != null && existing.cardinality > 0) {
+                resultKeys.add((char) high);
+                resultChunks.add(existing);
+            }
+        }
+        return build(resultKeys, resultChunks);
+    }
+
+    private static RowBitmap build(List<Character> keys, List<Chunk> chunks) {
+        char[] keyArray = new char[keys.size()];
+        for (int i = 0; i < keyArray.length; i++) {
+            keyArray[i] = keys.get(i);
+        }
+        return new RowBitmap(keyArray, chunks.toArray(new Chunk[0]));
+    }
+
+    /**
+     * Rows of one 65536-row chunk: a sorted array of low bits, or bitmap words
+     * once dense
+     */
+    private static final class Chunk {
+        final char[] values;
+        final long[] words;
+        final int cardinality;
+
+        private Chunk(char[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static Chunk ofSorted(char[] values, int count) {
+            if (count <= ARRAY_MAX) {
+                return new Chunk(Arrays.copyOf(values, count), null, count);
+            }
+            long[] words = new long[WORDS];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new Chunk(null, words, count);
+        }
+
+        static Chunk ofWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX) {
+                return new Chunk(null, words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new Chunk(values, null, cardinality);
+        }
+
+        boolean contains(char low) {
+            return words != null ? (words[low >>> 6] & 1L << low) != 0 : Arrays.binarySearch(values, low) >= 0;
+        }
+
+        long[] toWords() {
+            if (words != null) {
+                return words.clone();
+            }
+            long[] result = new long[WORDS];
+            for (char value : values) {
+                result[value >>> 6] |= 1L << value;
+            }
+            return result;
+        }
+
+        int copyTo(int base, int[] rows, int n) {
+            if (values != null) {
+                for (char value : values) {
+                    rows[n++] = base | value;
+                }
+                return n;
+            }
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    rows[n++] = base | w << 6 | Long.numberOfTrailingZeros(word);
+                }
+            }
+            return n;
+        }
+
+        Chunk and(Chunk other) {
+            if (words != null && other.words != null) {
+                long[] result = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] = words[w] & other.words[w];
+                }
+                return ofWords(result);
+            }
+            // At least one side is small: probe the other with its values
+            Chunk small = values != null ? this : other;
+            Chunk large = small == this ? other : this;
+            char[] result = new char[small.cardinality];
+            int n = 0;
+            for (char value : small.values) {
+                if (large.contains(value)) {
+                    result[n++] = value;
+                }
+            }
+            return ofSorted(result, n);
+        }
+
+        Chunk or(Chunk other) {
+            if (values != null && other.values != null && cardinality + other.cardinality <= ARRAY_MAX) {
+                char[] result = new char[cardinality + other.cardinality];
+                int n = 0;
+                int i = 0;
+                int j = 0;
+                while (i < values.length || j < other.values.length) {
+                    if (j == other.values.length || i < values.length && values[i] < other.values[j]) {
+                        result[n++] = values[i++];
+                    } else if (i == values.length || values[i] > other.values[j]) {
+                        result[n++] = other.values[j++];
+                    } else {
+                        result[n++] = values[i++];
+                        j++;
+                    }
+                }
+                return ofSorted(result, n);
+            }
+            long[] result = toWords();
+            if (other.words != null) {
+                for (int w = 0; w < WORDS; w++) {
+                    result[w] |= other.words[w];
+                }
+            } else {
+                for (char value : other.values) {
+                    result[value >>> 6] |= 1L << value;
+                }
+            }
+            return ofWords(result);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.search;
+
+import java.util.function.Function;
+
+import com.models.Book;
+
+/**
+ * Book fields covered by the search index, with the boost each field's score
+ * is multiplied by. A title hit outranks the same word in a description.
+ */
+public enum SearchField {
+    TITLE(3.0, Book::getTitle),
+    AUTHOR(2.0, Book::getAuthor),
+    CATEGORIES(1.5, book -> book.getCategories() != null ? String.join(" ", book.getCategories()) : null),
+    PUBLISHER(1.0, Book::getPublisher),
+    DESCRIPTION(0.5, Book::getDescription),
+    ISBN(1.0, Book::getIsbn);
+
+    private final double boost;
+    private final Function<Book, String> extractor;
+
+    SearchField(double boost, Function<Book, String> extractor) {
+        this.boost = boost;
+        this.extractor = extractor;
+    }
+
+    public double getBoost() {
+        return boost;
+    }
+
+    public String extract(Book book) {
+        return extractor.apply(book);
+    }
+}
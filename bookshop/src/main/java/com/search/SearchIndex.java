@@ -0,0 +1,1085 @@
+package com.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.database.BookDetailsCollection;
+import com.models.Book;
+
+/**
+ * In-process full-text index over the book catalog. Each {@link SearchField}
+ * has its own inverted index of compressed posting lists, and hits are ranked
+ * with BM25 weighted by the field boost. Terms are stored under their
+ * {@link TextAnalyzer#indexTerms(String)} keys, so Bangla and romanized
+ * spellings of a word share one posting list.
+ *
+ * Query terms are also matched against similar index terms found through a
+ * trigram index over the vocabulary, so "alkemist" still finds "alchemist".
+ * Such fuzzy hits score lower and rank after books matching the same number of
+ * query terms exactly.
+ *
+ * The index is kept on disk as memory-mapped {@link IndexSegment} files, so a
+ * restart opens it in milliseconds instead of downloading and tokenizing the
+ * catalog. Updates never rewrite a segment: a changed book is added to a small
+ * in-memory segment and its old doc is marked deleted. In-memory segments are
+ * written out as one segment after a few hundred changes or a few idle
+ * seconds, and a background merge combines segments of similar size and
+ * rewrites segments with many deleted docs.
+ *
+ * Queries read an immutable {@link IndexView} and take no locks. Changes are
+ * queued and applied by a single writer thread, which publishes a new view for
+ * each batch; segment swaps after flushes and merges go through the same
+ * thread, so views are never built concurrently.
+ */
+public class SearchIndex {
+    private static final Logger LOGGER = Logger.getLogger(SearchIndex.class.getName());
+
+    // Standard BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Prefix expansions of the last query term count for less than exact hits
+    private static final double PREFIX_WEIGHT = 0.7;
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    // Fuzzy matching of misspelled terms; candidate counts bound the extra work
+    private static final double FUZZY_WEIGHT = 0.4;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int TWO_EDIT_LENGTH = 7;
+    private static final int MAX_FUZZY_CANDIDATES = 2000;
+    private static final int MAX_FUZZY_VARIANTS = 8;
+
+    // In-memory segments are flushed once they hold this many books or there are
+    // this many of them, or this long after the first unflushed change
+    private static final int FLUSH_DOCS = 256;
+    private static final int FLUSH_SEGMENTS = 16;
+    private static final long FLUSH_DELAY_MS = 5_000;
+
+    // Most queued changes applied in one published view
+    private static final int MAX_BATCH = 256;
+
+    // Segments whose live doc counts fall in the same power of MERGE_FACTOR
+    // (in units of FLUSH_DOCS) are merged once MERGE_FACTOR of them exist
+    private static final int MERGE_FACTOR = 4;
+
+    // A segment is rewritten once this share of its docs is deleted
+    private static final double COMPACT_RATIO = 0.25;
+
+    private static final Path INDEX_PATH = dataDirectory().resolve("search-index");
+
+    // Created after the constants the constructor reads
+    private static final SearchIndex INSTANCE = new SearchIndex();
+
+    private final AtomicBoolean building = new AtomicBoolean(false);
+    private volatile boolean ready = false;
+
+    // Current view and columnar copy of its live books; replaced only by the
+    // writer thread
+    private volatile IndexView view = IndexView.EMPTY;
+    private volatile BookTable table = BookTable.EMPTY;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-index-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentLinkedQueue<Change> pending = new ConcurrentLinkedQueue<>();
+    // Changes applied since a fresh build started reading the catalog, by key,
+    // null for removals; applied again once the built contents replace the
+    // view. Only touched on the writer thread.
+    private Map<String, Book> sinceCatalogRead;
+    // Likewise for changes applied while the autocomplete and similar-books
+    // indexes rebuild from the view, applied to them again afterwards
+    private Map<String, Book> sinceSecondaryRead;
+    private final AtomicBoolean drainQueued = new AtomicBoolean(false);
+
+    // Segment writes, swaps and manifest commits hold the directory's monitor,
+    // so they never interleave
+    private final IndexDirectory directory = new IndexDirectory(INDEX_PATH);
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-index-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean persistent = false;
+
+    /**
+     * Queued change: a book to add or replace, or a key to remove
+     */
+    private static final class Change {
+        final String key;
+        final Book book;
+        // Run on the writer once the change is visible to queries, may be null
+        final Runnable onApplied;
+
+        Change(String key, Book book, Runnable onApplied) {
+            this.key = key;
+            this.book = book;
+            this.onApplied = onApplied;
+        }
+    }
+
+    private SearchIndex() {
+    }
+
+    public static SearchIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether the index has been built and can answer queries
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Columnar copy of the indexed books, for filtering
+     *
+     * @return The table for the latest applied changes; empty until the index is
+     *         built
+     */
+    public BookTable getTable() {
+        return table;
+    }
+
+    /**
+     * Open the index from disk, or build it from the full catalog if there is
+     * none, on a background thread unless it is already built or being built.
+     * An index opened from disk is ready at once and is then brought up to date
+     * with the catalog in the background.
+     */
+    public void ensureBuilt() {
+        if (ready || !building.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread buildThread = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                int opened = open();
+                if (opened >= 0) {
+                    LOGGER.info("Search index opened with " + opened + " books in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                    rebuildVocabulary();
+                    rebuildSecondaryIndexes();
+                    reconcile(BookDetailsCollection.getAllBooks());
+                } else {
+                    // Changes applied from here on may be missing from the read
+                    onWriter(() -> sinceCatalogRead = new LinkedHashMap<>());
+                    List<Book> catalog = BookDetailsCollection.getAllBooks();
+                    rebuild(catalog);
+                    LOGGER.info("Search index built for " + catalog.size() + " books in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error building search index", e);
+            } finally {
+                // Stop recording if the build failed before replacing the view
+                writer.execute(() -> sinceCatalogRead = null);
+                building.set(false);
+            }
+        }, "search-index-build");
+        buildThread.setDaemon(true);
+        buildThread.start();
+    }
+
+    /**
+     * Replace the index contents with the given books, written to disk as a
+     * single segment. If the index directory is not writable the index is kept
+     * in memory only. Changes applied since {@link #ensureBuilt()} started
+     * reading the catalog are applied again on top, as the books may predate
+     * them.
+     *
+     * @param books Full catalog
+     */
+    public void rebuild(Collection<Book> books) {
+        // Later copies of a key replace earlier ones, as if indexed in turn
+        Map<String, Book> byKey = new LinkedHashMap<>();
+        for (Book book : books) {
+            if (book != null && keyOf(book) != null) {
+                byKey.remove(keyOf(book));
+                byKey.put(keyOf(book), book);
+            }
+        }
+        List<Book> live = new ArrayList<>(byKey.values());
+
+        synchronized (directory) {
+            IndexSegment written = null;
+            try {
+                written = directory.write(live);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not write search index to disk, keeping it in memory", e);
+            }
+
+            Segment base = written != null ? written : MemorySegment.of(live);
+            onWriter(() -> {
+                view = view.edit().clear().add(base, new BitSet()).publish();
+                table = BookTable.of(live);
+                replaySinceCatalogRead();
+            });
+            persistent = written != null;
+            ready = true;
+
+            if (written != null) {
+                try {
+                    commit();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not record search index on disk", e);
+                }
+            }
+        }
+        rebuildVocabulary();
+        rebuildSecondaryIndexes();
+    }
+
+    /**
+     * Rebuild the autocomplete and similar-books indexes from the live books of
+     * the current view. Changes applied while they rebuild are recorded and
+     * applied to them again afterwards, since the rebuild would otherwise
+     * replace them with the books read before. Must not be called from the
+     * writer thread.
+     */
+    private void rebuildSecondaryIndexes() {
+        List<Book> live = new ArrayList<>();
+        onWriter(() -> {
+            live.addAll(liveDocuments());
+            sinceSecondaryRead = new LinkedHashMap<>();
+        });
+        try {
+            AutocompleteIndex.getInstance().rebuild(live);
+            SimilarBooksIndex.getInstance().rebuild(live);
+        } finally {
+            onWriter(() -> {
+                Map<String, Book> changes = sinceSecondaryRead;
+                sinceSecondaryRead = null;
+                changes.forEach(SearchIndex::updateSecondaryIndexes);
+            });
+        }
+    }
+
+    // Bring the autocomplete and similar-books indexes up to date with one
+    // book, null when it was removed
+    private static void updateSecondaryIndexes(String key, Book book) {
+        if (book != null) {
+            AutocompleteIndex.getInstance().update(book);
+            SimilarBooksIndex.getInstance().update(book);
+        } else {
+            AutocompleteIndex.getInstance().remove(key);
+            SimilarBooksIndex.getInstance().remove(key);
+        }
+    }
+
+    /**
+     * Add or replace a book in the index. The change is queued for the writer
+     * thread and visible to queries once it has been applied, usually within
+     * milliseconds.
+     *
+     * @param book The inserted or updated book
+     */
+    public void index(Book book) {
+        index(book, null);
+    }
+
+    /**
+     * Add or replace a book in the index, then run an action once queries see
+     * the change. Caches of query results should be invalidated from the
+     * action, since a query run before then still reads the old book.
+     *
+     * @param book      The inserted or updated book
+     * @param onApplied Run on the writer thread after the change is published,
+     *                  may be null
+     */
+    public void index(Book book, Runnable onApplied) {
+        String key = book != null ? keyOf(book) : null;
+        if (key != null) {
+            enqueue(new Change(key, book, onApplied));
+        } else if (onApplied != null) {
+            onApplied.run();
+        }
+    }
+
+    /**
+     * Remove a book from the index. Like {@link #index(Book)}, the change is
+     * applied asynchronously.
+     *
+     * @param bookKey Application ID (or MongoDB ID when it has none) of the book
+     */
+    public void remove(String bookKey) {
+        remove(bookKey, null);
+    }
+
+    /**
+     * Remove a book from the index, then run an action once queries no longer
+     * see it, see {@link #index(Book, Runnable)}
+     *
+     * @param bookKey   Application ID (or MongoDB ID when it has none) of the
+     *                  book
+     * @param onApplied Run on the writer thread after the removal is published,
+     *                  may be null
+     */
+    public void remove(String bookKey, Runnable onApplied) {
+        if (bookKey != null) {
+            enqueue(new Change(bookKey, null, onApplied));
+        } else if (onApplied != null) {
+            onApplied.run();
+        }
+    }
+
+    private void enqueue(Change change) {
+        pending.add(change);
+        if (drainQueued.compareAndSet(false, true)) {
+            writer.execute(this::applyPending);
+        }
+    }
+
+    /**
+     * Apply queued changes on the writer thread, publishing one view per batch.
+     * Within a batch only the last change of each book counts.
+     */
+    private void applyPending() {
+        drainQueued.set(false);
+        Map<String, Change> batch = new LinkedHashMap<>();
+        // Actions of superseded changes run too, as their writes happened
+        List<Runnable> applied = new ArrayList<>();
+        Change change;
+        while (batch.size() < MAX_BATCH && (change = pending.poll()) != null) {
+            batch.remove(change.key);
+            batch.put(change.key, change);
+            if (change.onApplied != null) {
+                applied.add(change.onApplied);
+            }
+        }
+        if (!pending.isEmpty() && drainQueued.compareAndSet(false, true)) {
+            writer.execute(this::applyPending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Book> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Change queued : batch.values()) {
+            if (queued.book != null) {
+                added.add(queued.book);
+            } else {
+                removed.add(queued.key);
+            }
+        }
+
+        try {
+            IndexView.Editor editor = view.edit();
+            for (String key : batch.keySet()) {
+                editor.delete(key);
+            }
+            if (!added.isEmpty()) {
+                MemorySegment segment = MemorySegment.of(added);
+                editor.add(segment, new BitSet()).addTerms(segment);
+            }
+            view = editor.publish();
+            table = table.with(added, removed);
+            if (sinceCatalogRead != null) {
+                for (Change queued : batch.values()) {
+                    sinceCatalogRead.remove(queued.key);
+                    sinceCatalogRead.put(queued.key, queued.book);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Error applying search index changes", e);
+            runApplied(applied);
+            return;
+        }
+        runApplied(applied);
+
+        for (Change queued : batch.values()) {
+            updateSecondaryIndexes(queued.key, queued.book);
+            if (sinceSecondaryRead != null) {
+                sinceSecondaryRead.remove(queued.key);
+                sinceSecondaryRead.put(queued.key, queued.book);
+            }
+        }
+        scheduleFlush(bufferFull(view));
+    }
+
+    /**
+     * Apply the changes recorded since the catalog was read to a view just
+     * rebuilt from it, and stop recording. Runs on the writer thread.
+     */
+    private void replaySinceCatalogRead() {
+        Map<String, Book> changes = sinceCatalogRead;
+        sinceCatalogRead = null;
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+
+        List<Book> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        IndexView.Editor editor = view.edit();
+        changes.forEach((key, book) -> {
+            editor.delete(key);
+            if (book != null) {
+                added.add(book);
+            } else {
+                removed.add(key);
+            }
+        });
+        if (!added.isEmpty()) {
+            MemorySegment segment = MemorySegment.of(added);
+            editor.add(segment, new BitSet()).addTerms(segment);
+        }
+        view = editor.publish();
+        table = table.with(added, removed);
+        LOGGER.info("Search index build caught up with " + changes.size() + " changes made meanwhile");
+        scheduleFlush(bufferFull(view));
+    }
+
+    private static void runApplied(List<Runnable> actions) {
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error after applying search index changes", e);
+            }
+        }
+    }
+
+    /**
+     * Derive a new view on the writer thread and publish it, waiting until it
+     * is. Must not be called from the writer thread.
+     */
+    private void applyOnWriter(Consumer<IndexView.Editor> edit) {
+        onWriter(() -> {
+            IndexView.Editor editor = view.edit();
+            edit.accept(editor);
+            view = editor.publish();
+        });
+    }
+
+    /**
+     * Run a task on the writer thread and wait for it. Must not be called from
+     * the writer thread.
+     */
+    private void onWriter(Runnable task) {
+        Future<?> applied = writer.submit(task);
+        try {
+            applied.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while updating the search index", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error updating the search index", e.getCause());
+        }
+    }
+
+    /**
+     * Search the catalog. Books matching more of the query terms rank first, then
+     * books matching more of them exactly rather than fuzzily, then by BM25 score.
+     * The last term also matches as a prefix so partially typed words still find
+     * results.
+     *
+     * @param query Free text query
+     * @param limit Maximum number of results
+     * @return Matching books, best first
+     */
+    public List<Book> search(String query, int limit) {
+        List<String> terms = TextAnalyzer.indexTerms(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        return topHits(collectHits(view, terms), limit);
+    }
+
+    /**
+     * Search the catalog for books that match only through a misspelling: at
+     * least one query term is found in them through a similar indexed term
+     * and not as typed. Ranked as in {@link #search(String, int)}.
+     *
+     * @param query Free text query
+     * @param limit Maximum number of results
+     * @return Books matching a query term only fuzzily, best first
+     */
+    public List<Book> searchTypos(String query, int limit) {
+        List<String> terms = TextAnalyzer.indexTerms(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        Hits hits = collectHits(view, terms);
+        for (int docId = 0; docId < hits.scores.length; docId++) {
+            if ((hits.matchedTerms[docId] & ~hits.exactTerms[docId]) == 0) {
+                hits.scores[docId] = 0;
+            }
+        }
+        return topHits(hits, limit);
+    }
+
+    /**
+     * Text match score of every book matching a query, for blending into other
+     * rankings. Scores lie in [0, 1]: half is the share of query terms matched
+     * (exact matches counting double), half the BM25 score relative to the best
+     * hit.
+     *
+     * @param query Free text query
+     * @return Scores by book key; books that do not match are absent
+     */
+    public Map<String, Double> textScores(String query) {
+        Map<String, Double> result = new HashMap<>();
+        List<String> terms = TextAnalyzer.indexTerms(query);
+        if (terms.isEmpty()) {
+            return result;
+        }
+
+        Hits hits = collectHits(view, terms);
+        double maxScore = 0;
+        for (double score : hits.scores) {
+            maxScore = Math.max(maxScore, score);
+        }
+        int termCount = Math.min(terms.size(), 32);
+        for (int docId = 0; docId < hits.scores.length; docId++) {
+            if (hits.scores[docId] <= 0) {
+                continue;
+            }
+            double coverage = (Integer.bitCount(hits.matchedTerms[docId])
+                    + Integer.bitCount(hits.exactTerms[docId])) / (2.0 * termCount);
+            result.put(hits.view.key(docId), 0.5 * coverage + 0.5 * hits.scores[docId] / maxScore);
+        }
+        return result;
+    }
+
+    // Score every live document of a view against the query terms
+    private Hits collectHits(IndexView snapshot, List<String> terms) {
+        Hits hits = new Hits(snapshot);
+
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            boolean last = i == terms.size() - 1;
+            int termBit = 1 << Math.min(i, 31);
+            boolean prefix = last && term.length() >= MIN_PREFIX_LENGTH;
+
+            for (SearchField field : SearchField.values()) {
+                if (prefix) {
+                    // Group each expansion's postings across segments so its
+                    // document frequency covers the whole index
+                    int segmentCount = snapshot.segmentCount();
+                    Map<String, PostingList[]> expansions = new TreeMap<>();
+                    for (int s = 0; s < segmentCount; s++) {
+                        for (Map.Entry<String, PostingList> entry : snapshot.segment(s).prefixPostings(field, term)) {
+                            expansions.computeIfAbsent(entry.getKey(),
+                                    t -> new PostingList[segmentCount])[s] = entry.getValue();
+                        }
+                    }
+                    for (Map.Entry<String, PostingList[]> entry : expansions.entrySet()) {
+                        double weight = entry.getKey().equals(term) ? 1.0 : PREFIX_WEIGHT;
+                        accumulate(field, entry.getValue(), weight, termBit, true, hits);
+                    }
+                } else {
+                    accumulate(field, termPostings(snapshot, field, term), 1.0, termBit, true, hits);
+                }
+            }
+
+            for (String variant : fuzzyVariants(snapshot, term, prefix)) {
+                for (SearchField field : SearchField.values()) {
+                    accumulate(field, termPostings(snapshot, field, variant), FUZZY_WEIGHT, termBit, false, hits);
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Upper bound on the number of books whose given fields contain every word
+     * of a text, from index statistics alone. Words count as prefixes, as in
+     * the database's substring matching, and deleted docs are not subtracted.
+     *
+     * @param text   Text to estimate for
+     * @param fields Fields the text may occur in
+     * @return Estimated number of books, or -1 if the index is not ready
+     */
+    public int estimateMatches(String text, Set<SearchField> fields) {
+        if (!ready) {
+            return -1;
+        }
+        List<String> terms = TextAnalyzer.indexTerms(text);
+
+        IndexView snapshot = view;
+        int estimate = snapshot.liveDocs();
+        for (String term : terms) {
+            long docFreq = 0;
+            for (Segment segment : snapshot.segments()) {
+                for (SearchField field : fields) {
+                    for (Map.Entry<String, PostingList> entry : segment.prefixPostings(field, term)) {
+                        docFreq += entry.getValue().docCount();
+                    }
+                }
+            }
+            estimate = (int) Math.min(estimate, docFreq);
+        }
+        return estimate;
+    }
+
+    private static PostingList[] termPostings(IndexView snapshot, SearchField field, String term) {
+        PostingList[] lists = new PostingList[snapshot.segmentCount()];
+        for (int s = 0; s < lists.length; s++) {
+            lists[s] = snapshot.segment(s).postings(field, term);
+        }
+        return lists;
+    }
+
+    /**
+     * Look up an indexed book by its key
+     *
+     * @param bookKey Application ID (or MongoDB ID when it has none) of the book
+     * @return The indexed book, or null if it is not in the index
+     */
+    public Book getBook(String bookKey) {
+        return view.find(bookKey);
+    }
+
+    /**
+     * Key a book is indexed under: its application ID, or its MongoDB ID if it has
+     * none
+     */
+    public static String keyOf(Book book) {
+        if (book.getId() != null && !book.getId().isEmpty()) {
+            return book.getId();
+        }
+        return book.get_id();
+    }
+
+    /**
+     * Index terms within a small edit distance of a query term. Variants the
+     * prefix expansion already covers are left out.
+     */
+    private static List<String> fuzzyVariants(IndexView snapshot, String term, boolean prefix) {
+        List<String> variants = new ArrayList<>();
+        if (term.length() < MIN_FUZZY_LENGTH) {
+            return variants;
+        }
+
+        int maxDistance = term.length() >= TWO_EDIT_LENGTH ? 2 : 1;
+        for (String variant : snapshot.similarTerms(term, maxDistance, MAX_FUZZY_CANDIDATES)) {
+            if (prefix && variant.startsWith(term)) {
+                continue;
+            }
+            variants.add(variant);
+            if (variants.size() == MAX_FUZZY_VARIANTS) {
+                break;
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * Add the BM25 contribution of one term in one field
+     *
+     * @param lists Postings of the term per segment, null where it does not occur
+     */
+    private static void accumulate(SearchField field, PostingList[] lists, double weight, int termBit,
+            boolean exact, Hits hits) {
+        int docFreq = 0;
+        for (PostingList list : lists) {
+            docFreq += list != null ? list.docCount() : 0;
+        }
+        if (docFreq == 0) {
+            return;
+        }
+
+        // Postings still list deleted docs, so the count can exceed the live docs
+        IndexView snapshot = hits.view;
+        int docCount = Math.max(1, snapshot.liveDocs());
+        docFreq = Math.min(docFreq, docCount);
+        double idf = Math.log(1 + Math.max(0, docCount - docFreq + 0.5) / (docFreq + 0.5));
+        double avgLength = Math.max(1.0, (double) snapshot.totalFieldLength(field) / docCount);
+        double fieldWeight = field.getBoost() * idf * weight;
+
+        for (int s = 0; s < lists.length; s++) {
+            if (lists[s] == null) {
+                continue;
+            }
+            Segment segment = snapshot.segment(s);
+            BitSet deleted = snapshot.deletedDocs(s);
+            int base = snapshot.base(s);
+            PostingList.Cursor cursor = lists[s].cursor();
+            while (cursor.next()) {
+                int localId = cursor.docId();
+                if (deleted.get(localId)) {
+                    continue;
+                }
+                int tf = cursor.freq();
+                int length = segment.fieldLength(localId, field);
+                double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+                int docId = base + localId;
+                hits.scores[docId] += fieldWeight * norm;
+                hits.matchedTerms[docId] |= termBit;
+                if (exact) {
+                    hits.exactTerms[docId] |= termBit;
+                }
+            }
+        }
+    }
+
+    private List<Book> topHits(Hits hits, int limit) {
+        // Min-heap on (terms matched, terms matched exactly, score) keeps only the
+        // best `limit` hits
+        PriorityQueue<Integer> heap = new PriorityQueue<>(hits::compare);
+        for (int docId = 0; docId < hits.scores.length; docId++) {
+            if (hits.scores[docId] <= 0) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(docId);
+            } else if (hits.compare(docId, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(docId);
+            }
+        }
+
+        List<Book> results = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            results.add(hits.view.document(heap.poll()));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Per-document accumulators for one query, indexed by the view's global doc
+     * ids
+     */
+    private static final class Hits {
+        final IndexView view;
+        final double[] scores;
+        final int[] matchedTerms;
+        final int[] exactTerms;
+
+        Hits(IndexView view) {
+            this.view = view;
+            scores = new double[view.docCount()];
+            matchedTerms = new int[view.docCount()];
+            exactTerms = new int[view.docCount()];
+        }
+
+        int compare(int a, int b) {
+            int byTerms = Integer.compare(Integer.bitCount(matchedTerms[a]), Integer.bitCount(matchedTerms[b]));
+            if (byTerms != 0) {
+                return byTerms;
+            }
+            int byExact = Integer.compare(Integer.bitCount(exactTerms[a]), Integer.bitCount(exactTerms[b]));
+            return byExact != 0 ? byExact : Double.compare(scores[a], scores[b]);
+        }
+    }
+
+    /**
+     * Per-user directory for the application's local data, so the index is
+     * found again whatever directory the application is started from:
+     * %LOCALAPPDATA% on Windows, ~/Library/Application Support on macOS and
+     * $XDG_DATA_HOME (by default ~/.local/share) elsewhere
+     */
+    private static Path dataDirectory() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        Path home = Paths.get(System.getProperty("user.home"));
+        Path base;
+        if (os.startsWith("windows")) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            base = localAppData != null && !localAppData.isEmpty() ? Paths.get(localAppData)
+                    : home.resolve("AppData").resolve("Local");
+        } else if (os.startsWith("mac")) {
+            base = home.resolve("Library").resolve("Application Support");
+        } else {
+            String xdgDataHome = System.getenv("XDG_DATA_HOME");
+            base = xdgDataHome != null && !xdgDataHome.isEmpty() ? Paths.get(xdgDataHome)
+                    : home.resolve(".local").resolve("share");
+        }
+        return base.resolve("GyanTori");
+    }
+
+    /**
+     * Open the index recorded on disk
+     *
+     * @return Number of live books, or -1 if there is no usable index on disk
+     */
+    private int open() {
+        Map<IndexSegment, BitSet> loaded;
+        try {
+            loaded = directory.load();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Search index on disk is unreadable, rebuilding it", e);
+            return -1;
+        }
+        if (loaded.isEmpty()) {
+            return -1;
+        }
+
+        onWriter(() -> {
+            IndexView.Editor editor = view.edit().clear();
+            loaded.forEach(editor::add);
+            view = editor.publish();
+            table = BookTable.of(liveDocuments());
+        });
+        persistent = true;
+        ready = true;
+        return view.liveDocs();
+    }
+
+    /**
+     * Bring an index opened from disk up to date with the catalog: books added
+     * or changed while the application was closed are re-indexed and books no
+     * longer in the catalog are removed.
+     */
+    private void reconcile(List<Book> catalog) {
+        Set<String> current = new HashSet<>();
+        int changed = 0;
+        for (Book book : catalog) {
+            String key = book != null ? keyOf(book) : null;
+            if (key == null) {
+                continue;
+            }
+            current.add(key);
+            if (!sameStoredBook(book, getBook(key))) {
+                index(book);
+                changed++;
+            }
+        }
+
+        List<String> stale = new ArrayList<>();
+        IndexView snapshot = view;
+        for (int s = 0; s < snapshot.segmentCount(); s++) {
+            Segment segment = snapshot.segment(s);
+            for (int docId = 0; docId < segment.docCount(); docId++) {
+                if (!snapshot.isDeleted(s, docId) && !current.contains(segment.key(docId))) {
+                    stale.add(segment.key(docId));
+                }
+            }
+        }
+        stale.forEach(this::remove);
+
+        if (changed > 0 || !stale.isEmpty()) {
+            LOGGER.info("Search index catching up with the catalog: " + changed + " books to update, "
+                    + stale.size() + " to remove");
+        }
+    }
+
+    // Book.equals leaves out purchases, reviews and a few other fields the index
+    // stores and ranks by
+    private static boolean sameStoredBook(Book fresh, Book stored) {
+        return fresh.equals(stored)
+                && fresh.getTotalPurchases() == stored.getTotalPurchases()
+                && fresh.isFeatured() == stored.isFeatured()
+                && Objects.equals(fresh.getBookHubId(), stored.getBookHubId())
+                && Objects.equals(fresh.getBuyerReviews(), stored.getBuyerReviews());
+    }
+
+    private List<Book> liveDocuments() {
+        IndexView snapshot = view;
+        List<Book> live = new ArrayList<>(snapshot.liveDocs());
+        for (int s = 0; s < snapshot.segmentCount(); s++) {
+            live.addAll(snapshot.liveDocuments(s));
+        }
+        return live;
+    }
+
+    /**
+     * Rebuild the fuzzy matching vocabulary from the segments of the current
+     * view. Segments added meanwhile are folded in on the writer thread before
+     * the new vocabulary is published.
+     */
+    private void rebuildVocabulary() {
+        List<Segment> snapshot = view.segments();
+        TrigramIndex rebuilt = new TrigramIndex();
+        for (Segment segment : snapshot) {
+            segment.forEachTerm(rebuilt::add);
+        }
+
+        Set<Segment> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.addAll(snapshot);
+        applyOnWriter(editor -> {
+            for (Segment segment : view.segments()) {
+                if (!seen.contains(segment)) {
+                    segment.forEachTerm(rebuilt::add);
+                }
+            }
+            editor.setVocabulary(rebuilt);
+        });
+    }
+
+    // In-memory segments are flushed early once there are many of them, as each
+    // adds a lookup per query term
+    private static boolean bufferFull(IndexView snapshot) {
+        int docs = 0;
+        int count = 0;
+        for (Segment segment : snapshot.segments()) {
+            if (segment instanceof MemorySegment) {
+                docs += segment.docCount();
+                count++;
+            }
+        }
+        return docs >= FLUSH_DOCS || count >= FLUSH_SEGMENTS;
+    }
+
+    /**
+     * Queue a flush of the in-memory segments
+     *
+     * @param now Flush as soon as possible rather than after the idle delay
+     */
+    private void scheduleFlush(boolean now) {
+        if (now) {
+            if (flushQueued.compareAndSet(false, true)) {
+                maintenance.execute(() -> {
+                    flushQueued.set(false);
+                    flush();
+                });
+            }
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            maintenance.schedule(() -> {
+                flushScheduled.set(false);
+                flush();
+            }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write the in-memory segments to one new segment file and record deletions
+     * on disk, then merge segments if needed. Queries keep reading the in-memory
+     * segments until the written one is swapped in. Without a writable index
+     * directory the in-memory segments are merged among themselves instead.
+     */
+    private void flush() {
+        try {
+            if (persistent) {
+                synchronized (directory) {
+                    IndexView snapshot = view;
+                    List<Segment> buffers = new ArrayList<>();
+                    List<BitSet> deletedAtWrite = new ArrayList<>();
+                    List<Book> docs = new ArrayList<>();
+                    for (int s = 0; s < snapshot.segmentCount(); s++) {
+                        if (snapshot.segment(s) instanceof MemorySegment) {
+                            buffers.add(snapshot.segment(s));
+                            deletedAtWrite.add(snapshot.deletedDocs(s));
+                            docs.addAll(snapshot.liveDocuments(s));
+                        }
+                    }
+
+                    if (!buffers.isEmpty()) {
+                        IndexSegment written = docs.isEmpty() ? null : directory.write(docs);
+                        applyOnWriter(editor -> editor.replace(buffers, deletedAtWrite, written));
+                    }
+                    commit();
+                }
+            }
+            mergeIfNeeded();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error flushing search index", e);
+        }
+    }
+
+    private void mergeIfNeeded() throws IOException {
+        List<Segment> sources = selectMerge();
+        while (!sources.isEmpty()) {
+            merge(sources);
+            sources = selectMerge();
+        }
+    }
+
+    /**
+     * Pick segments to merge: a segment with too many deleted docs on its own,
+     * else MERGE_FACTOR segments of similar size. Only segment files are merged,
+     * or only in-memory segments when the index is kept in memory.
+     */
+    private List<Segment> selectMerge() {
+        IndexView snapshot = view;
+        Map<Integer, List<Segment>> levels = new TreeMap<>();
+        for (int s = 0; s < snapshot.segmentCount(); s++) {
+            Segment segment = snapshot.segment(s);
+            if (segment instanceof IndexSegment != persistent) {
+                continue;
+            }
+            int deleted = segment.docCount() - snapshot.liveDocCount(s);
+            if (deleted > 0 && deleted >= segment.docCount() * COMPACT_RATIO) {
+                return List.of(segment);
+            }
+            List<Segment> level = levels.computeIfAbsent(level(snapshot.liveDocCount(s)), l -> new ArrayList<>());
+            level.add(segment);
+            if (level.size() == MERGE_FACTOR) {
+                return level;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static int level(int docCount) {
+        int level = 0;
+        for (long size = FLUSH_DOCS; docCount > size; size *= MERGE_FACTOR) {
+            level++;
+        }
+        return level;
+    }
+
+    private void merge(List<Segment> sources) throws IOException {
+        long start = System.nanoTime();
+        synchronized (directory) {
+            // Segments never change, so the snapshot's deletions are read and
+            // the stored fields decoded without holding up queries or updates
+            IndexView snapshot = view;
+            List<BitSet> deletedAtWrite = new ArrayList<>(sources.size());
+            List<Book> docs = new ArrayList<>();
+            for (Segment source : sources) {
+                int s = snapshot.segments().indexOf(source);
+                if (s < 0) {
+                    return;
+                }
+                deletedAtWrite.add(snapshot.deletedDocs(s));
+                docs.addAll(snapshot.liveDocuments(s));
+            }
+
+            Segment merged = docs.isEmpty() ? null : persistent ? directory.write(docs) : MemorySegment.of(docs);
+            applyOnWriter(editor -> editor.replace(sources, deletedAtWrite, merged));
+            if (persistent) {
+                commit();
+            }
+        }
+        LOGGER.fine("Merged " + sources.size() + " search index segments in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Record the written segments of the current view and their deletions;
+    // caller holds the directory's monitor
+    private void commit() throws IOException {
+        IndexView snapshot = view;
+        Map<IndexSegment, BitSet> written = new LinkedHashMap<>();
+        for (int s = 0; s < snapshot.segmentCount(); s++) {
+            if (snapshot.segment(s) instanceof IndexSegment) {
+                written.put((IndexSegment) snapshot.segment(s), snapshot.deletedDocs(s));
+            }
+        }
+        directory.commit(written);
+    }
+}
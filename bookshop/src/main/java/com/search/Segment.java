@@ -0,0 +1,60 @@
+package com.search;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.models.Book;
+
+/**
+ * One part of the search index: either an in-memory segment of recent changes
+ * or a segment file. Doc ids are local to the segment.
+ *
+ * A segment never changes once it is part of an {@link IndexView}, so any
+ * number of threads may read it. Deleted docs are tracked by the view.
+ */
+interface Segment {
+
+    /**
+     * Number of doc ids in the segment, deleted ones included
+     */
+    int docCount();
+
+    /**
+     * Postings for an exact term, or null if the term does not occur
+     */
+    PostingList postings(SearchField field, String term);
+
+    /**
+     * Postings of every term starting with the prefix, in term order
+     */
+    List<Map.Entry<String, PostingList>> prefixPostings(SearchField field, String prefix);
+
+    /**
+     * Number of terms a document has in a field
+     */
+    int fieldLength(int docId, SearchField field);
+
+    /**
+     * Sum of the field lengths of all documents, deleted ones included
+     */
+    long totalFieldLength(SearchField field);
+
+    Book document(int docId);
+
+    /**
+     * Key of a document, see {@link SearchIndex#keyOf(Book)}
+     */
+    String key(int docId);
+
+    /**
+     * Doc id of the book with the given key, or -1. The doc may be deleted in
+     * the view.
+     */
+    int find(String bookKey);
+
+    /**
+     * Visit every distinct term of every field
+     */
+    void forEachTerm(Consumer<String> action);
+}
@@ -0,0 +1,395 @@
+package com.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.database.UsersCollection;
+import com.models.Book;
+
+/**
+ * "More like this" recommendations. Each book is a sparse feature vector of
+ * its author, categories, publisher, language and the users who borrowed or
+ * reviewed it; two books are as similar as the cosine of their vectors, with
+ * each feature weighted by its kind and by how rare it is.
+ *
+ * Candidates come from an inverted index from feature to books, read rarest
+ * feature first and capped, so a lookup costs the same however large the
+ * catalog. Each book's top matches are precomputed on a background thread and
+ * recomputed only for the books a catalog change or a new borrow affects.
+ */
+public class SimilarBooksIndex {
+    private static final Logger LOGGER = Logger.getLogger(SimilarBooksIndex.class.getName());
+    private static final SimilarBooksIndex INSTANCE = new SimilarBooksIndex();
+
+    public static final int DEFAULT_LIMIT = 12;
+
+    // A shared author says more than a shared language
+    private static final double AUTHOR_WEIGHT = 4.0;
+    private static final double CATEGORY_WEIGHT = 3.0;
+    private static final double BORROWER_WEIGHT = 2.0;
+    private static final double PUBLISHER_WEIGHT = 1.5;
+    private static final double LANGUAGE_WEIGHT = 0.5;
+
+    // Features shared by more books than this do not add candidates unless no
+    // rarer feature found any; at most MAX_CANDIDATES books are scored
+    private static final int MAX_POSTING_SCAN = 2000;
+    private static final int MAX_CANDIDATES = 1000;
+
+    // A change marks for recomputation the books sharing one of its features
+    // with at most this many books: a shared author or borrower reorders a
+    // list, one more book in a big category hardly does
+    private static final int MAX_NEIGHBOURS = 64;
+
+    // Precomputation yields the lock between batches so lookups are not held up
+    private static final int REFRESH_BATCH = 32;
+
+    private final Map<String, Map<String, Double>> featuresByBook = new HashMap<>();
+    private final Map<String, Set<String>> booksByFeature = new HashMap<>();
+    private final Map<String, Set<String>> borrowersByBook = new HashMap<>();
+    private final Set<String> stale = new LinkedHashSet<>();
+    private final Map<String, List<String>> precomputed = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+
+    private SimilarBooksIndex() {
+    }
+
+    public static SimilarBooksIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Replace the index contents and precompute every book's matches in the
+     * background. Borrow histories are read from the users collection.
+     *
+     * @param books Full catalog
+     */
+    public void rebuild(Collection<Book> books) {
+        Map<String, Set<String>> borrowers = new HashMap<>();
+        try {
+            for (Map.Entry<String, List<String>> entry : UsersCollection.getBorrowHistories().entrySet()) {
+                for (String bookKey : entry.getValue()) {
+                    borrowers.computeIfAbsent(bookKey, k -> new HashSet<>()).add(entry.getKey());
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not read borrow histories, recommending without them", e);
+        }
+
+        synchronized (this) {
+            featuresByBook.clear();
+            booksByFeature.clear();
+            borrowersByBook.clear();
+            borrowersByBook.putAll(borrowers);
+            precomputed.clear();
+            stale.clear();
+            for (Book book : books) {
+                String key = book != null ? SearchIndex.keyOf(book) : null;
+                if (key != null) {
+                    setFeatures(key, features(book));
+                    stale.add(key);
+                }
+            }
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Add or replace a book
+     *
+     * @param book The inserted or updated book
+     */
+    public void update(Book book) {
+        String key = book != null ? SearchIndex.keyOf(book) : null;
+        if (key == null) {
+            return;
+        }
+        synchronized (this) {
+            markNeighboursStale(key);
+            setFeatures(key, features(book));
+            markNeighboursStale(key);
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Remove a book
+     *
+     * @param bookKey Application ID (or MongoDB ID when it has none) of the book
+     */
+    public void remove(String bookKey) {
+        synchronized (this) {
+            markNeighboursStale(bookKey);
+            setFeatures(bookKey, Collections.emptyMap());
+            featuresByBook.remove(bookKey);
+            borrowersByBook.remove(bookKey);
+            precomputed.remove(bookKey);
+            stale.remove(bookKey);
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Record that a user borrowed books, linking them to everything else the user
+     * borrowed
+     *
+     * @param userId   The borrower
+     * @param bookKeys Keys of the borrowed books
+     */
+    public void recordBorrows(String userId, List<String> bookKeys) {
+        String feature = featureKey("u:", userId);
+        if (feature == null) {
+            return;
+        }
+        synchronized (this) {
+            for (String key : bookKeys) {
+                borrowersByBook.computeIfAbsent(key, k -> new HashSet<>()).add(userId);
+                Map<String, Double> features = featuresByBook.get(key);
+                if (features != null && !features.containsKey(feature)) {
+                    Map<String, Double> updated = new HashMap<>(features);
+                    updated.put(feature, BORROWER_WEIGHT);
+                    setFeatures(key, updated);
+                    markNeighboursStale(key);
+                }
+            }
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Books most similar to a book, best first. Precomputed matches are returned
+     * at once; otherwise they are computed now, which is bounded by the
+     * candidate cap.
+     *
+     * @param bookKey Application ID (or MongoDB ID when it has none) of the book
+     * @param limit   Maximum number of books
+     * @return Similar books, empty if the book is not indexed
+     */
+    public List<Book> similarTo(String bookKey, int limit) {
+        List<String> keys = precomputed.get(bookKey);
+        if (keys == null) {
+            synchronized (this) {
+                keys = compute(bookKey);
+                precomputed.put(bookKey, keys);
+                stale.remove(bookKey);
+            }
+        }
+
+        List<Book> books = new ArrayList<>(Math.min(limit, keys.size()));
+        SearchIndex index = SearchIndex.getInstance();
+        for (String key : keys) {
+            Book book = index.getBook(key);
+            if (book != null) {
+                books.add(book);
+                if (books.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return books;
+    }
+
+    private static Map<String, Double> features(Book book) {
+        Map<String, Double> features = new HashMap<>();
+        addFeature(features, "a:", book.getAuthor(), AUTHOR_WEIGHT);
+        addFeature(features, "p:", book.getPublisher(), PUBLISHER_WEIGHT);
+        addFeature(features, "l:", book.getLanguage(), LANGUAGE_WEIGHT);
+        if (book.getCategories() != null) {
+            for (String category : book.getCategories()) {
+                addFeature(features, "c:", category, CATEGORY_WEIGHT);
+            }
+        }
+        addFeature(features, "u:", book.getHolderId(), BORROWER_WEIGHT);
+        for (Book.Review review : book.getBuyerReviews()) {
+            addFeature(features, "u:", review.getReviewerId(), BORROWER_WEIGHT);
+        }
+        return features;
+    }
+
+    private static void addFeature(Map<String, Double> features, String kind, String value, double weight) {
+        String feature = featureKey(kind, value);
+        if (feature != null) {
+            features.put(feature, weight);
+        }
+    }
+
+    private static String featureKey(String kind, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return kind + value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Caller holds the monitor. Borrowers recorded in user histories are merged
+    // into the book's own features.
+    private void setFeatures(String key, Map<String, Double> features) {
+        Map<String, Double> merged = new HashMap<>(features);
+        if (!features.isEmpty()) {
+            for (String userId : borrowersByBook.getOrDefault(key, Collections.emptySet())) {
+                addFeature(merged, "u:", userId, BORROWER_WEIGHT);
+            }
+        }
+
+        Map<String, Double> previous = featuresByBook.put(key, merged);
+        if (previous != null) {
+            for (String feature : previous.keySet()) {
+                Set<String> books = booksByFeature.get(feature);
+                if (books != null && books.remove(key) && books.isEmpty()) {
+                    booksByFeature.remove(feature);
+                }
+            }
+        }
+        for (String feature : merged.keySet()) {
+            booksByFeature.computeIfAbsent(feature, f -> new HashSet<>()).add(key);
+        }
+    }
+
+    // A change can only affect books sharing a feature with the book
+    private void markNeighboursStale(String key) {
+        stale.add(key);
+        for (String feature : featuresByBook.getOrDefault(key, Collections.emptyMap()).keySet()) {
+            Set<String> books = booksByFeature.get(feature);
+            if (books != null && books.size() <= MAX_NEIGHBOURS) {
+                stale.addAll(books);
+            }
+        }
+    }
+
+    // Caller holds the monitor
+    private List<String> compute(String key) {
+        Map<String, Double> features = featuresByBook.get(key);
+        if (features == null || features.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> byRarity = new ArrayList<>(features.keySet());
+        byRarity.sort(Comparator.comparingInt(feature -> booksByFeature.get(feature).size()));
+
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String feature : byRarity) {
+            Set<String> books = booksByFeature.get(feature);
+            if (books.size() > MAX_POSTING_SCAN && !candidates.isEmpty()) {
+                break;
+            }
+            Iterator<String> it = books.iterator();
+            while (it.hasNext() && candidates.size() < MAX_CANDIDATES) {
+                candidates.add(it.next());
+            }
+            if (candidates.size() >= MAX_CANDIDATES) {
+                break;
+            }
+        }
+        candidates.remove(key);
+
+        // Workers only read the maps, which cannot change while the caller
+        // holds the monitor
+        String[] scored = candidates.toArray(new String[0]);
+        double[] similarities = new double[scored.length];
+        double norm = norm(features);
+        CatalogExecutor.forEach(CatalogExecutor.Operation.SCORE, scored.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Map<String, Double> other = featuresByBook.get(scored[i]);
+                double dot = 0;
+                for (Map.Entry<String, Double> feature : features.entrySet()) {
+                    Double weight = other.get(feature.getKey());
+                    if (weight != null) {
+                        double idf = idf(feature.getKey());
+                        dot += feature.getValue() * weight * idf * idf;
+                    }
+                }
+                similarities[i] = dot / (norm * norm(other));
+            }
+        });
+
+        PriorityQueue<Map.Entry<String, Double>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (int i = 0; i < scored.length; i++) {
+            String candidate = scored[i];
+            double similarity = similarities[i];
+            if (top.size() < DEFAULT_LIMIT) {
+                top.add(Map.entry(candidate, similarity));
+            } else if (similarity > top.peek().getValue()) {
+                top.poll();
+                top.add(Map.entry(candidate, similarity));
+            }
+        }
+
+        List<String> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(top.poll().getKey());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private double norm(Map<String, Double> features) {
+        double sum = 0;
+        for (Map.Entry<String, Double> feature : features.entrySet()) {
+            double weight = feature.getValue() * idf(feature.getKey());
+            sum += weight * weight;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private double idf(String feature) {
+        Set<String> books = booksByFeature.get(feature);
+        int docFreq = books != null ? books.size() : 0;
+        return Math.log(1 + (double) featuresByBook.size() / (1 + docFreq));
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread refreshThread = new Thread(() -> {
+            try {
+                long start = System.nanoTime();
+                int refreshed = 0;
+                while (true) {
+                    synchronized (this) {
+                        if (stale.isEmpty()) {
+                            break;
+                        }
+                        Iterator<String> it = stale.iterator();
+                        for (int i = 0; i < REFRESH_BATCH && it.hasNext(); i++) {
+                            String key = it.next();
+                            it.remove();
+                            if (featuresByBook.containsKey(key)) {
+                                precomputed.put(key, compute(key));
+                                refreshed++;
+                            }
+                        }
+                    }
+                }
+                LOGGER.fine("Similar books refreshed for " + refreshed + " books in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error precomputing similar books", e);
+            } finally {
+                refreshScheduled.set(false);
+                synchronized (this) {
+                    if (!stale.isEmpty()) {
+                        scheduleRefresh();
+                    }
+                }
+            }
+        }, "similar-books-refresh");
+        refreshThread.setPriority(Thread.MIN_PRIORITY);
+        refreshThread.setDaemon(true);
+        refreshThread.start();
+    }
+}
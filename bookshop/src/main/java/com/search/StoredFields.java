@@ -0,0 +1,183 @@
+package com.search;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.models.Book;
+import com.models.Book.Review;
+
+/**
+ * Binary encoding of a whole book for a segment file's stored fields, so
+ * search hits can be shown without going back to the database.
+ */
+final class StoredFields {
+    private static final int NULL_LENGTH = -1;
+
+    private StoredFields() {
+    }
+
+    static void write(DataOutput out, Book book) throws IOException {
+        writeString(out, book.get_id());
+        writeString(out, book.getId());
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        writeString(out, book.getPublisher());
+        writeString(out, book.getPublicationDate());
+        writeString(out, book.getLanguage());
+        out.writeInt(book.getPages());
+        writeString(out, book.getIsbn());
+
+        String[] categories = book.getCategories();
+        out.writeInt(categories != null ? categories.length : NULL_LENGTH);
+        if (categories != null) {
+            for (String category : categories) {
+                writeString(out, category);
+            }
+        }
+
+        writeString(out, book.getDescription());
+        writeString(out, book.getImageUrl());
+        writeString(out, book.getBookHubId());
+        out.writeDouble(book.getOriginalPrice());
+        out.writeDouble(book.getCurrentPrice());
+        out.writeDouble(book.getDiscount());
+        writeString(out, book.getSellerId());
+        writeString(out, book.getUploadDate());
+        out.writeInt(book.getTotalPurchases());
+        writeString(out, book.getHolderId());
+        writeString(out, book.getBorrowDate());
+        writeString(out, book.getReturnDate());
+        out.writeBoolean(book.isFeatured());
+
+        List<Review> reviews = book.getBuyerReviews();
+        out.writeInt(reviews.size());
+        for (Review review : reviews) {
+            writeString(out, review.getReviewerId());
+            writeString(out, review.getComment());
+            out.writeDouble(review.getRating());
+            writeString(out, review.getReviewDate() != null ? review.getReviewDate().toString() : null);
+        }
+
+        // Written last: setting reviews recalculates these
+        out.writeDouble(book.getRating());
+        out.writeInt(book.getReviewCount());
+    }
+
+    /**
+     * Decode a book written by {@link #write}
+     *
+     * @param buffer Segment buffer, read from the given position on
+     * @param offset Position of the encoded book
+     */
+    static Book read(ByteBuffer buffer, int offset) {
+        Reader in = new Reader(buffer, offset);
+        Book book = new Book();
+        book.set_id(in.string());
+        book.setId(in.string());
+        book.setTitle(in.string());
+        book.setAuthor(in.string());
+        book.setPublisher(in.string());
+        book.setPublicationDate(in.string());
+        book.setLanguage(in.string());
+        book.setPages(in.integer());
+        book.setIsbn(in.string());
+
+        int categoryCount = in.integer();
+        if (categoryCount != NULL_LENGTH) {
+            String[] categories = new String[categoryCount];
+            for (int i = 0; i < categoryCount; i++) {
+                categories[i] = in.string();
+            }
+            book.setCategories(categories);
+        }
+
+        book.setDescription(in.string());
+        book.setImageUrl(in.string());
+        book.setBookHubId(in.string());
+        book.setOriginalPrice(in.decimal());
+        book.setCurrentPrice(in.decimal());
+        book.setDiscount(in.decimal());
+        book.setSellerId(in.string());
+        book.setUploadDate(in.string());
+        book.setTotalPurchases(in.integer());
+        book.setHolderId(in.string());
+        book.setBorrowDate(in.string());
+        book.setReturnDate(in.string());
+        book.setFeatured(in.bool());
+
+        int reviewCount = in.integer();
+        List<Review> reviews = new ArrayList<>(reviewCount);
+        for (int i = 0; i < reviewCount; i++) {
+            Review review = new Review();
+            review.setReviewerId(in.string());
+            review.setComment(in.string());
+            review.setRating(in.decimal());
+            String date = in.string();
+            review.setReviewDate(date != null ? LocalDate.parse(date) : null);
+            reviews.add(review);
+        }
+        book.setBuyerReviews(reviews);
+
+        book.setRating(in.decimal());
+        book.setReviewCount(in.integer());
+        return book;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Sequential reader using absolute gets, so the shared buffer's position is
+     * never touched and concurrent readers are safe
+     */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private int position;
+
+        Reader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        String string() {
+            int length = integer();
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(position + i);
+            }
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int integer() {
+            int value = buffer.getInt(position);
+            position += Integer.BYTES;
+            return value;
+        }
+
+        double decimal() {
+            double value = buffer.getDouble(position);
+            position += Double.BYTES;
+            return value;
+        }
+
+        boolean bool() {
+            return buffer.get(position++) != 0;
+        }
+    }
+}
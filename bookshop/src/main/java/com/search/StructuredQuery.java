@@ -0,0 +1,362 @@
+package com.search;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Search box query with optional field clauses, e.g.
+ * {@code author:humayun category:novel price<500 rating>=4 lang:bn}.
+ *
+ * Supported clauses, field names being case-insensitive:
+ * <ul>
+ * <li>{@code author:}, {@code by:}, {@code category:}, {@code cat:},
+ * {@code genre:}, {@code publisher:}, {@code pub:} with a word or a quoted
+ * phrase</li>
+ * <li>{@code lang:} with a language name or code ({@code bn}, {@code en},
+ * ...)</li>
+ * <li>{@code price} and {@code rating} with {@code : = < <= > >=} or a range
+ * {@code price:100..500}</li>
+ * <li>{@code year} and {@code date} likewise, with a year or a yyyy-MM-dd
+ * date</li>
+ * <li>{@code is:available}, {@code is:discounted}, {@code is:featured}</li>
+ * <li>{@code sort:price}, {@code sort:-rating} (descending), {@code sort:title},
+ * {@code sort:author}, {@code sort:date}, {@code sort:relevance}</li>
+ * <li>{@code title:} and {@code isbn:} add their value to the free text</li>
+ * </ul>
+ * Everything else, including clauses with unknown fields or unreadable values,
+ * is free text. Clauses compile to the filter parameters
+ * {@code ExploreDB.getFilteredBooks} takes; the free text becomes its
+ * {@code searchTerm}.
+ */
+public final class StructuredQuery {
+    private static final Pattern CLAUSE = Pattern.compile("([A-Za-z]+)(<=|>=|:|=|<|>)(.*)", Pattern.DOTALL);
+    private static final Pattern RANGE = Pattern.compile("(.*?)\\.\\.(.*)");
+    private static final Pattern YEAR = Pattern.compile("\\d{4}");
+
+    private static final Map<String, String> TEXT_FIELDS = Map.of("author", "author", "by", "author",
+            "category", "category", "cat", "category", "genre", "category", "publisher", "publisher", "pub",
+            "publisher");
+
+    private static final Map<String, String> LANGUAGES = Map.ofEntries(Map.entry("en", "English"),
+            Map.entry("bn", "Bengali"), Map.entry("bangla", "Bengali"), Map.entry("hi", "Hindi"),
+            Map.entry("ur", "Urdu"), Map.entry("ar", "Arabic"), Map.entry("es", "Spanish"),
+            Map.entry("fr", "French"), Map.entry("de", "German"), Map.entry("ja", "Japanese"),
+            Map.entry("zh", "Chinese"));
+
+    private static final Map<String, String> SORTS = Map.of("relevance", "Relevance", "title", "Title", "author",
+            "Author", "price", "Price", "rating", "Rating", "date", "Publication Date", "year",
+            "Publication Date");
+
+    private final String text;
+    private final Map<String, Object> filters;
+
+    private StructuredQuery(String text, Map<String, Object> filters) {
+        this.text = text;
+        this.filters = filters;
+    }
+
+    /**
+     * Parse a search box query
+     *
+     * @param query Query as typed, may be null
+     * @return The parsed query; never fails, unreadable clauses become text
+     */
+    public static StructuredQuery parse(String query) {
+        List<String> words = new ArrayList<>();
+        Map<String, Object> filters = new LinkedHashMap<>();
+        List<String> tokens = tokenize(query != null ? query : "");
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            Matcher clause = CLAUSE.matcher(token);
+            if (!clause.matches()) {
+                words.add(unquote(token));
+                continue;
+            }
+
+            String value = clause.group(3);
+            // "author: humayun" is read as "author:humayun"
+            String next = null;
+            if (value.isEmpty() && i + 1 < tokens.size()) {
+                next = tokens.get(++i);
+                value = next;
+            }
+            if (!applyClause(clause.group(1).toLowerCase(Locale.ROOT), clause.group(2), unquote(value), filters,
+                    words)) {
+                // Not a clause, e.g. "Harry Potter: the chamber", so the word
+                // taken as its value stays text too
+                words.add(unquote(token));
+                if (next != null) {
+                    words.add(unquote(next));
+                }
+            }
+        }
+        return new StructuredQuery(String.join(" ", words).trim(), filters);
+    }
+
+    /**
+     * Replace a structured {@code searchTerm} in filter parameters by the filters
+     * it spells out. Clauses typed in the query win over the same filter set
+     * elsewhere.
+     *
+     * @param filterParams Filter parameters as given to
+     *                     {@code ExploreDB.getFilteredBooks}
+     * @return The same map if the search term has no clauses, else a new map
+     */
+    public static Map<String, Object> expand(Map<String, Object> filterParams) {
+        Object searchTerm = filterParams.get("searchTerm");
+        if (!(searchTerm instanceof String)) {
+            return filterParams;
+        }
+        StructuredQuery query = parse((String) searchTerm);
+        if (!query.hasFilters()) {
+            return filterParams;
+        }
+        Map<String, Object> expanded = new HashMap<>(filterParams);
+        expanded.putAll(query.filters);
+        expanded.put("searchTerm", query.text);
+        return expanded;
+    }
+
+    /**
+     * Free text left after removing the clauses
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Whether the query has any field clauses
+     */
+    public boolean hasFilters() {
+        return !filters.isEmpty();
+    }
+
+    /**
+     * Filter parameters for {@code ExploreDB.getFilteredBooks}, including the
+     * free text as {@code searchTerm}
+     */
+    public Map<String, Object> toFilterParams() {
+        Map<String, Object> params = new HashMap<>(filters);
+        params.put("searchTerm", text);
+        return params;
+    }
+
+    private static boolean applyClause(String field, String op, String value, Map<String, Object> filters,
+            List<String> words) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        boolean equality = op.equals(":") || op.equals("=");
+
+        String textField = TEXT_FIELDS.get(field);
+        if (textField != null) {
+            if (!equality) {
+                return false;
+            }
+            filters.put(textField, value);
+            return true;
+        }
+
+        switch (field) {
+            case "title":
+            case "isbn":
+                if (!equality) {
+                    return false;
+                }
+                words.add(value);
+                return true;
+            case "lang":
+            case "language":
+                if (!equality) {
+                    return false;
+                }
+                filters.put("language", languageName(value));
+                return true;
+            case "price":
+                return applyNumberRange(op, value, "minPrice", "maxPrice", filters);
+            case "rating":
+                return applyNumberRange(op, value, "minRating", "maxRating", filters);
+            case "year":
+            case "date":
+                return applyDateRange(op, value, filters);
+            case "is":
+            case "has":
+                return applyFlag(value.toLowerCase(Locale.ROOT), filters);
+            case "sort":
+                return applySort(value.toLowerCase(Locale.ROOT), filters);
+            default:
+                return false;
+        }
+    }
+
+    // Bounds are inclusive, so strict comparisons step to the adjacent double
+    private static boolean applyNumberRange(String op, String value, String minKey, String maxKey,
+            Map<String, Object> filters) {
+        try {
+            Matcher range = RANGE.matcher(value);
+            if (range.matches() && op.equals(":")) {
+                // Both bounds are read before either is set, so a range with
+                // an unreadable bound sets nothing
+                Double min = range.group(1).isEmpty() ? null : Double.parseDouble(range.group(1));
+                Double max = range.group(2).isEmpty() ? null : Double.parseDouble(range.group(2));
+                if (min != null) {
+                    filters.put(minKey, min);
+                }
+                if (max != null) {
+                    filters.put(maxKey, max);
+                }
+                return true;
+            }
+
+            double number = Double.parseDouble(value);
+            switch (op) {
+                case "<":
+                    filters.put(maxKey, Math.nextDown(number));
+                    break;
+                case "<=":
+                    filters.put(maxKey, number);
+                    break;
+                case ">":
+                    filters.put(minKey, Math.nextUp(number));
+                    break;
+                case ">=":
+                    filters.put(minKey, number);
+                    break;
+                default:
+                    filters.put(minKey, number);
+                    filters.put(maxKey, number);
+                    break;
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean applyDateRange(String op, String value, Map<String, Object> filters) {
+        try {
+            Matcher range = RANGE.matcher(value);
+            if (range.matches() && op.equals(":")) {
+                LocalDate from = range.group(1).isEmpty() ? null : firstDay(range.group(1));
+                LocalDate to = range.group(2).isEmpty() ? null : lastDay(range.group(2));
+                if (from != null) {
+                    filters.put("fromDate", from);
+                }
+                if (to != null) {
+                    filters.put("toDate", to);
+                }
+                return true;
+            }
+
+            switch (op) {
+                case "<":
+                    filters.put("toDate", firstDay(value).minusDays(1));
+                    break;
+                case "<=":
+                    filters.put("toDate", lastDay(value));
+                    break;
+                case ">":
+                    filters.put("fromDate", lastDay(value).plusDays(1));
+                    break;
+                case ">=":
+                    filters.put("fromDate", firstDay(value));
+                    break;
+                default:
+                    filters.put("fromDate", firstDay(value));
+                    filters.put("toDate", lastDay(value));
+                    break;
+            }
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // A bare year covers the whole year
+    private static LocalDate firstDay(String value) {
+        return YEAR.matcher(value).matches() ? LocalDate.of(Integer.parseInt(value), 1, 1) : LocalDate.parse(value);
+    }
+
+    private static LocalDate lastDay(String value) {
+        return YEAR.matcher(value).matches() ? LocalDate.of(Integer.parseInt(value), 12, 31) : LocalDate.parse(value);
+    }
+
+    private static boolean applyFlag(String value, Map<String, Object> filters) {
+        switch (value) {
+            case "available":
+                filters.put("availability", "Available Now");
+                return true;
+            case "discounted":
+            case "discount":
+            case "sale":
+                filters.put("discountOnly", true);
+                return true;
+            case "featured":
+                filters.put("featuredOnly", true);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // "-price" or "price-desc" sorts descending; ascending is the default
+    // except for relevance
+    private static boolean applySort(String value, Map<String, Object> filters) {
+        boolean descending = value.startsWith("-") || value.endsWith("-desc");
+        boolean ascending = value.endsWith("-asc");
+        String key = value.replaceFirst("^-", "").replaceFirst("-(asc|desc)$", "");
+        String sortBy = SORTS.get(key);
+        if (sortBy == null) {
+            return false;
+        }
+        filters.put("sortBy", sortBy);
+        filters.put("ascending", ascending || !descending && !sortBy.equals("Relevance"));
+        return true;
+    }
+
+    private static String languageName(String value) {
+        String name = LANGUAGES.get(value.toLowerCase(Locale.ROOT));
+        if (name != null) {
+            return name;
+        }
+        return value.substring(0, 1).toUpperCase(Locale.ROOT) + value.substring(1).toLowerCase(Locale.ROOT);
+    }
+
+    // Split on whitespace outside double quotes
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                current.append(c);
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private static String unquote(String value) {
+        return value.replace("\"", "").trim();
+    }
+}
@@ -0,0 +1,96 @@
+package com.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits free text into lowercase index terms. Used for both indexing and
+ * querying so the two always agree on what a term is.
+ *
+ * Text is NFC-normalized first, so precomposed and decomposed spellings of the
+ * same Bangla or accented Latin word give the same term. Terms are cut only
+ * between grapheme clusters: vowel signs, viramas and zero-width joiners stay
+ * with the consonant they attach to.
+ */
+public final class TextAnalyzer {
+    private static final char ZERO_WIDTH_NON_JOINER = '\u200C';
+    private static final char ZERO_WIDTH_JOINER = '\u200D';
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * Tokenize text into lowercase terms. Anything that is not a letter, digit or
+     * combining mark separates terms, so "jibon_jekhane_jemon" gives three terms.
+     * 
+     * @param text Text to tokenize, may be null
+     * @return List of terms in order of appearance
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < normalized.length();) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (codePoint == ZERO_WIDTH_JOINER || codePoint == ZERO_WIDTH_NON_JOINER) {
+                // Only select a glyph form, never part of the spelling
+                continue;
+            }
+            if (isTermChar(codePoint)) {
+                term.appendCodePoint(codePoint);
+            } else if (term.length() > 0) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    /**
+     * Tokenize text into the keys the search index stores. Bangla-script terms
+     * are romanized, so a book titled "অপেক্ষা" and one titled "Opekkha" share
+     * the key "opekkha" and a single lookup finds both, whichever script the
+     * query is typed in.
+     * 
+     * @param text Text to tokenize, may be null
+     * @return List of index keys in order of appearance
+     */
+    public static List<String> indexTerms(String text) {
+        List<String> terms = tokenize(text);
+        for (int i = 0; i < terms.size(); i++) {
+            terms.set(i, indexKey(terms.get(i)));
+        }
+        return terms;
+    }
+
+    /**
+     * Index key of a single term: its romanization if it is written in Bangla,
+     * otherwise the term itself
+     * 
+     * @param term A term produced by {@link #tokenize(String)}
+     * @return Index key of the term
+     */
+    public static String indexKey(String term) {
+        return BanglaRomanizer.isBangla(term) ? BanglaRomanizer.romanize(term) : term;
+    }
+
+    private static boolean isTermChar(int codePoint) {
+        if (Character.isLetterOrDigit(codePoint)) {
+            return true;
+        }
+        // Vowel signs, viramas and other marks belong to the word they attach to
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK;
+    }
+}
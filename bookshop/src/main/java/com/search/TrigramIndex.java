@@ -0,0 +1,193 @@
+package com.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trigram index over the term vocabulary, used to find index terms within a
+ * small edit distance of a misspelled query term.
+ *
+ * Each term is padded with boundary markers and split into trigrams. A term
+ * within edit distance d of the query shares all but at most 3d of the query's
+ * trigrams, so it must appear in one of the 3d + 1 rarest query trigram lists.
+ * Only those lists are scanned, and at most a fixed number of candidates is
+ * verified with a banded Levenshtein distance, which bounds the cost of a
+ * lookup regardless of vocabulary size.
+ *
+ * An index is filled before it is published in an {@link IndexView} and only
+ * read afterwards; new terms go into a copy.
+ */
+final class TrigramIndex {
+    private static final char BOUNDARY = '\u0001';
+
+    private final List<String> terms = new ArrayList<>();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final Map<String, IntList> postings = new HashMap<>();
+
+    /**
+     * Add a term to the vocabulary, ignoring terms already present
+     */
+    void add(String term) {
+        if (termIds.containsKey(term)) {
+            return;
+        }
+        int termId = terms.size();
+        terms.add(term);
+        termIds.put(term, termId);
+        for (String trigram : trigrams(term)) {
+            postings.computeIfAbsent(trigram, t -> new IntList()).addIfLast(termId);
+        }
+    }
+
+    boolean contains(String term) {
+        return termIds.containsKey(term);
+    }
+
+    int size() {
+        return terms.size();
+    }
+
+    /**
+     * New index holding this vocabulary and the given terms
+     */
+    TrigramIndex copyWith(Collection<String> moreTerms) {
+        TrigramIndex copy = new TrigramIndex();
+        terms.forEach(copy::add);
+        moreTerms.forEach(copy::add);
+        return copy;
+    }
+
+    /**
+     * Vocabulary terms within the given edit distance of a term, closest first.
+     * The term itself is not returned.
+     *
+     * @param term          Query term
+     * @param maxDistance   Largest Levenshtein distance accepted
+     * @param maxCandidates Most candidates verified before giving up
+     * @return Similar terms
+     */
+    List<String> similar(String term, int maxDistance, int maxCandidates) {
+        List<String> result = new ArrayList<>();
+        List<String> queryTrigrams = trigrams(term);
+        if (maxDistance <= 0 || queryTrigrams.size() <= 3 * maxDistance) {
+            return result;
+        }
+
+        // Rarest trigram lists first; only the first 3d + 1 can contain new candidates
+        List<IntList> lists = new ArrayList<>();
+        for (String trigram : queryTrigrams) {
+            IntList list = postings.get(trigram);
+            if (list != null) {
+                lists.add(list);
+            }
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        int scanned = Math.min(lists.size(), 3 * maxDistance + 1);
+
+        Map<Integer, Integer> distances = new HashMap<>();
+        int verified = 0;
+        for (int i = 0; i < scanned && verified < maxCandidates; i++) {
+            IntList list = lists.get(i);
+            for (int j = 0; j < list.size && verified < maxCandidates; j++) {
+                int termId = list.values[j];
+                if (distances.containsKey(termId)) {
+                    continue;
+                }
+                String candidate = terms.get(termId);
+                int distance = Math.abs(candidate.length() - term.length()) > maxDistance
+                        ? Integer.MAX_VALUE
+                        : boundedLevenshtein(term, candidate, maxDistance);
+                distances.put(termId, distance);
+                verified++;
+            }
+        }
+
+        List<Map.Entry<Integer, Integer>> matches = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : distances.entrySet()) {
+            if (entry.getValue() > 0 && entry.getValue() <= maxDistance) {
+                matches.add(entry);
+            }
+        }
+        matches.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<Integer, Integer> entry : matches) {
+            result.add(terms.get(entry.getKey()));
+        }
+        return result;
+    }
+
+    /**
+     * Levenshtein distance, or maxDistance + 1 once it is known to exceed
+     * maxDistance. Only a band of 2 * maxDistance + 1 cells per row is computed.
+     */
+    static int boundedLevenshtein(String a, String b, int maxDistance) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > maxDistance) {
+            return maxDistance + 1;
+        }
+
+        int outside = maxDistance + 1;
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j <= maxDistance ? j : outside;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(m, i + maxDistance);
+            Arrays.fill(current, outside);
+            current[0] = i <= maxDistance ? i : outside;
+
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(value, outside);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxDistance) {
+                return outside;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[m], outside);
+    }
+
+    private static List<String> trigrams(String term) {
+        String padded = BOUNDARY + term + BOUNDARY;
+        List<String> result = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            String trigram = padded.substring(i, i + 3);
+            if (!result.contains(trigram)) {
+                result.add(trigram);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Growable array of increasing term ids
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addIfLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
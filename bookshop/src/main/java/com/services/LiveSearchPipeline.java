@@ -0,0 +1,203 @@
+package com.services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javafx.application.Platform;
+
+/**
+ * Runs search-as-you-type queries off the FX thread. Keystrokes are debounced,
+ * every request gets a sequence number, and a result is rendered only if no
+ * newer request was made in the meantime, so a slow query can never overwrite
+ * a faster, newer one.
+ *
+ * @param <T> Type of the query result
+ */
+public class LiveSearchPipeline<T> {
+    private static final Logger LOGGER = Logger.getLogger(LiveSearchPipeline.class.getName());
+    public static final long DEFAULT_DEBOUNCE_MS = 250;
+
+    // Shared by all pipelines: one thread runs queries in order, one handles timers
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            daemonFactory("live-search-timer"));
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(
+            daemonFactory("live-search-worker"));
+
+    private final Function<String, T> query;
+    private final BiConsumer<String, T> renderer;
+    private final long debounceMillis;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ScheduledFuture<?> pending;
+    private volatile long burstStartNanos = -1;
+
+    // Metrics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalTimeToResultNanos = new AtomicLong();
+    private volatile long lastTimeToResultNanos;
+
+    /**
+     * @param query    Runs the search, called on a background thread
+     * @param renderer Shows a result, called on the FX thread
+     */
+    public LiveSearchPipeline(Function<String, T> query, BiConsumer<String, T> renderer) {
+        this(query, renderer, DEFAULT_DEBOUNCE_MS);
+    }
+
+    public LiveSearchPipeline(Function<String, T> query, BiConsumer<String, T> renderer, long debounceMillis) {
+        this.query = query;
+        this.renderer = renderer;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Queue a query after the debounce delay, replacing any query still waiting
+     *
+     * @param text The query text
+     */
+    public void submit(String text) {
+        schedule(text, debounceMillis);
+    }
+
+    /**
+     * Run a query right away, for explicit searches such as pressing Enter
+     *
+     * @param text The query text
+     */
+    public void submitNow(String text) {
+        schedule(text, 0);
+    }
+
+    /**
+     * Discard any waiting or running query, e.g. when the search field is cleared
+     */
+    public synchronized void cancel() {
+        sequence.incrementAndGet();
+        if (pending != null && pending.cancel(false)) {
+            dropped.incrementAndGet();
+        }
+        pending = null;
+        burstStartNanos = -1;
+    }
+
+    private synchronized void schedule(String text, long delayMillis) {
+        submitted.incrementAndGet();
+        long seq = sequence.incrementAndGet();
+        if (burstStartNanos < 0) {
+            burstStartNanos = System.nanoTime();
+        }
+
+        // A query still waiting for its debounce window is superseded
+        if (pending != null && pending.cancel(false)) {
+            dropped.incrementAndGet();
+        }
+        pending = TIMER.schedule(() -> WORKER.execute(() -> run(seq, text)), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(long seq, String text) {
+        if (seq != sequence.get()) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        T result;
+        boolean succeeded = false;
+        try {
+            executed.incrementAndGet();
+            result = query.apply(text);
+            succeeded = true;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Live search failed for: " + text, e);
+            return;
+        } finally {
+            if (!succeeded) {
+                // Nothing will render, so the burst ends here
+                endBurst(seq);
+            }
+        }
+
+        Platform.runLater(() -> {
+            // Re-check on the FX thread, a newer query may have been typed meanwhile
+            if (seq != sequence.get()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            try {
+                renderer.accept(text, result);
+            } finally {
+                recordRendered();
+            }
+        });
+    }
+
+    private synchronized void recordRendered() {
+        rendered.incrementAndGet();
+        if (burstStartNanos >= 0) {
+            lastTimeToResultNanos = System.nanoTime() - burstStartNanos;
+            totalTimeToResultNanos.addAndGet(lastTimeToResultNanos);
+            burstStartNanos = -1;
+        }
+        LOGGER.fine(() -> String.format("Live search rendered in %d ms (dropped %d of %d)",
+                getLastTimeToResultMillis(), dropped.get(), submitted.get()));
+    }
+
+    // A newer query still belongs to the same burst, so only the newest ends it
+    private synchronized void endBurst(long seq) {
+        if (seq == sequence.get()) {
+            burstStartNanos = -1;
+        }
+    }
+
+    // =============== METRICS ===============
+
+    public long getSubmittedQueries() {
+        return submitted.get();
+    }
+
+    public long getExecutedQueries() {
+        return executed.get();
+    }
+
+    public long getRenderedResults() {
+        return rendered.get();
+    }
+
+    /**
+     * Queries superseded before running or whose results were discarded
+     */
+    public long getDroppedQueries() {
+        return dropped.get();
+    }
+
+    /**
+     * Time from the first keystroke of the last burst until its result was shown
+     */
+    public long getLastTimeToResultMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastTimeToResultNanos);
+    }
+
+    public double getAverageTimeToResultMillis() {
+        long count = rendered.get();
+        return count == 0 ? 0 : totalTimeToResultNanos.get() / 1_000_000.0 / count;
+    }
+
+    private static ThreadFactory daemonFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,211 @@
+package com.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import com.models.Book;
+
+import javafx.scene.Node;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Region;
+
+/**
+ * Horizontal strip of book cards that renders incrementally. The first page is
+ * built right away and further pages are appended as the user scrolls towards
+ * the end of the strip.
+ *
+ * At most a fixed number of cards exist at any time. Cards scrolled well out
+ * of view are dropped and replaced by spacers of the same width, so the
+ * scroll position and the scrollbar stay where they were, and are rebuilt if
+ * the user scrolls back to them.
+ */
+public class PagedResultStrip {
+    public static final int DEFAULT_PAGE_SIZE = 12;
+    public static final int DEFAULT_MAX_LIVE_CARDS = 36;
+
+    private static final double SPACING = 20;
+    private static final double DEFAULT_CARD_WIDTH = 180;
+
+    // Start loading the next page this many cards before the end is reached
+    private static final int LOAD_AHEAD_CARDS = 4;
+
+    private final HBox strip = new HBox(SPACING);
+    private final ScrollPane scrollPane;
+    private final Function<Book, Node> cardFactory;
+    private final int pageSize;
+    private final int maxLiveCards;
+
+    private final Region leadingSpacer = new Region();
+    private final Region trailingSpacer = new Region();
+    private final Map<Integer, Node> liveCards = new TreeMap<>();
+
+    private List<Book> results = Collections.emptyList();
+    private int loaded;
+    private int liveStart;
+    private int liveEnd;
+    private double slotWidth = DEFAULT_CARD_WIDTH + SPACING;
+    private boolean updating;
+
+    public PagedResultStrip(ScrollPane scrollPane, Function<Book, Node> cardFactory) {
+        this(scrollPane, cardFactory, DEFAULT_PAGE_SIZE, DEFAULT_MAX_LIVE_CARDS);
+    }
+
+    /**
+     * @param scrollPane   Scroll pane the strip is shown in, may be null in which
+     *                     case only the first page is shown
+     * @param cardFactory  Creates the card for a book
+     * @param pageSize     Cards added per page
+     * @param maxLiveCards Most cards kept in the scene graph at once
+     */
+    public PagedResultStrip(ScrollPane scrollPane, Function<Book, Node> cardFactory, int pageSize,
+            int maxLiveCards) {
+        this.scrollPane = scrollPane;
+        this.cardFactory = cardFactory;
+        this.pageSize = pageSize;
+        this.maxLiveCards = Math.max(maxLiveCards, 2 * pageSize);
+        strip.getStyleClass().add("book-container");
+
+        if (scrollPane != null) {
+            scrollPane.hvalueProperty().addListener((obs, oldValue, newValue) -> update());
+            scrollPane.viewportBoundsProperty().addListener((obs, oldValue, newValue) -> update());
+        }
+    }
+
+    /**
+     * The node to add to the scene
+     */
+    public HBox getNode() {
+        return strip;
+    }
+
+    /**
+     * Replace the strip contents with a new result list, showing its first page
+     *
+     * @param books Results to show
+     */
+    public void show(List<Book> books) {
+        results = books;
+        loaded = Math.min(books.size(), pageSize);
+        liveCards.clear();
+        liveStart = 0;
+        liveEnd = 0;
+        if (scrollPane != null) {
+            updating = true;
+            scrollPane.setHvalue(scrollPane.getHmin());
+            updating = false;
+        }
+        render(0, loaded);
+    }
+
+    public void clear() {
+        results = Collections.emptyList();
+        loaded = 0;
+        liveCards.clear();
+        liveStart = 0;
+        liveEnd = 0;
+        strip.getChildren().clear();
+    }
+
+    /**
+     * Number of cards currently in the scene graph
+     */
+    public int getLiveCardCount() {
+        return liveCards.size();
+    }
+
+    private void update() {
+        if (updating || results.isEmpty() || scrollPane.getContent() == null) {
+            return;
+        }
+        updating = true;
+        try {
+            measureSlotWidth();
+
+            double viewport = scrollPane.getViewportBounds().getWidth();
+            double contentWidth = scrollPane.getContent().getLayoutBounds().getWidth();
+            double range = scrollPane.getHmax() - scrollPane.getHmin();
+            double ratio = range > 0 ? (scrollPane.getHvalue() - scrollPane.getHmin()) / range : 0;
+            double contentOffset = ratio * Math.max(0, contentWidth - viewport);
+            double offset = Math.max(0, contentOffset - strip.getLayoutX());
+
+            int first = Math.min(loaded - 1, (int) Math.floor(offset / slotWidth));
+            int last = Math.min(loaded, (int) Math.ceil((offset + viewport) / slotWidth));
+
+            if (last + LOAD_AHEAD_CARDS >= loaded && loaded < results.size()) {
+                int added = Math.min(results.size(), loaded + pageSize) - loaded;
+                loaded += added;
+
+                // Content grows on the right; keep the same pixels in view
+                double newScrollable = contentWidth + added * slotWidth - viewport;
+                if (newScrollable > 0) {
+                    scrollPane.setHvalue(scrollPane.getHmin() + range * Math.min(1, contentOffset / newScrollable));
+                }
+            }
+
+            // Keep a page on either side of the visible cards, within the cap
+            int start = Math.max(0, first - pageSize);
+            int end = Math.min(loaded, Math.max(last, first + 1) + pageSize);
+            if (end - start > maxLiveCards) {
+                start = Math.max(0, Math.min(first, end - maxLiveCards));
+                end = Math.min(end, start + maxLiveCards);
+            }
+            render(start, end);
+        } finally {
+            updating = false;
+        }
+    }
+
+    private void render(int start, int end) {
+        if (start == liveStart && end == liveEnd && !strip.getChildren().isEmpty()) {
+            updateSpacers();
+            return;
+        }
+
+        liveCards.keySet().removeIf(index -> index < start || index >= end);
+        for (int i = start; i < end; i++) {
+            liveCards.computeIfAbsent(i, index -> cardFactory.apply(results.get(index)));
+        }
+        liveStart = start;
+        liveEnd = end;
+
+        List<Node> children = new ArrayList<>(liveCards.size() + 2);
+        if (start > 0) {
+            children.add(leadingSpacer);
+        }
+        children.addAll(liveCards.values());
+        if (end < loaded) {
+            children.add(trailingSpacer);
+        }
+        strip.getChildren().setAll(children);
+        updateSpacers();
+    }
+
+    // A spacer stands in for its cards and the gaps between them; the HBox adds
+    // the gap next to the spacer itself
+    private void updateSpacers() {
+        setFixedWidth(leadingSpacer, liveStart * slotWidth - SPACING);
+        setFixedWidth(trailingSpacer, (loaded - liveEnd) * slotWidth - SPACING);
+    }
+
+    private static void setFixedWidth(Region region, double width) {
+        double clamped = Math.max(0, width);
+        region.setMinWidth(clamped);
+        region.setPrefWidth(clamped);
+        region.setMaxWidth(clamped);
+    }
+
+    private void measureSlotWidth() {
+        for (Node card : liveCards.values()) {
+            double width = card.getLayoutBounds().getWidth();
+            if (width > 0) {
+                slotWidth = width + SPACING;
+                return;
+            }
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package com.services;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 
 import com.database.BookDetailsCollection;
+import com.database.ExploreDB;
 import com.models.Book;
 import com.controllers.HomeController;
+import com.search.SearchIndex;
+import com.search.StructuredQuery;
 
-import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 
@@ -16,56 +22,108 @@ import javafx.scene.layout.VBox;
  * Handles search functionality for the application
  */
 public class SearchImplementation {
+    private static final Logger LOGGER = Logger.getLogger(SearchImplementation.class.getName());
+    private static final int MAX_RESULTS = 200;
 
-    private final BookDetailsCollection searchBooks;
+    private final ExploreDB exploreDB = new ExploreDB();
     private final HomeController homeController;
     private HBox searchResultsContainer;
+    private final PagedResultStrip resultStrip;
+    private final LiveSearchPipeline<List<Book>> pipeline = new LiveSearchPipeline<>(this::findBooks,
+            this::showResults);
 
-    public SearchImplementation(HomeController homeController, HBox searchResultsContainer) {
-        this.searchBooks = new BookDetailsCollection();
+    public SearchImplementation(HomeController homeController, HBox searchResultsContainer,
+            ScrollPane searchResultsScroll) {
         this.homeController = homeController;
         this.searchResultsContainer = searchResultsContainer;
+        this.resultStrip = new PagedResultStrip(searchResultsScroll, homeController::createBookCard);
+
+        // Start loading the local index so later searches don't hit the database
+        SearchIndex.getInstance().ensureBuilt();
     }
 
     /**
-     * Perform search with the provided query
+     * Perform search with the provided query right away, e.g. on Enter. The query
+     * runs in the background and supersedes any live search still in flight.
      * 
      * @param query The search term
-     * @return True if search was successful, false otherwise
+     * @return True if a search was started, false if the query was empty
      */
     public boolean performSearch(String query) {
-        try {
-            if (query == null || query.trim().isEmpty()) {
-                return false;
-            }
-
-            System.out.println("Searching for: " + query.trim());
-            List<Book> results = searchBooks.searchBooks(query.trim());
-
-            if (results.isEmpty()) {
-                System.out.println("No books found matching: " + query);
-                // Clear previous results and show no results message
-                Platform.runLater(() -> {
-                    clearResults();
-                    showNoResultsMessage(query);
-                });
-                return false;
-            } else {
-                System.out.println("Found " + results.size() + " books matching: " + query);
-                // Convert documents to Book objects
-                List<Book> bookResults = results;
-
-                // Display the results in the UI
-                Platform.runLater(() -> {
-                    displaySearchResults(bookResults);
-                });
-                return true;
-            }
-        } catch (Exception e) {
-            System.err.println("Error performing search: " + e.getMessage());
-            e.printStackTrace();
+        if (query == null || query.trim().isEmpty()) {
             return false;
         }
+
+        LOGGER.info("Searching for: " + query.trim());
+        pipeline.submitNow(query.trim());
+        return true;
+    }
+
+    /**
+     * Search as the user types. Keystrokes are debounced and only the newest
+     * query's results are shown.
+     * 
+     * @param query The current contents of the search field
+     */
+    public void performLiveSearch(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            clearResults();
+            return;
+        }
+        pipeline.submit(query.trim());
+    }
+
+    /**
+     * Live search metrics: time-to-first-result, dropped queries and so on
+     */
+    public LiveSearchPipeline<List<Book>> getPipeline() {
+        return pipeline;
+    }
+
+    // Runs on the FX thread with the result of the latest query only
+    private void showResults(String query, List<Book> results) {
+        if (results.isEmpty()) {
+            LOGGER.info("No books found matching: " + query);
+            showNoResultsMessage(query);
+        } else {
+            LOGGER.info("Found " + results.size() + " books matching: " + query);
+            displaySearchResults(results);
+        }
+    }
+
+    /**
+     * Rank matches with the local index, or fall back to the database regex
+     * search while the index is still being built
+     * 
+     * @param query The trimmed search term
+     * @return List of matching books
+     */
+    private List<Book> findBooks(String query) {
+        StructuredQuery structured = StructuredQuery.parse(query);
+        if (structured.hasFilters()) {
+            return findFiltered(structured);
+        }
+
+        SearchIndex index = SearchIndex.getInstance();
+        if (index.isReady()) {
+            return index.search(query, MAX_RESULTS);
+        }
+        index.ensureBuilt();
+        return BookDetailsCollection.searchBooks(query);
+    }
+
+    /**
+     * Run a query with field clauses through the Explore filters, best matches
+     * first unless the query asks for another order
+     * 
+     * @param query The parsed query
+     * @return Up to MAX_RESULTS matching books
+     */
+    private List<Book> findFiltered(StructuredQuery query) {
+        Map<String, Object> filterParams = query.toFilterParams();
+        filterParams.putIfAbsent("sortBy", "Relevance");
+        List<Book> results = exploreDB.getFilteredBooks(filterParams);
+        return results.size() > MAX_RESULTS ? new ArrayList<>(results.subList(0, MAX_RESULTS)) : results;
     }
 
     /**
@@ -82,7 +140,7 @@ public class SearchImplementation {
      */
     private void displaySearchResults(List<Book> books) {
         // Clear previous results
-        clearResults();
+        clearContainer();
 
         // Add header label
         Label headerLabel = new Label("Search Results");
@@ -94,16 +152,9 @@ public class SearchImplementation {
 
         searchResultsContainer.getChildren().add(headerBox);
 
-        // Create HBox for actual results
-        HBox resultsBox = new HBox(20);
-        resultsBox.getStyleClass().add("book-container");
-
-        // Add book cards to the results container
-        for (Book book : books) {
-            resultsBox.getChildren().add(homeController.createBookCard(book));
-        }
-
-        searchResultsContainer.getChildren().add(resultsBox);
+        // Cards are built a page at a time as the results strip is scrolled
+        searchResultsContainer.getChildren().add(resultStrip.getNode());
+        resultStrip.show(books);
 
         // Make the search results container visible
         searchResultsContainer.setVisible(true);
@@ -111,9 +162,15 @@ public class SearchImplementation {
     }
 
     /**
-     * Clear search results from the UI
+     * Clear search results from the UI and drop any search still in flight
      */
     public void clearResults() {
+        pipeline.cancel();
+        clearContainer();
+    }
+
+    private void clearContainer() {
+        resultStrip.clear();
         if (searchResultsContainer != null) {
             searchResultsContainer.getChildren().clear();
             searchResultsContainer.setVisible(false);
@@ -128,7 +185,7 @@ public class SearchImplementation {
      */
     private void showNoResultsMessage(String searchTerm) {
         // Clear previous results
-        clearResults();
+        clearContainer();
 
         // Create no results message
         Label noResultsLabel = new Label("No books found matching: " + searchTerm);
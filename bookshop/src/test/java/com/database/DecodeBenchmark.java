@@ -0,0 +1,172 @@
+package com.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.models.Book;
+import com.search.CatalogExecutor;
+
+/**
+ * Times decoding query results while they are read, serially on the reading
+ * thread against {@link BookDetailsCollection#decodeAll}, which forks full
+ * batches to the catalog pool, over result sizes from one batch to the whole
+ * catalog. A simulated cursor waits a fixed time before each batch, standing
+ * in for the round trip that fetches it. Reports the smallest result size
+ * from which the batched decode is faster. Not run by the test suite; run
+ * its main method with the test classpath:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;dependencies&gt; com.database.DecodeBenchmark [fetch ms per batch]
+ * </pre>
+ */
+public final class DecodeBenchmark {
+    private static final int[] RESULT_SIZES = { 50, 100, 200, 400, 800, 1_600, 3_200, 6_400, 12_800, 25_600 };
+    private static final String[] LANGUAGES = { "Bangla", "English", "Hindi" };
+    private static final String[] CATEGORIES = { "Fiction", "History", "Poetry", "Science", "Kids", "Travel" };
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 9;
+
+    private DecodeBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        long fetchMillis = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        Random random = new Random(28);
+        List<Document> catalog = new ArrayList<>();
+        for (int i = 0; i < RESULT_SIZES[RESULT_SIZES.length - 1]; i++) {
+            catalog.add(document(i, random));
+        }
+
+        // Warm the decoder and settle the executor's cost estimate before
+        // taking the batch size from it
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            BookDetailsCollection.decodeAll(catalog.iterator(), CatalogExecutor.taskSize(CatalogExecutor.Operation.DECODE));
+        }
+        int batchSize = CatalogExecutor.taskSize(CatalogExecutor.Operation.DECODE);
+        System.out.printf("%d processors, %.0f ns per document, batches of %d, %d ms to fetch a batch%n",
+                Runtime.getRuntime().availableProcessors(), CatalogExecutor.Operation.DECODE.nanosPerItem(),
+                batchSize, fetchMillis);
+
+        int crossover = -1;
+        for (int size : RESULT_SIZES) {
+            List<Document> result = catalog.subList(0, size);
+            long serial = median(() -> {
+                List<Book> books = new ArrayList<>(size);
+                Iterator<Document> cursor = new SimulatedCursor(result, batchSize, fetchMillis);
+                while (cursor.hasNext()) {
+                    books.add(BookDetailsCollection.convertDocumentToBook(cursor.next()));
+                }
+                return books;
+            }, size);
+            long batched = median(() -> BookDetailsCollection.decodeAll(
+                    new SimulatedCursor(result, batchSize, fetchMillis), batchSize), size);
+            System.out.printf("%6d documents: serial %7.2f ms, batched %7.2f ms%n", size, serial / 1e6, batched / 1e6);
+            if (batched < serial && crossover < 0) {
+                crossover = size;
+            } else if (batched >= serial) {
+                crossover = -1;
+            }
+        }
+        System.out.println(crossover > 0 ? "Batched decoding is faster from " + crossover + " documents"
+                : "Batched decoding was not faster at any size");
+    }
+
+    // Median time of a run, checking it decoded every document
+    private static long median(Supplier<List<Book>> run, int size) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run.get();
+        }
+        long[] nanos = new long[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            List<Book> books = run.get();
+            nanos[i] = System.nanoTime() - start;
+            if (books.size() != size) {
+                throw new IllegalStateException("Decoded " + books.size() + " of " + size + " documents");
+            }
+        }
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2];
+    }
+
+    /**
+     * Iterator over documents that blocks before each batch, as a cursor
+     * does while it fetches the next batch from the server
+     */
+    private static final class SimulatedCursor implements Iterator<Document> {
+        private final List<Document> documents;
+        private final int batchSize;
+        private final long fetchMillis;
+        private int next;
+
+        SimulatedCursor(List<Document> documents, int batchSize, long fetchMillis) {
+            this.documents = documents;
+            this.batchSize = batchSize;
+            this.fetchMillis = fetchMillis;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < documents.size();
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next % batchSize == 0 && fetchMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(fetchMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return documents.get(next++);
+        }
+    }
+
+    // Shaped like a bookdetails document
+    private static Document document(int i, Random random) {
+        List<Document> reviews = new ArrayList<>();
+        for (int r = random.nextInt(4); r > 0; r--) {
+            reviews.add(new Document("userId", "U" + random.nextInt(1000))
+                    .append("rating", 1 + random.nextInt(5))
+                    .append("comment", "Review text for book " + i + " number " + r)
+                    .append("date", "2024-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(9)));
+        }
+        return new Document("_id", new ObjectId())
+                .append("id", "B" + i)
+                .append("title", "Title of book " + i)
+                .append("author", "Author " + random.nextInt(5_000))
+                .append("publisher", "Publisher " + random.nextInt(300))
+                .append("publicationDate", (1950 + random.nextInt(75)) + "-0" + (1 + random.nextInt(9)) + "-15")
+                .append("language", LANGUAGES[random.nextInt(LANGUAGES.length)])
+                .append("isbn", "978" + (1_000_000_000L + random.nextInt(1_000_000_000)))
+                .append("description", "A description of book " + i + " long enough to resemble the real ones, "
+                        + "with a sentence or two about its story and its author.")
+                .append("imageUrl", "https://example.org/covers/" + i + ".jpg")
+                .append("pages", 80 + random.nextInt(800))
+                .append("reviewCount", reviews.size())
+                .append("totalPurchases", random.nextInt(500))
+                .append("categories", List.of(CATEGORIES[random.nextInt(CATEGORIES.length)],
+                        CATEGORIES[random.nextInt(CATEGORIES.length)]))
+                .append("originalPrice", 100 + random.nextInt(900))
+                .append("currentPrice", 80.0 + random.nextInt(800))
+                .append("discount", random.nextInt(4) == 0 ? 10 : 0)
+                .append("rating", random.nextInt(50) / 10.0)
+                .append("sellerId", "U" + random.nextInt(1000))
+                .append("uploadDate", "2024-01-01")
+                .append("featured", random.nextInt(10) == 0)
+                .append("buyerReviews", reviews);
+    }
+}
@@ -0,0 +1,78 @@
+package com.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.models.Book;
+
+/**
+ * Sorting a filtered set, as Explore does on every query whether or not the
+ * set came from the cache, orders only the pages read
+ */
+class ExploreDBSortTest {
+    private static final int BOOKS = 20_000;
+    private static final int PAGE = 20;
+
+    private final ExploreDB exploreDB = new ExploreDB();
+
+    @Test
+    void firstPageDoesNotForceTheFullOrder() {
+        List<Book> filtered = books(new Random(45));
+
+        CountingBook.reads = 0;
+        List<Book> sorted = exploreDB.sortBooks(filtered, "Price", true);
+        List<Book> firstPage = new ArrayList<>(sorted.subList(0, PAGE));
+        long pageReads = CountingBook.reads;
+
+        CountingBook.reads = 0;
+        List<Book> expected = new ArrayList<>(filtered);
+        expected.sort(Comparator.comparingDouble(Book::getCurrentPrice));
+        long fullSortReads = CountingBook.reads;
+
+        assertEquals(expected.subList(0, PAGE), firstPage);
+        assertTrue(pageReads * 4 < fullSortReads,
+                "first page read " + pageReads + " prices, a full sort " + fullSortReads);
+    }
+
+    @Test
+    void sortingTheSameSetAgainStaysLazy() {
+        List<Book> filtered = books(new Random(46));
+        exploreDB.sortBooks(filtered, "Price", false).get(0);
+
+        // A second query over the same filtered set, with another order
+        CountingBook.reads = 0;
+        List<Book> sorted = exploreDB.sortBooks(filtered, "Price", true);
+        sorted.get(PAGE - 1);
+        assertTrue(CountingBook.reads < 4L * BOOKS, "read " + CountingBook.reads + " prices for one page");
+        assertEquals(BOOKS, sorted.size());
+    }
+
+    private static List<Book> books(Random random) {
+        List<Book> books = new ArrayList<>(BOOKS);
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new CountingBook();
+            book.setId("B" + i);
+            book.setCurrentPrice(random.nextInt(100_000) / 100.0);
+            books.add(book);
+        }
+        return books;
+    }
+
+    // Counts the comparisons a sort makes through the price it reads
+    private static final class CountingBook extends Book {
+        static long reads;
+
+        @Override
+        public double getCurrentPrice() {
+            reads++;
+            return super.getCurrentPrice();
+        }
+    }
+}
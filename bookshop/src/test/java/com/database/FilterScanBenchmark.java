@@ -0,0 +1,146 @@
+package com.database;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+import com.models.Book;
+import com.search.BookTable;
+
+/**
+ * Times the Explore composite filters as column scans over a
+ * {@link BookTable} against the field-by-field predicates, on a synthetic
+ * catalog, and checks that both select the same books. Not run by the test
+ * suite; run its main method with the test classpath:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;dependencies&gt; com.database.FilterScanBenchmark [books]
+ * </pre>
+ */
+public final class FilterScanBenchmark {
+    private static final String[] LANGUAGES = { "Bangla", "English", "Hindi", "Arabic" };
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 20;
+
+    private FilterScanBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Random random = new Random(41);
+        List<Book> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            catalog.add(book("B" + i, random));
+        }
+        BookTable table = BookTable.of(catalog);
+
+        List<Map<String, Object>> queries = List.of(
+                params("Bangla", 100.0, 600.0, 3.0, null, null),
+                params(null, null, 300.0, null, LocalDate.of(2000, 1, 1), LocalDate.of(2010, 12, 31)),
+                params("English", null, null, 4.0, LocalDate.of(1995, 1, 1), null));
+
+        for (int q = 0; q < queries.size(); q++) {
+            Map<String, Object> filterParams = queries.get(q);
+            List<Predicate<Book>> predicates = FilterPlan.compositePredicates(filterParams);
+
+            int[] scanned = FilterPlan.compositeRows(table, filterParams, null);
+            List<String> expected = new ArrayList<>();
+            for (int row = 0; row < table.size(); row++) {
+                Book book = table.book(row);
+                if (predicates.stream().allMatch(p -> p.test(book))) {
+                    expected.add(book.getId());
+                }
+            }
+            List<String> actual = new ArrayList<>();
+            for (int row : scanned) {
+                actual.add(table.book(row).getId());
+            }
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("Query " + q + ": scans and predicates disagree");
+            }
+
+            long[] scanNanos = time(() -> FilterPlan.compositeRows(table, filterParams, null).length);
+            long[] predicateNanos = time(() -> {
+                int matches = 0;
+                for (Book book : catalog) {
+                    boolean passes = true;
+                    for (Predicate<Book> predicate : predicates) {
+                        if (!predicate.test(book)) {
+                            passes = false;
+                            break;
+                        }
+                    }
+                    if (passes) {
+                        matches++;
+                    }
+                }
+                return matches;
+            });
+            System.out.printf("query %d: %d of %d books; column scans %s, predicates %s%n", q, scanned.length,
+                    size, range(scanNanos), range(predicateNanos));
+        }
+    }
+
+    private static Map<String, Object> params(String language, Double minPrice, Double maxPrice, Double minRating,
+            LocalDate fromDate, LocalDate toDate) {
+        Map<String, Object> filterParams = new HashMap<>();
+        filterParams.put("language", language);
+        filterParams.put("minPrice", minPrice);
+        filterParams.put("maxPrice", maxPrice);
+        filterParams.put("minRating", minRating);
+        filterParams.put("fromDate", fromDate);
+        filterParams.put("toDate", toDate);
+        filterParams.put("availability", "Available Now");
+        return filterParams;
+    }
+
+    // Nanoseconds of each measured round, after the warm-up rounds
+    private static long[] time(IntSupplier run) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += run.getAsInt();
+        }
+        long[] nanos = new long[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += run.getAsInt();
+            nanos[i] = System.nanoTime() - start;
+        }
+        if (sink < 0) {
+            System.out.println(sink);
+        }
+        return nanos;
+    }
+
+    // Median and slowest round in milliseconds
+    private static String range(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("median %.1f ms, max %.1f ms", sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static Book book(String id, Random random) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle("Title " + id);
+        book.setCurrentPrice(random.nextInt(1000));
+        book.setRating(random.nextInt(50) / 10.0);
+        book.setReviewCount(random.nextInt(100));
+        book.setDiscount(random.nextInt(4) == 0 ? 10 : 0);
+        book.setLanguage(LANGUAGES[random.nextInt(LANGUAGES.length)]);
+        book.setPublicationDate(random.nextInt(10) == 0 ? null
+                : String.format("%d-%02d-%02d", 1990 + random.nextInt(30), 1 + random.nextInt(12),
+                        1 + random.nextInt(28)));
+        if (random.nextBoolean()) {
+            book.setHolderId("U" + random.nextInt(10));
+        }
+        return book;
+    }
+}
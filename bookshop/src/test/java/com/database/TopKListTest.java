@@ -0,0 +1,79 @@
+package com.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lazily selected sorted order, against a full stable sort
+ */
+class TopKListTest {
+
+    // Sort by value only, so ties show whether the original order is kept
+    private static final Comparator<int[]> BY_VALUE = Comparator.comparingInt(item -> item[0]);
+
+    @Test
+    void matchesStableSortReadInOrder() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 100; trial++) {
+            List<int[]> items = randomItems(random, random.nextInt(2000));
+            List<int[]> expected = sorted(items);
+            TopKList<int[]> list = new TopKList<>(items, BY_VALUE);
+            assertEquals(expected.size(), list.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i), list.get(i));
+            }
+        }
+    }
+
+    @Test
+    void matchesStableSortReadOutOfOrder() {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 100; trial++) {
+            List<int[]> items = randomItems(random, 1 + random.nextInt(2000));
+            TopKList<int[]> list = new TopKList<>(items, BY_VALUE.reversed());
+            List<int[]> reversed = new ArrayList<>(items);
+            reversed.sort(BY_VALUE.reversed());
+            for (int read = 0; read < 20; read++) {
+                int index = random.nextInt(items.size());
+                assertEquals(reversed.get(index), list.get(index));
+            }
+        }
+    }
+
+    @Test
+    void leavesItemsUnchanged() {
+        List<int[]> items = randomItems(new Random(9), 500);
+        List<int[]> copy = new ArrayList<>(items);
+        new TopKList<>(items, BY_VALUE).get(499);
+        assertEquals(copy, items);
+    }
+
+    @Test
+    void rejectsIndexesOutOfRange() {
+        TopKList<int[]> list = new TopKList<>(randomItems(new Random(1), 10), BY_VALUE);
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(10));
+    }
+
+    // Few distinct values, so most items tie
+    private static List<int[]> randomItems(Random random, int count) {
+        List<int[]> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new int[] { random.nextInt(50), i });
+        }
+        return items;
+    }
+
+    private static List<int[]> sorted(List<int[]> items) {
+        List<int[]> sorted = new ArrayList<>(items);
+        sorted.sort(BY_VALUE);
+        return sorted;
+    }
+}
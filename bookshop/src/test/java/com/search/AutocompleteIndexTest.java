@@ -0,0 +1,111 @@
+package com.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.models.Book;
+
+/**
+ * Changes published by merging into the previous snapshot complete every
+ * prefix like an index rebuilt from the same books
+ */
+class AutocompleteIndexTest {
+    private static final String[] WORDS = { "alchemist", "alchemy", "dracula", "dream", "river", "rivers", "tide",
+            "time", "বই", "আমার" };
+    private static final String[] CATEGORIES = { "Fiction", "Science Fiction", "History", "Poetry" };
+    private static final String[] PREFIXES = { "a", "al", "alch", "d", "dr", "dre", "r", "riv", "t", "ti", "f",
+            "fic", "s", "h", "p", "বই", "আ", "z" };
+    private static final int ALL = 10_000;
+
+    @Test
+    void mergedChangesMatchRebuild() {
+        Random random = new Random(30);
+        Map<String, Book> live = new LinkedHashMap<>();
+        for (int i = 0; i < 300; i++) {
+            Book book = book("B" + i, random);
+            live.put(book.getId(), book);
+        }
+        AutocompleteIndex incremental = new AutocompleteIndex();
+        incremental.rebuild(live.values());
+
+        for (int round = 0; round < 30; round++) {
+            for (int change = random.nextInt(20); change >= 0; change--) {
+                String id = "B" + random.nextInt(400);
+                if (random.nextInt(4) == 0) {
+                    live.remove(id);
+                    incremental.remove(id);
+                } else {
+                    Book book = book(id, random);
+                    live.put(id, book);
+                    incremental.update(book);
+                }
+            }
+            incremental.publishChanges();
+
+            AutocompleteIndex fresh = new AutocompleteIndex();
+            fresh.rebuild(live.values());
+            for (String prefix : PREFIXES) {
+                List<AutocompleteIndex.Suggestion> merged = incremental.suggest(prefix, ALL);
+                assertEquals(described(fresh.suggest(prefix, ALL)), described(merged), "round " + round + ", " + prefix);
+                for (int i = 1; i < merged.size(); i++) {
+                    assertTrue(merged.get(i - 1).getWeight() >= merged.get(i).getWeight(), prefix);
+                }
+            }
+        }
+    }
+
+    @Test
+    void topCompletionsAreTheHeaviest() {
+        Random random = new Random(31);
+        AutocompleteIndex index = new AutocompleteIndex();
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            books.add(book("B" + i, random));
+        }
+        index.rebuild(books);
+        for (int i = 0; i < 50; i++) {
+            index.update(book("B" + random.nextInt(200), random));
+        }
+        index.publishChanges();
+
+        for (String prefix : PREFIXES) {
+            List<AutocompleteIndex.Suggestion> all = index.suggest(prefix, ALL);
+            List<AutocompleteIndex.Suggestion> top = index.suggest(prefix, 3);
+            assertEquals(Math.min(3, all.size()), top.size(), prefix);
+            for (int i = 0; i < top.size(); i++) {
+                assertEquals(all.get(i).getWeight(), top.get(i).getWeight(), prefix);
+            }
+        }
+    }
+
+    // Ties may come out in either order, so compare as a set
+    private static Set<String> described(List<AutocompleteIndex.Suggestion> suggestions) {
+        Set<String> described = new HashSet<>();
+        for (AutocompleteIndex.Suggestion suggestion : suggestions) {
+            assertTrue(described.add(suggestion.getKind() + ":" + suggestion.getText() + ":" + suggestion.getWeight()));
+        }
+        return described;
+    }
+
+    private static Book book(String id, Random random) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]);
+        book.setAuthor(WORDS[random.nextInt(WORDS.length)]);
+        book.setPublisher(random.nextBoolean() ? WORDS[random.nextInt(WORDS.length)] + " press" : null);
+        book.setCategories(new String[] { CATEGORIES[random.nextInt(CATEGORIES.length)] });
+        book.setTotalPurchases(random.nextInt(50));
+        book.setReviewCount(random.nextInt(10));
+        return book;
+    }
+}
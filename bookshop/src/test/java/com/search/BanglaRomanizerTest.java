@@ -0,0 +1,40 @@
+package com.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.text.Normalizer;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Latin spellings of Bangla terms, as typed by users searching in English
+ */
+class BanglaRomanizerTest {
+
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource({
+            "বই, boi",
+            "আমার, amar",
+            "বাংলা, bangla",
+            "রবীন্দ্রনাথ, robindronath",
+            "হুমায়ূন, humayun",
+            "ক্ষমা, kkhoma",
+            "সৎ, sot",
+            "১৯৭১, 1971",
+            "harry, harry" })
+    void romanizes(String term, String latin) {
+        assertEquals(latin, BanglaRomanizer.romanize(Normalizer.normalize(term, Normalizer.Form.NFC)));
+    }
+
+    @Test
+    void detectsBanglaScript() {
+        assertTrue(BanglaRomanizer.isBangla("বই"));
+        assertTrue(BanglaRomanizer.isBangla("book বই"));
+        assertFalse(BanglaRomanizer.isBangla("book"));
+        assertFalse(BanglaRomanizer.isBangla(""));
+    }
+}
@@ -0,0 +1,203 @@
+package com.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.models.Book;
+
+/**
+ * A table derived batch by batch with {@link BookTable#with} answers every
+ * query like one built from scratch with {@link BookTable#of}
+ */
+class BookTableTest {
+    private static final String[] LANGUAGES = { "English", "Bengali", "bengali", null };
+    private static final String[] CATEGORIES = { "Fiction", "Science Fiction", "History", "Poetry", "Kids" };
+    private static final String[] WORDS = { "apple", "Apple", "Éclair", "zebra", "বই", "আমার", "কবিতা", "10",
+            "৯", null };
+
+    private static final Random RANDOM = new Random(7);
+    private static Map<String, Book> live;
+    private static BookTable incremental;
+    private static BookTable fresh;
+
+    @BeforeAll
+    static void buildTables() {
+        live = new LinkedHashMap<>();
+        List<Book> catalog = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Book book = book("B" + i);
+            catalog.add(book);
+            live.put(book.getId(), book);
+        }
+
+        incremental = BookTable.of(catalog);
+        for (int batch = 0; batch < 100; batch++) {
+            // As in the index writer, only the last change of a key in a
+            // batch counts; null marks a removal
+            Map<String, Book> changes = new LinkedHashMap<>();
+            for (int i = 0; i < 40; i++) {
+                String key = "B" + RANDOM.nextInt(5500);
+                changes.put(key, RANDOM.nextInt(3) == 0 ? null : book(key));
+            }
+
+            List<Book> changed = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            changes.forEach((key, book) -> {
+                if (book != null) {
+                    changed.add(book);
+                    live.put(key, book);
+                } else {
+                    removed.add(key);
+                    live.remove(key);
+                }
+            });
+            incremental = incremental.with(changed, removed);
+        }
+        fresh = BookTable.of(live.values());
+    }
+
+    @Test
+    void holdsTheLiveBooks() {
+        assertEquals(live.size(), incremental.size());
+        for (Book book : live.values()) {
+            int row = incremental.rowOf(book.getId());
+            assertTrue(row >= 0, book.getId());
+            assertSame(book, incremental.book(row));
+        }
+    }
+
+    @Test
+    void scansMatch() {
+        assertEquals(keys(fresh, fresh.priceBetween(200, 600, null)),
+                keys(incremental, incremental.priceBetween(200, 600, null)));
+        assertEquals(keys(fresh, fresh.ratingBetween(2, 4, null)),
+                keys(incremental, incremental.ratingBetween(2, 4, null)));
+        assertEquals(keys(fresh, fresh.reviewCountAtLeast(50, null)),
+                keys(incremental, incremental.reviewCountAtLeast(50, null)));
+        LocalDate from = LocalDate.of(2000, 1, 1);
+        LocalDate to = LocalDate.of(2010, 12, 31);
+        assertEquals(keys(fresh, fresh.publishedBetween(from, to, null)),
+                keys(incremental, incremental.publishedBetween(from, to, null)));
+    }
+
+    @Test
+    void bitmapsMatch() {
+        for (String language : LANGUAGES) {
+            assertEquals(keys(fresh, fresh.languageRows(language).toArray()),
+                    keys(incremental, incremental.languageRows(language).toArray()));
+        }
+        assertEquals(keys(fresh, fresh.categoryRows(name -> name.contains("fiction")).toArray()),
+                keys(incremental, incremental.categoryRows(name -> name.contains("fiction")).toArray()));
+        assertEquals(keys(fresh, fresh.availableRows().toArray()),
+                keys(incremental, incremental.availableRows().toArray()));
+        assertEquals(keys(fresh, fresh.discountedRows().toArray()),
+                keys(incremental, incremental.discountedRows().toArray()));
+        assertEquals(keys(fresh, fresh.featuredRows().toArray()),
+                keys(incremental, incremental.featuredRows().toArray()));
+    }
+
+    @Test
+    void histogramsMatch() {
+        double[] bounds = { 0, 200, 500, 1000 };
+        assertEquals(Arrays.toString(fresh.priceHistogram(bounds, null)),
+                Arrays.toString(incremental.priceHistogram(bounds, null)));
+        assertEquals(Arrays.toString(fresh.ratingHistogram(bounds, null)),
+                Arrays.toString(incremental.ratingHistogram(bounds, null)));
+    }
+
+    @Test
+    void sortOrdersMatch() {
+        // Ties are ordered by row, which differs between the tables, so the
+        // sorted values are compared rather than the books
+        assertSortedBy(BookTable.SortKey.PRICE, Book::getCurrentPrice);
+        assertSortedBy(BookTable.SortKey.RATING, Book::getRating);
+        for (boolean ascending : new boolean[] { true, false }) {
+            assertEquals(values(fresh, BookTable.SortKey.TITLE, ascending, Book::getTitle),
+                    values(incremental, BookTable.SortKey.TITLE, ascending, Book::getTitle));
+            assertEquals(values(fresh, BookTable.SortKey.AUTHOR, ascending, Book::getAuthor),
+                    values(incremental, BookTable.SortKey.AUTHOR, ascending, Book::getAuthor));
+            assertEquals(values(fresh, BookTable.SortKey.PUBLICATION_DATE, ascending, Book::getPublicationDate),
+                    values(incremental, BookTable.SortKey.PUBLICATION_DATE, ascending, Book::getPublicationDate));
+        }
+    }
+
+    private static void assertSortedBy(BookTable.SortKey key, ToDoubleFunction<Book> value) {
+        for (boolean ascending : new boolean[] { true, false }) {
+            List<Book> sorted = sorted(incremental, key, ascending);
+            for (int i = 1; i < sorted.size(); i++) {
+                double previous = value.applyAsDouble(sorted.get(i - 1));
+                double current = value.applyAsDouble(sorted.get(i));
+                assertTrue(ascending ? previous <= current : previous >= current, key + " at " + i);
+            }
+            assertEquals(values(fresh, key, ascending, book -> value.applyAsDouble(book)),
+                    values(incremental, key, ascending, book -> value.applyAsDouble(book)));
+        }
+    }
+
+    private static List<Object> values(BookTable table, BookTable.SortKey key, boolean ascending,
+            java.util.function.Function<Book, Object> field) {
+        List<Object> values = new ArrayList<>();
+        for (Book book : sorted(table, key, ascending)) {
+            values.add(field.apply(book));
+        }
+        return values;
+    }
+
+    private static List<Book> sorted(BookTable table, BookTable.SortKey key, boolean ascending) {
+        Book[] byRow = new Book[table.size()];
+        for (int row = 0; row < byRow.length; row++) {
+            byRow[row] = table.book(row);
+        }
+        return table.sorted(key, ascending, byRow, byRow.length);
+    }
+
+    private static Set<String> keys(BookTable table, int[] rows) {
+        Collection<String> keys = new ArrayList<>();
+        for (int row : rows) {
+            keys.add(table.book(row).getId());
+        }
+        Set<String> unique = new HashSet<>(keys);
+        assertEquals(keys.size(), unique.size());
+        return unique;
+    }
+
+    private static Book book(String id) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(WORDS[RANDOM.nextInt(WORDS.length)] + " " + RANDOM.nextInt(20));
+        book.setAuthor(WORDS[RANDOM.nextInt(WORDS.length)]);
+        book.setCurrentPrice(RANDOM.nextInt(1000));
+        book.setRating(RANDOM.nextInt(50) / 10.0);
+        book.setReviewCount(RANDOM.nextInt(100));
+        book.setDiscount(RANDOM.nextInt(4) == 0 ? 10 : 0);
+        book.setLanguage(LANGUAGES[RANDOM.nextInt(LANGUAGES.length)]);
+        book.setFeatured(RANDOM.nextInt(5) == 0);
+        String[] categories = new String[RANDOM.nextInt(3)];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = CATEGORIES[RANDOM.nextInt(CATEGORIES.length)];
+        }
+        book.setCategories(categories);
+        book.setPublicationDate(RANDOM.nextInt(10) == 0 ? null
+                : (1990 + RANDOM.nextInt(30)) + "-0" + (1 + RANDOM.nextInt(9)) + "-1" + RANDOM.nextInt(9));
+        if (RANDOM.nextBoolean()) {
+            book.setHolderId("U" + RANDOM.nextInt(10));
+        }
+        return book;
+    }
+}
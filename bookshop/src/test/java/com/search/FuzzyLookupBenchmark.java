@@ -0,0 +1,80 @@
+package com.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times the typo-tolerant term lookup of the search index on a synthetic
+ * vocabulary: misspelled query terms are expanded through a
+ * {@link TrigramIndex} with the edit distances and candidate cap
+ * {@link SearchIndex} uses, and each must find the term it misspells. Not run
+ * by the test suite; run its main method with the test classpath:
+ *
+ * <pre>
+ * java -Xmx3g -cp target/test-classes:target/classes com.search.FuzzyLookupBenchmark [terms]
+ * </pre>
+ */
+public final class FuzzyLookupBenchmark {
+    private static final String[] SYLLABLES = { "ka", "ra", "mi", "lo", "te", "sha", "bon", "dri", "gu", "na",
+            "pel", "so", "va", "chi", "ru", "mon", "fa", "de", "li", "tor", "ba", "ne", "quo", "zi", "ham" };
+    // Misspelled query term and the vocabulary term it should find
+    private static final String[][] QUERIES = { { "drakula", "dracula" }, { "alkemist", "alchemist" },
+            { "hemingwey", "hemingway" }, { "rabindranat", "rabindranath" }, { "himu", "hima" } };
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 50;
+    // As in SearchIndex
+    private static final int TWO_EDIT_LENGTH = 7;
+    private static final int MAX_FUZZY_CANDIDATES = 2000;
+
+    private FuzzyLookupBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        Random random = new Random(32);
+        TrigramIndex vocabulary = new TrigramIndex();
+        for (String[] query : QUERIES) {
+            vocabulary.add(query[1]);
+        }
+        StringBuilder term = new StringBuilder();
+        while (vocabulary.size() < size) {
+            term.setLength(0);
+            int syllables = 2 + random.nextInt(4);
+            for (int i = 0; i < syllables; i++) {
+                term.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            if (random.nextInt(3) == 0) {
+                term.append(random.nextInt(100));
+            }
+            vocabulary.add(term.toString());
+        }
+
+        for (String[] query : QUERIES) {
+            String misspelled = query[0];
+            int maxDistance = misspelled.length() >= TWO_EDIT_LENGTH ? 2 : 1;
+            List<String> similar = vocabulary.similar(misspelled, maxDistance, MAX_FUZZY_CANDIDATES);
+            if (!similar.contains(query[1])) {
+                throw new IllegalStateException(misspelled + " did not find " + query[1] + ": " + similar);
+            }
+
+            long sink = 0;
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                sink += vocabulary.similar(misspelled, maxDistance, MAX_FUZZY_CANDIDATES).size();
+            }
+            long[] nanos = new long[MEASURED_ROUNDS];
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                sink += vocabulary.similar(misspelled, maxDistance, MAX_FUZZY_CANDIDATES).size();
+                nanos[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(nanos);
+            System.out.printf("%s -> %s among %d terms (%d similar): median %.2f ms, max %.2f ms%n", misspelled,
+                    query[1], vocabulary.size(), similar.size(), nanos[nanos.length / 2] / 1e6,
+                    nanos[nanos.length - 1] / 1e6);
+            if (sink < 0) {
+                System.out.println(sink);
+            }
+        }
+    }
+}
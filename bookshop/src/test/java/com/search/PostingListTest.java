@@ -0,0 +1,94 @@
+package com.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Variable-length encoding of postings, in memory and as a mapped view
+ */
+class PostingListTest {
+
+    @Test
+    void roundTripsEveryVarintWidth() throws IOException {
+        // Gaps and frequencies taking one to five bytes each
+        int[] docIds = { 0, 1, 128, 16_511, 2_113_663, Integer.MAX_VALUE - 1 };
+        int[] freqs = { 1, 127, 128, 16_384, 2_097_152, Integer.MAX_VALUE };
+        PostingList list = new PostingList();
+        for (int i = 0; i < docIds.length; i++) {
+            list.add(docIds[i], freqs[i]);
+        }
+
+        assertPostings(list, docIds, freqs);
+        assertPostings(mapped(list), docIds, freqs);
+    }
+
+    @Test
+    void roundTripsRandomPostings() throws IOException {
+        Random random = new Random(42);
+        int[] docIds = new int[10_000];
+        int[] freqs = new int[docIds.length];
+        PostingList list = new PostingList();
+        int docId = -1;
+        for (int i = 0; i < docIds.length; i++) {
+            docId += 1 + random.nextInt(random.nextBoolean() ? 4 : 100_000);
+            docIds[i] = docId;
+            freqs[i] = 1 + random.nextInt(1000);
+            list.add(docIds[i], freqs[i]);
+        }
+
+        assertPostings(list, docIds, freqs);
+        assertPostings(mapped(list), docIds, freqs);
+    }
+
+    @Test
+    void emptyListHasNoPostings() {
+        PostingList list = new PostingList();
+        assertEquals(0, list.docCount());
+        assertEquals(0, list.encodedLength());
+        assertFalse(list.cursor().next());
+    }
+
+    @Test
+    void rejectsDocIdsOutOfOrder() {
+        PostingList list = new PostingList();
+        list.add(5, 1);
+        assertThrows(IllegalArgumentException.class, () -> list.add(5, 1));
+        assertThrows(IllegalArgumentException.class, () -> list.add(3, 1));
+    }
+
+    @Test
+    void mappedListIsReadOnly() throws IOException {
+        PostingList list = new PostingList();
+        list.add(1, 1);
+        PostingList view = mapped(list);
+        assertThrows(UnsupportedOperationException.class, () -> view.add(2, 1));
+    }
+
+    private static PostingList mapped(PostingList list) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        list.writeTo(new DataOutputStream(bytes));
+        assertEquals(list.encodedLength(), bytes.size());
+        return PostingList.view(ByteBuffer.wrap(bytes.toByteArray()), list.docCount());
+    }
+
+    private static void assertPostings(PostingList list, int[] docIds, int[] freqs) {
+        assertEquals(docIds.length, list.docCount());
+        PostingList.Cursor cursor = list.cursor();
+        for (int i = 0; i < docIds.length; i++) {
+            assertTrue(cursor.next());
+            assertEquals(docIds[i], cursor.docId());
+            assertEquals(freqs[i], cursor.freq());
+        }
+        assertFalse(cursor.next());
+    }
+}
@@ -0,0 +1,91 @@
+package com.search;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Set operations on row bitmaps, against sorted sets, for sparse and dense
+ * chunks alike
+ */
+class RowBitmapTest {
+
+    @Test
+    void matchesSortedSets() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 50; trial++) {
+            // Spans and sizes give array chunks, bitmap chunks and a mix
+            int span = 1 + random.nextInt(300_000);
+            TreeSet<Integer> x = randomSet(random, span);
+            TreeSet<Integer> y = randomSet(random, span);
+            RowBitmap bx = RowBitmap.of(toArray(x));
+            RowBitmap by = RowBitmap.of(toArray(y));
+
+            TreeSet<Integer> and = new TreeSet<>(x);
+            and.retainAll(y);
+            TreeSet<Integer> or = new TreeSet<>(x);
+            or.addAll(y);
+            assertArrayEquals(toArray(and), bx.and(by).toArray());
+            assertArrayEquals(toArray(or), bx.or(by).toArray());
+            assertEquals(x.size(), bx.cardinality());
+            assertEquals(x.isEmpty(), bx.isEmpty());
+
+            for (int probe = 0; probe < 100; probe++) {
+                int row = random.nextInt(span);
+                assertEquals(x.contains(row), bx.contains(row));
+            }
+        }
+    }
+
+    @Test
+    void withAddsAndRemoves() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 50; trial++) {
+            int span = 1 + random.nextInt(300_000);
+            TreeSet<Integer> x = randomSet(random, span);
+            TreeSet<Integer> added = randomSet(random, span);
+            added.removeAll(x);
+            TreeSet<Integer> removed = new TreeSet<>();
+            for (int row : x) {
+                if (random.nextInt(3) == 0) {
+                    removed.add(row);
+                }
+            }
+
+            TreeSet<Integer> expected = new TreeSet<>(x);
+            expected.addAll(added);
+            expected.removeAll(removed);
+            RowBitmap edited = RowBitmap.of(toArray(x)).with(toArray(added), toArray(removed));
+            assertArrayEquals(toArray(expected), edited.toArray());
+            assertEquals(expected.size(), edited.cardinality());
+        }
+    }
+
+    @Test
+    void emptyBitmap() {
+        assertTrue(RowBitmap.EMPTY.isEmpty());
+        assertEquals(0, RowBitmap.EMPTY.cardinality());
+        assertFalse(RowBitmap.EMPTY.contains(0));
+        assertTrue(RowBitmap.of(new int[] { 1, 2 }).and(RowBitmap.EMPTY).isEmpty());
+        assertArrayEquals(new int[] { 1, 2 }, RowBitmap.of(new int[] { 1, 2 }).or(RowBitmap.EMPTY).toArray());
+    }
+
+    private static TreeSet<Integer> randomSet(Random random, int span) {
+        TreeSet<Integer> set = new TreeSet<>();
+        int size = random.nextInt(20_000);
+        for (int i = 0; i < size; i++) {
+            set.add(random.nextInt(span));
+        }
+        return set;
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,84 @@
+package com.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Search box queries and the free text and filter parameters they parse to
+ */
+class StructuredQueryTest {
+
+    static Stream<Arguments> queries() {
+        return Stream.of(
+                // Plain text
+                Arguments.of("harry potter", "harry potter", Map.of()),
+                Arguments.of("", "", Map.of()),
+                Arguments.of("\"the hobbit\"", "the hobbit", Map.of()),
+
+                // Text fields, with and without a space after the colon
+                Arguments.of("author:humayun", "", Map.of("author", "humayun")),
+                Arguments.of("by: humayun novel", "novel", Map.of("author", "humayun")),
+                Arguments.of("category:\"science fiction\" dune", "dune", Map.of("category", "science fiction")),
+                Arguments.of("pub:prothoma", "", Map.of("publisher", "prothoma")),
+                Arguments.of("title:dune isbn:123", "dune 123", Map.of()),
+
+                // A colon that is not a clause keeps the word after it
+                Arguments.of("Harry Potter: the chamber price<500", "Harry Potter: the chamber",
+                        Map.of("maxPrice", Math.nextDown(500.0))),
+                Arguments.of("note: hello lang:bn", "note: hello", Map.of("language", "Bengali")),
+                Arguments.of("unknown:value", "unknown:value", Map.of()),
+                Arguments.of("author<humayun", "author<humayun", Map.of()),
+
+                // Languages
+                Arguments.of("lang:en", "", Map.of("language", "English")),
+                Arguments.of("language:Bengali", "", Map.of("language", "Bengali")),
+
+                // Numbers and ranges
+                Arguments.of("price:100..500", "", Map.of("minPrice", 100.0, "maxPrice", 500.0)),
+                Arguments.of("price:..500", "", Map.of("maxPrice", 500.0)),
+                Arguments.of("price:100..", "", Map.of("minPrice", 100.0)),
+                Arguments.of("price<=500", "", Map.of("maxPrice", 500.0)),
+                Arguments.of("price>100", "", Map.of("minPrice", Math.nextUp(100.0))),
+                Arguments.of("rating>=4", "", Map.of("minRating", 4.0)),
+                Arguments.of("rating=4", "", Map.of("minRating", 4.0, "maxRating", 4.0)),
+                Arguments.of("price:100..abc", "price:100..abc", Map.of()),
+                Arguments.of("price:abc..100", "price:abc..100", Map.of()),
+                Arguments.of("price<cheap", "price<cheap", Map.of()),
+
+                // Dates
+                Arguments.of("year:2020", "",
+                        Map.of("fromDate", LocalDate.of(2020, 1, 1), "toDate", LocalDate.of(2020, 12, 31))),
+                Arguments.of("year>2020", "", Map.of("fromDate", LocalDate.of(2021, 1, 1))),
+                Arguments.of("year<2020", "", Map.of("toDate", LocalDate.of(2019, 12, 31))),
+                Arguments.of("date:2020-03-01..2021", "",
+                        Map.of("fromDate", LocalDate.of(2020, 3, 1), "toDate", LocalDate.of(2021, 12, 31))),
+                Arguments.of("date:2020..x", "date:2020..x", Map.of()),
+                Arguments.of("date:2020-13-01", "date:2020-13-01", Map.of()),
+
+                // Flags and sorting
+                Arguments.of("is:available", "", Map.of("availability", "Available Now")),
+                Arguments.of("is:discounted", "", Map.of("discountOnly", true)),
+                Arguments.of("is:featured", "", Map.of("featuredOnly", true)),
+                Arguments.of("is:nonsense", "is:nonsense", Map.of()),
+                Arguments.of("sort:price", "", Map.of("sortBy", "Price", "ascending", true)),
+                Arguments.of("sort:-rating", "", Map.of("sortBy", "Rating", "ascending", false)));
+    }
+
+    @ParameterizedTest(name = "[{index}] {0}")
+    @MethodSource("queries")
+    void parse(String query, String text, Map<String, Object> filters) {
+        StructuredQuery parsed = StructuredQuery.parse(query);
+        assertEquals(text, parsed.getText());
+
+        Map<String, Object> params = parsed.toFilterParams();
+        params.remove("searchTerm");
+        assertEquals(filters, params);
+    }
+}
@@ -0,0 +1,90 @@
+package com.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Banded Levenshtein distance used to verify fuzzy term candidates
+ */
+class TrigramIndexTest {
+
+    @Test
+    void exactDistancesWithinBound() {
+        assertEquals(0, TrigramIndex.boundedLevenshtein("humayun", "humayun", 2));
+        assertEquals(1, TrigramIndex.boundedLevenshtein("humayun", "humayum", 2));
+        assertEquals(1, TrigramIndex.boundedLevenshtein("humayun", "humaun", 2));
+        assertEquals(1, TrigramIndex.boundedLevenshtein("humayun", "humayuna", 2));
+        assertEquals(3, TrigramIndex.boundedLevenshtein("kitten", "sitting", 3));
+        assertEquals(2, TrigramIndex.boundedLevenshtein("", "ab", 2));
+    }
+
+    @Test
+    void capsDistancesBeyondBound() {
+        assertEquals(3, TrigramIndex.boundedLevenshtein("kitten", "sitting", 2));
+        assertEquals(2, TrigramIndex.boundedLevenshtein("abc", "abcdef", 1));
+        assertEquals(2, TrigramIndex.boundedLevenshtein("abcdef", "uvwxyz", 1));
+        assertEquals(1, TrigramIndex.boundedLevenshtein("a", "b", 0));
+    }
+
+    @Test
+    void matchesFullLevenshtein() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 5000; trial++) {
+            String a = randomWord(random);
+            String b = random.nextBoolean() ? randomWord(random) : mutate(a, random);
+            int maxDistance = random.nextInt(4);
+            int expected = Math.min(levenshtein(a, b), maxDistance + 1);
+            assertEquals(expected, TrigramIndex.boundedLevenshtein(a, b, maxDistance), a + " / " + b);
+        }
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int length = random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(4)));
+        }
+        return word.toString();
+    }
+
+    private static String mutate(String word, Random random) {
+        StringBuilder mutated = new StringBuilder(word);
+        for (int edits = random.nextInt(4); edits > 0; edits--) {
+            int at = random.nextInt(mutated.length() + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.insert(at, (char) ('a' + random.nextInt(4)));
+                    break;
+                case 1:
+                    if (at < mutated.length()) {
+                        mutated.deleteCharAt(at);
+                    }
+                    break;
+                default:
+                    if (at < mutated.length()) {
+                        mutated.setCharAt(at, (char) ('a' + random.nextInt(4)));
+                    }
+                    break;
+            }
+        }
+        return mutated.toString();
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}